@@ -0,0 +1,190 @@
+package com.david.trenes.config;
+
+import com.david.trenes.model.Billete;
+import com.david.trenes.model.Horario;
+import com.david.trenes.model.OcupacionVia;
+import com.david.trenes.model.Pasajero;
+import com.david.trenes.model.Tren;
+import com.david.trenes.model.Usuario;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Catálogo de índices de las consultas frecuentes, alineados con la forma de
+ * las consultas de los repositorios (igualdad, luego $in, luego rango/orden).
+ * Se crean tras el arranque en un hilo aparte para no retrasar el resto de
+ * inicializaciones (la creación automática de índices está desactivada en
+ * {@link MongoDBConfig}); después se comprueba con explain() que las consultas
+ * clave no acaban en COLLSCAN.
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class IndicesConsultasConfig {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.indices.verificar-planes:true}")
+    private boolean verificarPlanes;
+
+    @Getter
+    @AllArgsConstructor
+    private static class IndiceConsulta {
+        private final Class<?> entidad;
+        private final Index indice;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class ConsultaClave {
+        private final String nombre;
+        private final Class<?> entidad;
+        private final Document filtro;
+        private final Document orden;
+    }
+
+    private static final List<IndiceConsulta> CATALOGO = List.of(
+            // Billetes de un horario (por estado) y de un pasajero
+            indice(Billete.class, "idx_billetes_horario_estado", "horario_id", "estado"),
+            indice(Billete.class, "idx_billetes_pasajero_estado", "pasajero_id", "estado"),
+
+            // Horarios de un tren, de una ruta o entre dos estaciones, ordenados por salida
+            indice(Horario.class, "idx_horarios_tren_activo_estado_salida", "tren_id", "activo", "estado", "fecha_salida"),
+            indice(Horario.class, "idx_horarios_ruta_activo_salida", "ruta_id", "activo", "fecha_salida"),
+            indice(Horario.class, "idx_horarios_origen_destino_activo_salida",
+                    "estacion_origen_id", "estacion_destino_id", "activo", "fecha_salida"),
+            // Ventanas de salida, por estado y de los activos (despacho, planificador, monitorización)
+            indice(Horario.class, "idx_horarios_salida", "fecha_salida"),
+            indice(Horario.class, "idx_horarios_estado_salida", "estado", "fecha_salida"),
+            indice(Horario.class, "idx_horarios_activo_estado_salida", "activo", "estado", "fecha_salida"),
+            indice(Horario.class, "idx_horarios_paradas_estacion", "paradas.estacionId"),
+            indice(Horario.class, "idx_horarios_actualizacion", "fecha_actualizacion"),
+
+            indice(Tren.class, "idx_trenes_estado", "estado_actual"),
+            indice(Tren.class, "idx_trenes_ruta_actual", "ruta_actual_id"),
+            indice(Tren.class, "idx_trenes_via_actual", "via_actual_id"),
+
+            indice(Pasajero.class, "idx_pasajeros_usuario", "usuario_id"),
+            indice(Usuario.class, "idx_users_username", "username"),
+            indice(Usuario.class, "idx_users_email", "email"),
+            indice(OcupacionVia.class, "idx_ocupaciones_via_tren", "tren_id")
+    );
+
+    // Los valores sólo importan para el tipo; el plan depende de la forma del filtro
+    private static final List<ConsultaClave> CONSULTAS_CLAVE = List.of(
+            new ConsultaClave("billetes por horario y estado", Billete.class,
+                    new Document("horario_id", "x").append("estado", "COMPRADO"), null),
+            new ConsultaClave("billetes por pasajero", Billete.class,
+                    new Document("pasajero_id", new Document("$in", List.of("x", "y"))), null),
+            new ConsultaClave("próximos horarios de trenes", Horario.class,
+                    new Document("tren_id", new Document("$in", List.of("x", "y")))
+                            .append("activo", true)
+                            .append("estado", new Document("$in", List.of("PROGRAMADO", "RETRASADO")))
+                            .append("fecha_salida", new Document("$gt", new Date())),
+                    new Document("fecha_salida", 1)),
+            new ConsultaClave("horarios en circulación", Horario.class,
+                    new Document("activo", true)
+                            .append("estado", new Document("$in", List.of("EN_MARCHA", "RETRASADO")))
+                            .append("fecha_salida", new Document("$lt", new Date()))
+                            .append("fecha_llegada", new Document("$gt", new Date())), null),
+            new ConsultaClave("horarios por estación de parada", Horario.class,
+                    new Document("paradas.estacionId", "x"), null),
+            new ConsultaClave("trenes por estado", Tren.class,
+                    new Document("estado_actual", "DETENIDO"), null),
+            new ConsultaClave("pasajeros de un usuario", Pasajero.class,
+                    new Document("usuario_id", "x"), null),
+            new ConsultaClave("usuario por username", Usuario.class,
+                    new Document("username", "x"), null)
+    );
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prepararIndices() {
+        Thread hilo = new Thread(this::crearYVerificar, "indices-consultas");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    private void crearYVerificar() {
+        int creados = 0;
+        for (IndiceConsulta entrada : CATALOGO) {
+            try {
+                mongoTemplate.indexOps(entrada.getEntidad()).createIndex(entrada.getIndice());
+                creados++;
+            } catch (Exception e) {
+                log.warn("No se pudo crear el índice {} en {}: {}",
+                        entrada.getIndice().getIndexOptions().get("name"),
+                        mongoTemplate.getCollectionName(entrada.getEntidad()), e.getMessage());
+            }
+        }
+        log.info("Índices de consultas listos: {}/{}", creados, CATALOGO.size());
+
+        if (verificarPlanes) {
+            CONSULTAS_CLAVE.forEach(this::verificarPlan);
+        }
+    }
+
+    private void verificarPlan(ConsultaClave consulta) {
+        String coleccion = mongoTemplate.getCollectionName(consulta.getEntidad());
+        try {
+            Document find = new Document("find", coleccion).append("filter", consulta.getFiltro());
+            if (consulta.getOrden() != null) {
+                find.append("sort", consulta.getOrden());
+            }
+            Document explain = mongoTemplate.getDb().runCommand(
+                    new Document("explain", find).append("verbosity", "queryPlanner"));
+            Document planner = explain.get("queryPlanner", Document.class);
+            Object planGanador = planner != null ? planner.get("winningPlan") : null;
+
+            if (contieneEtapa(planGanador, "COLLSCAN")) {
+                log.warn("La consulta '{}' sobre {} recorre la colección completa (COLLSCAN): {}",
+                        consulta.getNombre(), coleccion, consulta.getFiltro().toJson());
+            } else {
+                log.debug("La consulta '{}' sobre {} usa índice", consulta.getNombre(), coleccion);
+            }
+        } catch (Exception e) {
+            log.warn("No se pudo obtener el plan de '{}' sobre {}: {}", consulta.getNombre(), coleccion, e.getMessage());
+        }
+    }
+
+    // Recorre el plan (inputStage/inputStages y, con SBE, queryPlan) buscando la etapa
+    private static boolean contieneEtapa(Object plan, String etapa) {
+        if (plan instanceof Document documento) {
+            if (etapa.equals(documento.get("stage"))) {
+                return true;
+            }
+            for (Object valor : documento.values()) {
+                if (contieneEtapa(valor, etapa)) {
+                    return true;
+                }
+            }
+        } else if (plan instanceof List<?> lista) {
+            for (Object valor : lista) {
+                if (contieneEtapa(valor, etapa)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static IndiceConsulta indice(Class<?> entidad, String nombre, String... campos) {
+        Index index = new Index().named(nombre);
+        for (String campo : campos) {
+            index.on(campo, Sort.Direction.ASC);
+        }
+        return new IndiceConsulta(entidad, index);
+    }
+}
@@ -0,0 +1,64 @@
+package com.david.trenes.config;
+
+import com.david.trenes.model.Estacion;
+import com.david.trenes.model.Incidente;
+import com.david.trenes.model.Signal;
+import com.david.trenes.model.Tren;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.result.UpdateResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeospatialIndex;
+
+import java.util.List;
+
+/**
+ * Crea los índices 2dsphere de los puntos GeoJSON y rellena el punto en los
+ * documentos guardados antes de que existiera (la creación automática de
+ * índices está desactivada en {@link MongoDBConfig}).
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class IndicesGeoespacialesConfig {
+
+    private final MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void crearIndicesGeoespaciales() {
+        prepararColeccion(Estacion.class, "ubicacion", "posicion");
+        prepararColeccion(Tren.class, "ubicacion_actual", "posicion_actual");
+        prepararColeccion(Incidente.class, "ubicacion", "posicion");
+        prepararColeccion(Signal.class, "ubicacion", "posicion");
+    }
+
+    private void prepararColeccion(Class<?> entidad, String campoCoordenada, String campoPunto) {
+        String coleccion = mongoTemplate.getCollectionName(entidad);
+        try {
+            mongoTemplate.indexOps(entidad)
+                    .createIndex(new GeospatialIndex(campoPunto).typed(GeoSpatialIndexType.GEO_2DSPHERE));
+
+            String lat = campoCoordenada + ".latitud";
+            String lon = campoCoordenada + ".longitud";
+            Bson pendientes = Filters.and(
+                    Filters.exists(campoPunto, false),
+                    Filters.gte(lat, -90), Filters.lte(lat, 90),
+                    Filters.gte(lon, -180), Filters.lte(lon, 180));
+            List<Document> pipeline = List.of(new Document("$set", new Document(campoPunto,
+                    new Document("type", "Point").append("coordinates", List.of("$" + lon, "$" + lat)))));
+
+            UpdateResult resultado = mongoTemplate.getCollection(coleccion).updateMany(pendientes, pipeline);
+            log.info("Índice 2dsphere listo en {}.{} ({} documentos completados)",
+                    coleccion, campoPunto, resultado.getModifiedCount());
+        } catch (Exception e) {
+            log.warn("No se pudo preparar el índice geoespacial de {}: {}", coleccion, e.getMessage());
+        }
+    }
+}
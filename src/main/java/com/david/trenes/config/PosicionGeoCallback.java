@@ -0,0 +1,50 @@
+package com.david.trenes.config;
+
+import com.david.trenes.model.Estacion;
+import com.david.trenes.model.Incidente;
+import com.david.trenes.model.Signal;
+import com.david.trenes.model.Tren;
+import com.david.trenes.model.Via;
+import com.david.trenes.util.GeoUtils;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Mantiene el punto GeoJSON (indexado con 2dsphere) sincronizado con la
+ * coordenada latitud/longitud de estaciones, trenes, incidentes y señales en
+ * cada guardado.
+ */
+@Component
+public class PosicionGeoCallback implements BeforeConvertCallback<Object> {
+
+    @Override
+    public Object onBeforeConvert(Object entity, String collection) {
+        if (entity instanceof Estacion e) {
+            e.setPosicion(aGeoJson(e.getUbicacion()));
+        } else if (entity instanceof Tren t) {
+            t.setPosicionActual(aGeoJson(t.getUbicacionActual()));
+        } else if (entity instanceof Incidente i) {
+            i.setPosicion(aGeoJson(i.getUbicacion()));
+        } else if (entity instanceof Signal s) {
+            s.setPosicion(aGeoJson(s.getUbicacion()));
+        }
+        return entity;
+    }
+
+    /**
+     * GeoJSON usa el orden [longitud, latitud]. Devuelve null si la coordenada
+     * está incompleta o fuera de rango, ya que el índice 2dsphere la rechazaría.
+     */
+    public static GeoJsonPoint aGeoJson(Via.Coordenada coordenada) {
+        if (coordenada == null || coordenada.getLatitud() == null || coordenada.getLongitud() == null) {
+            return null;
+        }
+        double lat = coordenada.getLatitud();
+        double lon = coordenada.getLongitud();
+        if (!GeoUtils.esCoordenadaValida(lat, lon)) {
+            return null;
+        }
+        return new GeoJsonPoint(lon, lat);
+    }
+}
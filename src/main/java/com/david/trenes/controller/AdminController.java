@@ -1,12 +1,19 @@
 package com.david.trenes.controller;
 
 import com.david.trenes.dto.ApiResponse;
+import com.david.trenes.dto.MonitorizacionTrenesResponse;
 import com.david.trenes.model.Tren;
 import com.david.trenes.repository.BilleteRepository;
 import com.david.trenes.repository.HorarioRepository;
 import com.david.trenes.repository.InventarioHorarioRepository;
 import com.david.trenes.repository.TrenRepository;
+import com.david.trenes.security.IpBlocklist;
+import com.david.trenes.security.SecurityMaintenanceJob;
+import com.david.trenes.service.DespachoHorariosService;
+import com.david.trenes.service.DetectorConflictosService;
+import com.david.trenes.service.EstadisticasService;
 import com.david.trenes.service.GestionHorariosService;
+import com.david.trenes.service.OcupacionViasService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -30,6 +37,12 @@ public class AdminController extends BaseController {
     private final GestionHorariosService gestionHorariosService;
     private final BilleteRepository billeteRepository;
     private final TrenRepository trenRepository;
+    private final DespachoHorariosService despachoHorariosService;
+    private final DetectorConflictosService detectorConflictosService;
+    private final OcupacionViasService ocupacionViasService;
+    private final IpBlocklist ipBlocklist;
+    private final SecurityMaintenanceJob securityMaintenanceJob;
+    private final EstadisticasService estadisticasService;
 
     // ==================== ENDPOINTS DE LIMPIEZA DE DATOS ====================
 
@@ -239,11 +252,13 @@ public class AdminController extends BaseController {
     // ==================== ENDPOINTS DE MONITORIZACIÓN ====================
 
     @GetMapping("/monitorizacion/consistencia-paradas")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> verificarConsistenciaParadas() {
-        logRequest("verificarConsistenciaParadas");
+    public ResponseEntity<ApiResponse<Map<String, Object>>> verificarConsistenciaParadas(
+            @RequestParam(defaultValue = "false") boolean incremental
+    ) {
+        logRequest("verificarConsistenciaParadas", incremental);
 
         try {
-            Map<String, Object> resultado = gestionHorariosService.verificarConsistenciaParadasConRuta();
+            Map<String, Object> resultado = gestionHorariosService.verificarConsistenciaParadasConRuta(incremental);
 
             log.info("Verificación completada: {}/{} horarios consistentes ({}%)",
                     resultado.get("horariosConsistentes"),
@@ -259,16 +274,16 @@ public class AdminController extends BaseController {
     }
 
     @GetMapping("/monitorizacion/trenes-tiempo-real")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> monitorizarTrenesTiempoReal() {
+    public ResponseEntity<ApiResponse<MonitorizacionTrenesResponse>> monitorizarTrenesTiempoReal() {
         logRequest("monitorizarTrenesTiempoReal");
 
         try {
-            Map<String, Object> resultado = gestionHorariosService.monitorizarEstadoTrenesTiempoReal();
+            MonitorizacionTrenesResponse resultado = gestionHorariosService.monitorizarEstadoTrenesTiempoReal();
 
             log.info("Monitorización completada: {} trenes totales, {} en marcha, {} incidentes",
-                    resultado.get("totalTrenes"),
-                    resultado.get("trenesEnMarcha"),
-                    resultado.get("incidentesDetectados"));
+                    resultado.getTotalTrenes(),
+                    resultado.getTrenesEnMarcha(),
+                    resultado.getIncidentesDetectados());
 
             return ok(resultado, "Monitorización en tiempo real completada");
 
@@ -299,6 +314,105 @@ public class AdminController extends BaseController {
         }
     }
 
+    @GetMapping("/monitorizacion/despacho")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> obtenerEstadoDespacho() {
+        logRequest("obtenerEstadoDespacho");
+
+        try {
+            return ok(despachoHorariosService.obtenerEstado(), "Estado del despacho automático obtenido");
+
+        } catch (Exception e) {
+            logError("obtenerEstadoDespacho", e);
+            return badRequest("Error al obtener el estado del despacho: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/monitorizacion/conflictos")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> obtenerEstadoConflictos() {
+        logRequest("obtenerEstadoConflictos");
+
+        try {
+            return ok(detectorConflictosService.obtenerEstado(), "Estado de la detección de conflictos obtenido");
+
+        } catch (Exception e) {
+            logError("obtenerEstadoConflictos", e);
+            return badRequest("Error al obtener el estado de la detección de conflictos: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/monitorizacion/ocupacion-vias")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> obtenerOcupacionVias() {
+        logRequest("obtenerOcupacionVias");
+
+        try {
+            return ok(ocupacionViasService.obtenerEstado(), "Ocupación de vías obtenida");
+
+        } catch (Exception e) {
+            logError("obtenerOcupacionVias", e);
+            return badRequest("Error al obtener la ocupación de vías: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/monitorizacion/ips-bloqueadas")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> obtenerIpsBloqueadas() {
+        logRequest("obtenerIpsBloqueadas");
+
+        try {
+            return ok(ipBlocklist.getBlockedIps(), "IPs bloqueadas obtenidas");
+
+        } catch (Exception e) {
+            logError("obtenerIpsBloqueadas", e);
+            return badRequest("Error al obtener las IPs bloqueadas: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/monitorizacion/seguridad")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> obtenerEstadoSeguridad() {
+        logRequest("obtenerEstadoSeguridad");
+
+        try {
+            return ok(securityMaintenanceJob.getStats(), "Estado de seguridad obtenido");
+
+        } catch (Exception e) {
+            logError("obtenerEstadoSeguridad", e);
+            return badRequest("Error al obtener el estado de seguridad: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/seguridad/ips-bloqueadas/{ip}")
+    public ResponseEntity<ApiResponse<Void>> desbloquearIp(@PathVariable String ip) {
+        logRequest("desbloquearIp", "ip=" + ip);
+
+        try {
+            if (!ipBlocklist.unblock(ip)) {
+                return notFound("La IP no está bloqueada: " + ip);
+            }
+            return ok("IP desbloqueada: " + ip);
+
+        } catch (Exception e) {
+            logError("desbloquearIp", e);
+            return badRequest("Error al desbloquear la IP: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/monitorizacion/estadisticas")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> obtenerEstadisticas(
+            @RequestParam(defaultValue = "false") boolean refrescar
+    ) {
+        logRequest("obtenerEstadisticas", "refrescar=" + refrescar);
+
+        try {
+            if (refrescar) {
+                estadisticasService.limpiarCache();
+            }
+            return ok(estadisticasService.resumenGeneral(), "Estadísticas de flota, red y explotación obtenidas");
+
+        } catch (Exception e) {
+            logError("obtenerEstadisticas", e);
+            return badRequest("Error al obtener las estadísticas: " + e.getMessage());
+        }
+    }
+
     // ==================== ENDPOINTS DE UTILIDADES ADMIN ====================
 
     @GetMapping("/health")
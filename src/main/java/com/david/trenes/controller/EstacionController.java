@@ -1,8 +1,10 @@
 package com.david.trenes.controller;
 
 import com.david.trenes.dto.ApiResponse;
+import com.david.trenes.dto.CercaniaResponse;
 import com.david.trenes.dto.PagedResponse;
 import com.david.trenes.model.Estacion;
+import com.david.trenes.service.ConsultasGeoService;
 import com.david.trenes.service.EstacionService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -29,6 +31,7 @@ import java.util.Optional;
 public class EstacionController extends BaseController {
 
     private final EstacionService estacionService;
+    private final ConsultasGeoService consultasGeoService;
 
     // ==================== ENDPOINTS BÁSICOS CRUD ====================
 
@@ -207,6 +210,25 @@ public class EstacionController extends BaseController {
         }
     }
 
+    @GetMapping("/cercanas")
+    public ResponseEntity<ApiResponse<List<CercaniaResponse<Estacion>>>> findCercanas(
+            @RequestParam Double lat,
+            @RequestParam Double lon,
+            @RequestParam(defaultValue = "5") Double radioKm,
+            @RequestParam(defaultValue = "20") Integer limite
+    ) {
+        logRequest("findCercanas", lat, lon, radioKm, limite);
+
+        try {
+            List<CercaniaResponse<Estacion>> estaciones = consultasGeoService.estacionesCercanas(lat, lon, radioKm, limite);
+            return ok(estaciones, "Estaciones cercanas obtenidas exitosamente");
+
+        } catch (Exception e) {
+            logError("findCercanas", e);
+            return badRequest("Error al buscar estaciones cercanas: " + e.getMessage());
+        }
+    }
+
     // ==================== ENDPOINTS DE BÚSQUEDA POR CARACTERÍSTICAS ====================
 
     @GetMapping("/tipo/{tipoEstacion}")
@@ -26,9 +26,11 @@ public class HorarioParadaController {
         log.info("Solicitada actualización de paradas en todos los horarios");
         
         try {
-            horarioParadaService.actualizarParadasEnTodosLosHorarios();
+            Map<String, Object> resultado = horarioParadaService.actualizarParadasEnTodosLosHorarios();
             
-            return ResponseEntity.ok("Paradas actualizadas correctamente en todos los horarios");
+            return ResponseEntity.ok("Paradas actualizadas correctamente en todos los horarios: "
+                    + resultado.get("horariosActualizados") + " actualizados de "
+                    + resultado.get("horariosProcesados") + " procesados");
             
         } catch (Exception e) {
             log.error("Error actualizando paradas en horarios", e);
@@ -106,14 +108,14 @@ public class HorarioParadaController {
             Map<String, Object> asignacion = rutaValidationService.asignarRutasAleatorias();
             
             // Paso 2: Actualizar paradas
-            horarioParadaService.actualizarParadasEnTodosLosHorarios();
+            Map<String, Object> actualizacionParadas = horarioParadaService.actualizarParadasEnTodosLosHorarios();
             
             // Paso 3: Crear estaciones faltantes
             Map<String, Object> estacionesCreadas = estacionValidationService.crearEstacionesFaltantes();
             
             Map<String, Object> resultado = new java.util.HashMap<>();
             resultado.put("asignacionRutas", asignacion);
-            resultado.put("actualizacionParadas", "Completado");
+            resultado.put("actualizacionParadas", actualizacionParadas);
             resultado.put("estacionesCreadas", estacionesCreadas);
             resultado.put("mensaje", "Reparación completada exitosamente");
             
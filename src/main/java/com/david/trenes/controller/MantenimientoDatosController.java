@@ -1,6 +1,7 @@
 package com.david.trenes.controller;
 
 
+import com.david.trenes.dto.MonitorizacionTrenesResponse;
 import com.david.trenes.repository.BilleteRepository;
 import com.david.trenes.repository.HorarioRepository;
 import com.david.trenes.repository.InventarioHorarioRepository;
@@ -198,10 +199,12 @@ public class MantenimientoDatosController {
         ));
     }
     @GetMapping("/verificar-consistencia-paradas")
-    public ResponseEntity<Map<String, Object>> verificarConsistenciaParadas() {
-        log.info("Iniciando verificación de consistencia de paradas con rutas");
+    public ResponseEntity<Map<String, Object>> verificarConsistenciaParadas(
+            @RequestParam(defaultValue = "false") boolean incremental
+    ) {
+        log.info("Iniciando verificación de consistencia de paradas con rutas (incremental={})", incremental);
 
-        Map<String, Object> resultado = gestionHorariosService.verificarConsistenciaParadasConRuta();
+        Map<String, Object> resultado = gestionHorariosService.verificarConsistenciaParadasConRuta(incremental);
 
         log.info("Verificación completada: {}/{} horarios consistentes ({}%)",
                 resultado.get("horariosConsistentes"),
@@ -219,12 +222,12 @@ public class MantenimientoDatosController {
     public ResponseEntity<Map<String, Object>> monitorizarTrenesTiempoReal() {
         log.info("Iniciando monitorización en tiempo real de trenes");
         
-        Map<String, Object> resultado = gestionHorariosService.monitorizarEstadoTrenesTiempoReal();
+        MonitorizacionTrenesResponse resultado = gestionHorariosService.monitorizarEstadoTrenesTiempoReal();
         
         log.info("Monitorización completada: {} trenes totales, {} en marcha, {} incidentes", 
-            resultado.get("totalTrenes"), 
-            resultado.get("trenesEnMarcha"), 
-            resultado.get("incidentesDetectados"));
+            resultado.getTotalTrenes(), 
+            resultado.getTrenesEnMarcha(), 
+            resultado.getIncidentesDetectados());
         
         return ResponseEntity.ok()
             .header("Access-Control-Allow-Origin", "*")
@@ -1,6 +1,7 @@
 package com.david.trenes.controller;
 
 import com.david.trenes.dto.ApiResponse;
+import com.david.trenes.dto.MonitorizacionTrenesResponse;
 import com.david.trenes.model.Tren;
 import com.david.trenes.repository.BilleteRepository;
 import com.david.trenes.repository.HorarioRepository;
@@ -239,11 +240,13 @@ public class OperacionesController extends BaseController {
     // ==================== ENDPOINTS DE MONITORIZACIÓN ====================
 
     @GetMapping("/monitorizacion/consistencia-paradas")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> verificarConsistenciaParadas() {
-        logRequest("verificarConsistenciaParadas");
+    public ResponseEntity<ApiResponse<Map<String, Object>>> verificarConsistenciaParadas(
+            @RequestParam(defaultValue = "false") boolean incremental
+    ) {
+        logRequest("verificarConsistenciaParadas", incremental);
 
         try {
-            Map<String, Object> resultado = gestionHorariosService.verificarConsistenciaParadasConRuta();
+            Map<String, Object> resultado = gestionHorariosService.verificarConsistenciaParadasConRuta(incremental);
 
             log.info("Verificación completada: {}/{} horarios consistentes ({}%)",
                     resultado.get("horariosConsistentes"),
@@ -259,16 +262,16 @@ public class OperacionesController extends BaseController {
     }
 
     @GetMapping("/monitorizacion/trenes-tiempo-real")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> monitorizarTrenesTiempoReal() {
+    public ResponseEntity<ApiResponse<MonitorizacionTrenesResponse>> monitorizarTrenesTiempoReal() {
         logRequest("monitorizarTrenesTiempoReal");
 
         try {
-            Map<String, Object> resultado = gestionHorariosService.monitorizarEstadoTrenesTiempoReal();
+            MonitorizacionTrenesResponse resultado = gestionHorariosService.monitorizarEstadoTrenesTiempoReal();
 
             log.info("Monitorización completada: {} trenes totales, {} en marcha, {} incidentes",
-                    resultado.get("totalTrenes"),
-                    resultado.get("trenesEnMarcha"),
-                    resultado.get("incidentesDetectados"));
+                    resultado.getTotalTrenes(),
+                    resultado.getTrenesEnMarcha(),
+                    resultado.getIncidentesDetectados());
 
             return ok(resultado, "Monitorización en tiempo real completada");
 
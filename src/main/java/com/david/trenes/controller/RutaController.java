@@ -1,8 +1,13 @@
 package com.david.trenes.controller;
 
 import com.david.trenes.dto.ApiResponse;
+import com.david.trenes.dto.ItinerarioResponse;
 import com.david.trenes.dto.PagedResponse;
 import com.david.trenes.model.Ruta;
+import com.david.trenes.service.EstadisticasService;
+import com.david.trenes.service.PlanificadorViajesService;
+import com.david.trenes.service.RedFerroviaria;
+import com.david.trenes.service.RedFerroviariaService;
 import com.david.trenes.service.RutaService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -14,6 +19,7 @@ import org.springframework.data.domain.Sort;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -29,6 +35,9 @@ import java.util.Optional;
 public class RutaController extends BaseController {
 
     private final RutaService rutaService;
+    private final PlanificadorViajesService planificadorViajesService;
+    private final RedFerroviariaService redFerroviariaService;
+    private final EstadisticasService estadisticasService;
 
     // ==================== ENDPOINTS BÁSICOS CRUD ====================
 
@@ -469,6 +478,98 @@ public class RutaController extends BaseController {
         }
     }
     
+    @GetMapping("/itinerarios")
+    public ResponseEntity<ApiResponse<ItinerarioResponse>> planificarItinerario(
+            @RequestParam String estacionOrigenId,
+            @RequestParam String estacionDestinoId,
+            @RequestParam(required = false) LocalDateTime salidaDesde,
+            @RequestParam(defaultValue = "LLEGADA_TEMPRANA") PlanificadorViajesService.Criterio criterio
+    ) {
+        logRequest("planificarItinerario", estacionOrigenId, estacionDestinoId, salidaDesde, criterio);
+
+        try {
+            ItinerarioResponse itinerario = planificadorViajesService.planificar(
+                    estacionOrigenId, estacionDestinoId, salidaDesde, criterio);
+            if (itinerario == null) {
+                return notFound("No hay itinerario entre " + estacionOrigenId + " y " + estacionDestinoId);
+            }
+            return ok(itinerario, "Itinerario obtenido exitosamente");
+
+        } catch (Exception e) {
+            logError("planificarItinerario", e);
+            return badRequest("Error al planificar itinerario: " + e.getMessage());
+        }
+    }
+
+    // ==================== ENDPOINTS DE RED FERROVIARIA ====================
+
+    @GetMapping("/red/camino")
+    public ResponseEntity<ApiResponse<RedFerroviaria.Camino>> caminoMasCorto(
+            @RequestParam String estacionOrigenId,
+            @RequestParam String estacionDestinoId,
+            @RequestParam(defaultValue = "DISTANCIA") RedFerroviaria.Criterio criterio
+    ) {
+        logRequest("caminoMasCorto", estacionOrigenId, estacionDestinoId, criterio);
+
+        try {
+            return handleOptional(
+                    redFerroviariaService.caminoMasCorto(estacionOrigenId, estacionDestinoId, criterio),
+                    "No hay conexión por vía entre " + estacionOrigenId + " y " + estacionDestinoId);
+
+        } catch (Exception e) {
+            logError("caminoMasCorto", e);
+            return badRequest("Error al calcular camino: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/red/estado")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> estadoRed() {
+        logRequest("estadoRed");
+
+        try {
+            return ok(redFerroviariaService.obtenerEstado(), "Estado de la red obtenido exitosamente");
+
+        } catch (Exception e) {
+            logError("estadoRed", e);
+            return badRequest("Error al obtener estado de la red: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/{id}/vias/generar")
+    public ResponseEntity<ApiResponse<Ruta>> generarVias(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "DISTANCIA") RedFerroviaria.Criterio criterio
+    ) {
+        logRequest("generarVias", id, criterio);
+
+        try {
+            if (rutaService.findById(id).isEmpty()) {
+                return notFound("Ruta no encontrada con ID: " + id);
+            }
+            return ok(rutaService.generarViasDesdeRed(id, criterio), "Vías de la ruta generadas exitosamente");
+
+        } catch (Exception e) {
+            logError("generarVias", e);
+            return badRequest("Error al generar vías: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{id}/vias/validar")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> validarVias(@PathVariable String id) {
+        logRequest("validarVias", id);
+
+        try {
+            if (rutaService.findById(id).isEmpty()) {
+                return notFound("Ruta no encontrada con ID: " + id);
+            }
+            return ok(rutaService.validarViasConRed(id), "Validación de vías completada");
+
+        } catch (Exception e) {
+            logError("validarVias", e);
+            return badRequest("Error al validar vías: " + e.getMessage());
+        }
+    }
+
     // ==================== ENDPOINTS DE GESTIÓN OPERATIVA ====================
 
     @PatchMapping("/{id}/estado")
@@ -593,14 +694,13 @@ public class RutaController extends BaseController {
         logRequest("getEstadisticasGenerales");
 
         try {
-            Long countActivas = rutaService.countActivas();
-            Double distanciaTotal = rutaService.sumDistanciaTotal();
-            Double tiempoPromedio = rutaService.avgTiempoEstimado();
+            // Un único pipeline en Mongo para los tres valores
+            Map<String, Object> resumen = estadisticasService.resumenRutas();
 
             var estadisticas = Map.<String, Object>of(
-                    "totalActivas", countActivas != null ? countActivas : 0L,
-                    "distanciaTotal", distanciaTotal != null ? distanciaTotal : 0.0,
-                    "tiempoPromedio", tiempoPromedio != null ? tiempoPromedio : 0.0,
+                    "totalActivas", resumen.getOrDefault("activas", 0L),
+                    "distanciaTotal", resumen.get("distanciaTotalKm") != null ? resumen.get("distanciaTotalKm") : 0.0,
+                    "tiempoPromedio", resumen.get("tiempoPromedioMinutos") != null ? resumen.get("tiempoPromedioMinutos") : 0.0,
                     "timestamp", java.time.LocalDateTime.now()
             );
 
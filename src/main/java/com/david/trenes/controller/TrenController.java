@@ -1,15 +1,20 @@
 package com.david.trenes.controller;
 
 import com.david.trenes.dto.ApiResponse;
+import com.david.trenes.dto.CercaniaResponse;
 import com.david.trenes.dto.TrenPosicionResponse;
 import com.david.trenes.model.Tren;
 import com.david.trenes.model.Via;
+import com.david.trenes.service.ConsultasGeoService;
+import com.david.trenes.service.PosicionesTiempoRealService;
 import com.david.trenes.service.TrenService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import jakarta.validation.Valid;
 import java.time.LocalDateTime;
@@ -23,6 +28,8 @@ import java.util.stream.Collectors;
 public class TrenController extends BaseController {
     
     private final TrenService trenService;
+    private final PosicionesTiempoRealService posicionesTiempoRealService;
+    private final ConsultasGeoService consultasGeoService;
     
     @GetMapping
     public ResponseEntity<List<Tren>> findAll() {
@@ -205,6 +212,42 @@ public class TrenController extends BaseController {
         }
     }
     
+    @GetMapping("/cercanos")
+    public ResponseEntity<ApiResponse<List<CercaniaResponse<Tren>>>> findCercanos(
+            @RequestParam Double lat, @RequestParam Double lon,
+            @RequestParam(defaultValue = "10") Double radioKm,
+            @RequestParam(defaultValue = "20") Integer limite
+    ) {
+        logRequest("findCercanos", lat, lon, radioKm, limite);
+
+        try {
+            List<CercaniaResponse<Tren>> trenes = consultasGeoService.trenesCercanos(lat, lon, radioKm, limite);
+            return ok(trenes, "Trenes cercanos obtenidos exitosamente");
+
+        } catch (Exception e) {
+            logError("findCercanos", e);
+            return badRequest("Error al buscar trenes cercanos: " + e.getMessage());
+        }
+    }
+    
+    @GetMapping("/cerca-incidente/{incidenteId}")
+    public ResponseEntity<ApiResponse<List<CercaniaResponse<Tren>>>> findCercanosAIncidente(
+            @PathVariable String incidenteId,
+            @RequestParam(defaultValue = "10") Double radioKm,
+            @RequestParam(defaultValue = "20") Integer limite
+    ) {
+        logRequest("findCercanosAIncidente", incidenteId, radioKm, limite);
+
+        try {
+            List<CercaniaResponse<Tren>> trenes = consultasGeoService.trenesCercanosAIncidente(incidenteId, radioKm, limite);
+            return ok(trenes, "Trenes cercanos al incidente obtenidos exitosamente");
+
+        } catch (Exception e) {
+            logError("findCercanosAIncidente", e);
+            return badRequest("Error al buscar trenes cercanos al incidente: " + e.getMessage());
+        }
+    }
+    
     @GetMapping("/revision-pendiente")
     public ResponseEntity<ApiResponse<List<Tren>>> findTrenesRequierenRevision(
             @RequestParam(defaultValue = "#{T(java.time.LocalDateTime).now().plusDays(30)}") LocalDateTime fecha
@@ -538,6 +581,33 @@ public class TrenController extends BaseController {
         return ResponseEntity.ok(exists);
     }
 
+    @GetMapping("/posiciones")
+    public ResponseEntity<ApiResponse<List<TrenPosicionResponse>>> getPosicionesFlota(
+            @RequestParam(required = false) List<String> ids,
+            @RequestParam(required = false) String rutaId
+    ) {
+        logRequest("getPosicionesFlota", ids, rutaId);
+
+        try {
+            List<TrenPosicionResponse> posiciones = trenService.getPosicionesFlota(ids, rutaId);
+            return ok(posiciones, "Posiciones de la flota obtenidas exitosamente");
+
+        } catch (Exception e) {
+            logError("getPosicionesFlota", e);
+            return badRequest("Error al obtener posiciones de la flota: " + e.getMessage());
+        }
+    }
+
+    @GetMapping(value = "/posiciones/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPosiciones(
+            @RequestParam(required = false) String rutaId,
+            @RequestParam(required = false) Double latMin, @RequestParam(required = false) Double latMax,
+            @RequestParam(required = false) Double lonMin, @RequestParam(required = false) Double lonMax
+    ) {
+        logRequest("streamPosiciones", rutaId, latMin, latMax, lonMin, lonMax);
+        return posicionesTiempoRealService.suscribir(rutaId, latMin, latMax, lonMin, lonMax);
+    }
+
     @GetMapping("/{id}/posicion")
     public ResponseEntity<TrenPosicionResponse> getPosicionActual(@PathVariable String id) {
         TrenPosicionResponse posicion = trenService.getPosicionActual(id);
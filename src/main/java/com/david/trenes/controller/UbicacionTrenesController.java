@@ -1,6 +1,8 @@
 package com.david.trenes.controller;
 
+import com.david.trenes.dto.TrenPosicionResponse;
 import com.david.trenes.model.Tren;
+import com.david.trenes.service.DetectorConflictosService;
 import com.david.trenes.service.UbicacionTrenesService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -8,6 +10,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/v1/ubicacion-trenes")
 @RequiredArgsConstructor
@@ -16,6 +20,7 @@ import org.springframework.web.bind.annotation.*;
 public class UbicacionTrenesController {
 
     private final UbicacionTrenesService ubicacionTrenesService;
+    private final DetectorConflictosService detectorConflictosService;
 
     @PostMapping("/ubicar-detenidos")
     public ResponseEntity<String> ubicarTrenesDetenidosEnEstaciones() {
@@ -69,4 +74,13 @@ public class UbicacionTrenesController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+
+    @GetMapping("/cercanos")
+    public ResponseEntity<List<TrenPosicionResponse>> trenesCercanos(
+            @RequestParam Double lat,
+            @RequestParam Double lon,
+            @RequestParam(defaultValue = "5") Double radioKm) {
+        log.info("Buscando trenes en marcha a menos de {} km de ({}, {})", radioKm, lat, lon);
+        return ResponseEntity.ok(detectorConflictosService.trenesCercanos(lat, lon, radioKm));
+    }
 }
@@ -1,6 +1,8 @@
 package com.david.trenes.controller;
 
+import com.david.trenes.model.Signal;
 import com.david.trenes.model.Via;
+import com.david.trenes.service.ConsultasGeoService;
 import com.david.trenes.service.ViaService;
 import com.david.trenes.service.ViaSeedService;
 import com.david.trenes.util.DateUtils;
@@ -23,6 +25,7 @@ public class ViaController {
     
     private final ViaService viaService;
     private final ViaSeedService viaSeedService;
+    private final ConsultasGeoService consultasGeoService;
     
     @GetMapping
     public ResponseEntity<List<Via>> findAll() {
@@ -104,6 +107,15 @@ public class ViaController {
         return ResponseEntity.ok(vias);
     }
     
+    @GetMapping("/{id}/senales")
+    public ResponseEntity<List<Signal>> findSenalesEnTramo(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "0.5") Double margenKm) {
+        log.info("Obteniendo señales a lo largo de la vía {} (margen {} km)", id, margenKm);
+        List<Signal> senales = consultasGeoService.senalesEnTramo(id, margenKm);
+        return ResponseEntity.ok(senales);
+    }
+    
     @GetMapping("/longitud-minima/{longitudMinima}")
     public ResponseEntity<List<Via>> findByLongitudMinima(@PathVariable Double longitudMinima) {
         log.info("Obteniendo vías con longitud mínima: {} km", longitudMinima);
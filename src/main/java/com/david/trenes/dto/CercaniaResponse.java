@@ -0,0 +1,11 @@
+package com.david.trenes.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CercaniaResponse<T> {
+    private T elemento;
+    private Double distanciaKm;
+}
@@ -0,0 +1,32 @@
+package com.david.trenes.dto;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ItinerarioResponse {
+    private String estacionOrigenId;
+    private String estacionDestinoId;
+    private LocalDateTime salida;
+    private LocalDateTime llegada;
+    private Long duracionMinutos;
+    private Integer transbordos;
+    private List<Tramo> tramos;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Tramo {
+        private String horarioId;
+        private String estacionSalidaId;
+        private String estacionLlegadaId;
+        private LocalDateTime salida;
+        private LocalDateTime llegada;
+    }
+}
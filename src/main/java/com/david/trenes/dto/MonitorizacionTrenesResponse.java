@@ -0,0 +1,70 @@
+package com.david.trenes.dto;
+
+import com.david.trenes.model.Horario;
+import com.david.trenes.model.Tren;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MonitorizacionTrenesResponse {
+    private LocalDateTime timestamp;
+    private Integer totalTrenes;
+    private Integer trenesEnMarcha;
+    private Integer trenesDetenidos;
+    private Integer trenesEnMantenimiento;
+    private Integer incidentesDetectados;
+    private Map<String, Integer> contadorPorEstado;
+    private List<EstadoTrenMonitorizado> estadosTrenes;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class EstadoTrenMonitorizado {
+        private String trenId;
+        private String numeroTren;
+        private Tren.TipoTren tipoTren;
+        private Tren.EstadoTren estadoActual;
+        private Integer capacidadPasajeros;
+        private LocalDateTime ultimaActualizacion;
+
+        // SIN_SERVICIO, PREPARANDO_SALIDA, SERVICIO_COMPLETADO o EN_MARCHA
+        private String estadoOperativo;
+        private String posicionActual;
+        private String proximoServicio;
+        private LocalDateTime horaSalida;
+
+        private String horarioActual;
+        private String rutaId;
+        private String estacionOrigen;
+        private String estacionDestino;
+        private LocalDateTime fechaSalida;
+        private LocalDateTime fechaLlegada;
+        private Horario.ParadaHorario paradaActual;
+        private Horario.ParadaHorario proximaParada;
+        private Double progresoPorcentaje;
+        private Double kilometrosRecorridos;
+        private Double kilometrosTotales;
+
+        private Boolean tieneIncidentes;
+        private List<IncidenteMonitorizado> incidentes;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class IncidenteMonitorizado {
+        private String tipo;
+        private String descripcion;
+        private String horario;
+        private String estacion;
+        private String severidad;
+    }
+}
@@ -1,5 +1,6 @@
 package com.david.trenes.dto;
 
+import com.david.trenes.model.Tren;
 import lombok.Builder;
 import lombok.Data;
 
@@ -9,6 +10,7 @@ public class TrenPosicionResponse {
     private String trenId;
     private String rutaId;
     private String viaId;
+    private Tren.EstadoTren estado;
 
     private String estacionActualId;
     private String estacionDestinoId;
@@ -0,0 +1,28 @@
+package com.david.trenes.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "leases")
+public class Lease {
+
+    @Id
+    private String nombre; // nombre de la tarea protegida, usado como _id
+
+    @Field("propietario")
+    private String propietario;
+
+    @Field("expira_en")
+    private LocalDateTime expiraEn;
+
+    @Field("fecha_actualizacion")
+    private LocalDateTime fechaActualizacion;
+}
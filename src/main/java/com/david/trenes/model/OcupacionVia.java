@@ -0,0 +1,31 @@
+package com.david.trenes.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "ocupaciones_via")
+public class OcupacionVia {
+
+    @Id
+    private String id; // viaId o viaId#segmentoId: un documento por bloque ocupado
+
+    @Field("via_id")
+    private String viaId;
+
+    @Field("segmento_id")
+    private String segmentoId;
+
+    @Field("tren_id")
+    private String trenId;
+
+    @Field("fecha_ocupacion")
+    private LocalDateTime fechaOcupacion;
+}
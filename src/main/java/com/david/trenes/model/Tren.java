@@ -4,7 +4,11 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -63,6 +67,12 @@ public class Tren {
     @Field("ubicacion_actual")
     private Via.Coordenada ubicacionActual;
 
+    // GeoJSON derivado de ubicacionActual para las consultas con índice 2dsphere
+    @JsonIgnore
+    @Field("posicion_actual")
+    @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+    private GeoJsonPoint posicionActual;
+
     @Field("via_actual_id")
     private String viaActualId;
 
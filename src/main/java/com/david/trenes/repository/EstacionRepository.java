@@ -27,7 +27,7 @@ public interface EstacionRepository extends MongoRepository<Estacion, String> {
     
     List<Estacion> findByAccesibilidadTrue();
     
-    @Query("{'ubicacion.latitud': {$gte: ?0, $lte: ?1}, 'ubicacion.longitud': {$gte: ?2, $lte: ?3}}")
+    @Query("{'posicion': {$geoWithin: {$geometry: {type: 'Polygon', coordinates: [[[?2, ?0], [?3, ?0], [?3, ?1], [?2, ?1], [?2, ?0]]]}}}}")
     List<Estacion> findByCoordenadasRango(Double latMin, Double latMax, Double lonMin, Double lonMax);
     
     @Query("{'capacidadEstacionamiento': {$gte: ?0}}")
@@ -1,13 +1,16 @@
 package com.david.trenes.repository;
 
 import com.david.trenes.model.Horario;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface HorarioRepository extends MongoRepository<Horario, String> {
@@ -99,15 +102,33 @@ public interface HorarioRepository extends MongoRepository<Horario, String> {
     @Query("{'fechaSalida': {$gte: ?0, $lte: ?1}}")
     long countByFechaSalidaBetween(LocalDateTime fechaInicio, LocalDateTime fechaFin);
     
-    @Query("{'pasajerosActuales': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$pasajeros_actuales' } } }")
     Integer sumPasajerosActuales();
     
-    @Query("{'capacidadPasajeros': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$capacidad_pasajeros' } } }")
     Integer sumCapacidadTotal();
     
-    @Query("{'tarifa': {$avg: 1}}")
+    @Aggregation("{ $group: { _id: null, promedio: { $avg: '$tarifa' } } }")
     Double avgTarifa();
 
+    List<Horario> findByActivoTrueAndEstadoInAndFechaSalidaLessThanAndFechaLlegadaGreaterThan(
+            Collection<Horario.EstadoHorario> estados,
+            LocalDateTime fechaSalidaHasta,
+            LocalDateTime fechaLlegadaDesde
+    );
+
+    List<Horario> findByFechaActualizacionAfter(LocalDateTime fechaActualizacion);
+
+    Stream<Horario> streamAllBy();
+
+    Stream<Horario> streamByFechaActualizacionAfterOrRutaIdIn(LocalDateTime fechaActualizacion, Collection<String> rutaIds);
+
+    List<Horario> findByTrenIdInAndActivoTrueAndEstadoInAndFechaSalidaAfterOrderByFechaSalidaAsc(
+            Collection<String> trenIds,
+            Collection<Horario.EstadoHorario> estados,
+            LocalDateTime fechaSalida
+    );
+
     Optional<Horario> findFirstByRutaIdAndActivoTrueAndFechaSalidaAfterOrderByFechaSalidaAsc(
             String rutaId,
             LocalDateTime fechaSalida
@@ -1,11 +1,13 @@
 package com.david.trenes.repository;
 
 import com.david.trenes.model.Incidente;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,9 +28,11 @@ public interface IncidenteRepository extends MongoRepository<Incidente, String>
     
     List<Incidente> findByReportadoPor(String reportadoPor);
     
+    List<Incidente> findByReportadoPorAndEstadoIn(String reportadoPor, Collection<Incidente.EstadoIncidente> estados);
+    
     List<Incidente> findByEquiposResponsablesContaining(String equipoId);
     
-    @Query("{'ubicacion.latitud': {$gte: ?0, $lte: ?1}, 'ubicacion.longitud': {$gte: ?2, $lte: ?3}}")
+    @Query("{'posicion': {$geoWithin: {$geometry: {type: 'Polygon', coordinates: [[[?2, ?0], [?3, ?0], [?3, ?1], [?2, ?1], [?2, ?0]]]}}}}")
     List<Incidente> findByCoordenadasRango(Double latMin, Double latMax, Double lonMin, Double lonMax);
     
     @Query("{'ubicacionDescripcion': {$regex: ?0, $options: 'i'}}")
@@ -122,18 +126,18 @@ public interface IncidenteRepository extends MongoRepository<Incidente, String>
     @Query("{'impactoOperativo.afectaServicio': true}")
     long countAfectanServicio();
     
-    @Query("{'costoEstimado': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$costo_estimado' } } }")
     Double sumCostoEstimado();
     
-    @Query("{'costoReal': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$costo_real' } } }")
     Double sumCostoReal();
     
-    @Query("{'duracionMinutos': {$avg: 1}}")
+    @Aggregation("{ $group: { _id: null, promedio: { $avg: '$duracion_minutos' } } }")
     Double avgDuracion();
     
-    @Query("{'impactoOperativo.pasajerosAfectados': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$impacto_operativo.pasajerosAfectados' } } }")
     Integer sumPasajerosAfectados();
     
-    @Query("{'impactoOperativo.trenesAfectados': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$impacto_operativo.trenesAfectados' } } }")
     Integer sumTrenesAfectados();
 }
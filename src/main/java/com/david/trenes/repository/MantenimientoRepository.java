@@ -1,6 +1,7 @@
 package com.david.trenes.repository;
 
 import com.david.trenes.model.Mantenimiento;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -97,15 +98,15 @@ public interface MantenimientoRepository extends MongoRepository<Mantenimiento,
     @Query("{'fechaProgramada': {$gte: ?0, $lte: ?1}}")
     long countByFechaProgramadaBetween(LocalDateTime fechaInicio, LocalDateTime fechaFin);
     
-    @Query("{'costoEstimado': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$costo_estimado' } } }")
     Double sumCostoEstimado();
     
-    @Query("{'costoReal': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$costo_real' } } }")
     Double sumCostoReal();
     
-    @Query("{'duracionEstimadaHoras': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$duracion_estimada_horas' } } }")
     Integer sumDuracionEstimada();
     
-    @Query("{'duracionRealHoras': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$duracion_real_horas' } } }")
     Integer sumDuracionReal();
 }
@@ -1,6 +1,7 @@
 package com.david.trenes.repository;
 
 import com.david.trenes.model.Ruta;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -75,12 +76,15 @@ public interface RutaRepository extends MongoRepository<Ruta, String> {
     
     long countByActivoTrue();
     
-    @Query("{'distanciaTotalKm': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$distancia_total_km' } } }")
     Double sumDistanciaTotal();
     
-    @Query("{'distanciaTotalKm': {$sum: 1}, 'estado': ?0}")
+    @Aggregation(pipeline = {
+            "{ $match: { estado: ?0 } }",
+            "{ $group: { _id: null, total: { $sum: '$distancia_total_km' } } }"
+    })
     Double sumDistanciaPorEstado(Ruta.EstadoRuta estado);
     
-    @Query("{'tiempoEstimadoMinutos': {$avg: 1}}")
+    @Aggregation("{ $group: { _id: null, promedio: { $avg: '$tiempo_estimado_minutos' } } }")
     Double avgTiempoEstimado();
 }
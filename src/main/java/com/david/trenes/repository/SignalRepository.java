@@ -30,7 +30,7 @@ public interface SignalRepository extends MongoRepository<Signal, String> {
     
     List<Signal> findByOrientacion(Signal.OrientacionSignal orientacion);
     
-    @Query("{'ubicacion.latitud': {$gte: ?0, $lte: ?1}, 'ubicacion.longitud': {$gte: ?2, $lte: ?3}}")
+    @Query("{'posicion': {$geoWithin: {$geometry: {type: 'Polygon', coordinates: [[[?2, ?0], [?3, ?0], [?3, ?1], [?2, ?1], [?2, ?0]]]}}}}")
     List<Signal> findByCoordenadasRango(Double latMin, Double latMax, Double lonMin, Double lonMax);
     
     @Query("{'kilometro': {$gte: ?0, $lte: ?1}}")
@@ -1,6 +1,7 @@
 package com.david.trenes.repository;
 
 import com.david.trenes.model.Tren;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -29,7 +30,7 @@ public interface TrenRepository extends MongoRepository<Tren, String> {
     
     List<Tren> findByConductorActualId(String conductorActualId);
     
-    @Query("{'ubicacionActual.latitud': {$gte: ?0, $lte: ?1}, 'ubicacionActual.longitud': {$gte: ?2, $lte: ?3}}")
+    @Query("{'posicionActual': {$geoWithin: {$geometry: {type: 'Polygon', coordinates: [[[?2, ?0], [?3, ?0], [?3, ?1], [?2, ?1], [?2, ?0]]]}}}}")
     List<Tren> findByUbicacionRango(Double latMin, Double latMax, Double lonMin, Double lonMax);
     
     @Query("{'velocidadMaxima': {$gte: ?0}}")
@@ -78,9 +79,9 @@ public interface TrenRepository extends MongoRepository<Tren, String> {
     
     long countByActivoTrue();
     
-    @Query("{'kilometrajeTotal': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$kilometraje_total' } } }")
     Double sumKilometrajeTotal();
     
-    @Query("{'capacidadPasajeros': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$capacidad_pasajeros' } } }")
     Integer sumCapacidadTotalPasajeros();
 }
@@ -1,6 +1,7 @@
 package com.david.trenes.repository;
 
 import com.david.trenes.model.Via;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -52,9 +53,12 @@ public interface ViaRepository extends MongoRepository<Via, String> {
     
     long countByTipoVia(Via.TipoVia tipoVia);
     
-    @Query("{'longitudKm': {$sum: 1}}")
+    @Aggregation("{ $group: { _id: null, total: { $sum: '$longitud_km' } } }")
     Double sumLongitudTotal();
     
-    @Query("{'longitudKm': {$sum: 1}, 'estado': ?0}")
+    @Aggregation(pipeline = {
+            "{ $match: { estado: ?0 } }",
+            "{ $group: { _id: null, total: { $sum: '$longitud_km' } } }"
+    })
     Double sumLongitudPorEstado(Via.EstadoVia estado);
 }
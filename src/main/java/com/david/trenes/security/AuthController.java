@@ -29,10 +29,11 @@ public class AuthController {
     private final JwtTokenProvider tokenProvider;
     private final UsuarioRepository usuarioRepository;
     private final SecurityMonitoringService securityMonitoringService;
+    private final ClientIpResolver clientIpResolver;
     
     @PostMapping("/login")
     public ResponseEntity<AuthResponse> authenticateUser(@Valid @RequestBody LoginRequest loginRequest, HttpServletRequest request) {
-        String clientIp = getClientIp(request);
+        String clientIp = clientIpResolver.resolve(request);
         log.info("Autenticando usuario: {} desde IP: {}", loginRequest.getUsername(), clientIp);
         
         try {
@@ -173,18 +174,4 @@ public class AuthController {
         
         return ResponseEntity.ok().build();
     }
-    
-    private String getClientIp(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        
-        return request.getRemoteAddr();
-    }
 }
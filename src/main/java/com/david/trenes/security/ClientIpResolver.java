@@ -0,0 +1,55 @@
+package com.david.trenes.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves the client IP used as the key for blocking, rate limiting and
+ * security monitoring. Forwarding headers are set by the client, so they are
+ * only honoured when the direct peer is one of the configured trusted
+ * proxies; X-Forwarded-For is then walked from the right, skipping trusted
+ * proxies, and the first other address is the client. With no trusted
+ * proxies configured the headers are ignored and the peer address is used.
+ */
+@Component
+public class ClientIpResolver {
+
+    private final Set<String> trustedProxies;
+
+    public ClientIpResolver(@Value("${app.security.trusted-proxies:}") String trustedProxies) {
+        this.trustedProxies = Arrays.stream(trustedProxies.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public String resolve(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        if (!trustedProxies.contains(remoteAddr)) {
+            return remoteAddr;
+        }
+
+        String xForwardedFor = request.getHeader("X-Forwarded-For");
+        if (xForwardedFor != null && !xForwardedFor.isBlank()) {
+            String[] hops = xForwardedFor.split(",");
+            for (int i = hops.length - 1; i >= 0; i--) {
+                String hop = hops[i].trim();
+                if (!hop.isEmpty() && !trustedProxies.contains(hop)) {
+                    return hop;
+                }
+            }
+        }
+
+        String xRealIp = request.getHeader("X-Real-IP");
+        if (xRealIp != null && !xRealIp.isBlank()) {
+            return xRealIp.trim();
+        }
+
+        return remoteAddr;
+    }
+}
@@ -0,0 +1,245 @@
+package com.david.trenes.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cluster-wide counters for rate limiting and security metrics.
+ *
+ * Each node counts hits locally and, every few hundred ms, pushes the deltas
+ * to the "rate_limit_counters" collection with one unordered bulk of $inc
+ * upserts, then reads back the totals of the counters it is tracking. Requests
+ * only consult the local near-cache ("hits from other nodes" per counter), so
+ * enforcement never waits on Mongo. Counter documents carry an expiresAt field
+ * with a TTL index, so old windows disappear on their own.
+ */
+@Component
+@Slf4j
+public class DistributedRateLimitStore {
+
+    static final String COUNTERS_COLLECTION = "rate_limit_counters";
+    static final String METRICS_COLLECTION = "security_metrics";
+    private static final String METRICS_ID = "cluster";
+    private static final int READ_CHUNK = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.rate-limit.distributed.enabled:false}")
+    private boolean enabled;
+
+    // Counters tracked by this node; beyond this, new keys are only limited locally
+    @Value("${app.rate-limit.distributed.max-keys:20000}")
+    private int maxKeys;
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> pendingMetrics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> clusterMetrics = new ConcurrentHashMap<>();
+    private final LongAdder droppedKeys = new LongAdder();
+    private volatile long lastSyncMs;
+
+    public DistributedRateLimitStore(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    private static class Counter {
+        private final long windowMs;
+        private final long window;
+        private final LongAdder pending = new LongAdder();
+        // Only touched by the sync thread
+        private long flushed;
+        private volatile int others;
+
+        Counter(long windowMs, long window) {
+            this.windowMs = windowMs;
+            this.window = window;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            mongoTemplate.indexOps(COUNTERS_COLLECTION)
+                    .createIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO));
+            log.info("Distributed rate limiting enabled; TTL index ready on {}", COUNTERS_COLLECTION);
+        } catch (Exception e) {
+            log.warn("Could not create TTL index on {}: {}", COUNTERS_COLLECTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Counts one local hit for the key in the window containing {@code nowMs}.
+     */
+    public void record(String scope, String key, long windowMs, long nowMs) {
+        long window = nowMs / windowMs;
+        String id = counterId(scope, key, windowMs, window);
+        Counter counter = counters.get(id);
+        if (counter == null) {
+            if (counters.size() >= maxKeys) {
+                droppedKeys.increment();
+                return;
+            }
+            counter = counters.computeIfAbsent(id, k -> new Counter(windowMs, window));
+        }
+        counter.pending.increment();
+    }
+
+    /**
+     * Hits recorded by other nodes in the given window, as of the last sync.
+     */
+    public int othersCount(String scope, String key, long windowMs, long window) {
+        Counter counter = counters.get(counterId(scope, key, windowMs, window));
+        return counter != null ? counter.others : 0;
+    }
+
+    /**
+     * Sliding-window estimate of the hits from other nodes: previous window
+     * weighted by the part of it still inside the sliding window, plus the
+     * current one.
+     */
+    public double othersEstimate(String scope, String key, long windowMs, long nowMs) {
+        long window = nowMs / windowMs;
+        double previousWeight = 1.0 - (double) (nowMs % windowMs) / windowMs;
+        return othersCount(scope, key, windowMs, window - 1) * previousWeight
+                + othersCount(scope, key, windowMs, window);
+    }
+
+    public void incrementMetric(String name) {
+        pendingMetrics.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Cluster-wide metric total as of the last sync, including this node's
+     * pending increments.
+     */
+    public long getClusterMetric(String name) {
+        LongAdder pending = pendingMetrics.get(name);
+        return clusterMetrics.getOrDefault(name, 0L) + (pending != null ? pending.sum() : 0L);
+    }
+
+    @Scheduled(fixedDelayString = "${app.rate-limit.distributed.sync-ms:250}")
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            evictExpired(now);
+            flushCounters(now);
+            refreshCounters();
+            syncMetrics();
+            lastSyncMs = now;
+        } catch (Exception e) {
+            log.warn("Rate limit counter sync failed: {}", e.getMessage());
+        }
+    }
+
+    private void flushCounters(long now) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COUNTERS_COLLECTION);
+        int operations = 0;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter counter = entry.getValue();
+            long delta = counter.pending.sumThenReset();
+            if (delta == 0) {
+                continue;
+            }
+            counter.flushed += delta;
+            // Keep the document while it can still be the "previous" window
+            Date expiresAt = new Date((counter.window + 2) * counter.windowMs);
+            bulk.upsert(new Query(Criteria.where("_id").is(entry.getKey())),
+                    new Update().inc("count", delta).setOnInsert("expiresAt", expiresAt));
+            operations++;
+        }
+        if (operations > 0) {
+            bulk.execute();
+        }
+    }
+
+    private void refreshCounters() {
+        List<String> ids = new ArrayList<>(counters.keySet());
+        for (int from = 0; from < ids.size(); from += READ_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + READ_CHUNK));
+            List<Document> documents = mongoTemplate.find(
+                    new Query(Criteria.where("_id").in(chunk)), Document.class, COUNTERS_COLLECTION);
+            for (Document document : documents) {
+                Counter counter = counters.get(document.getString("_id"));
+                Number count = document.get("count", Number.class);
+                if (counter != null && count != null) {
+                    counter.others = (int) Math.max(0, count.longValue() - counter.flushed);
+                }
+            }
+        }
+    }
+
+    private void syncMetrics() {
+        Update update = new Update();
+        boolean changed = false;
+        for (Map.Entry<String, LongAdder> entry : pendingMetrics.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta != 0) {
+                update.inc(entry.getKey(), delta);
+                changed = true;
+            }
+        }
+
+        Document totals = changed
+                ? mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(METRICS_ID)), update,
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, METRICS_COLLECTION)
+                : mongoTemplate.findById(METRICS_ID, Document.class, METRICS_COLLECTION);
+        if (totals == null) {
+            return;
+        }
+        totals.forEach((name, value) -> {
+            if (value instanceof Number number) {
+                clusterMetrics.put(name, number.longValue());
+            }
+        });
+    }
+
+    private void evictExpired(long now) {
+        counters.entrySet().removeIf(e -> (e.getValue().window + 2) * e.getValue().windowMs < now
+                && e.getValue().pending.sum() == 0);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trackedCounters", counters.size());
+        stats.put("maxKeys", maxKeys);
+        stats.put("droppedKeys", droppedKeys.sum());
+        stats.put("lastSyncMs", lastSyncMs);
+        return stats;
+    }
+
+    private static String counterId(String scope, String key, long windowMs, long window) {
+        return scope + '|' + key + '|' + windowMs + '|' + window;
+    }
+}
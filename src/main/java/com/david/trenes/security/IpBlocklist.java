@@ -0,0 +1,253 @@
+package com.david.trenes.security;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Temporary IP blocklist. The check is a single ConcurrentHashMap lookup;
+ * expiry is driven by a hashed timing wheel so unblocking does not scan the
+ * whole map. Blocks are persisted in "ip_blocks" (TTL index on expiresAt),
+ * reloaded at startup and synchronised periodically so every node enforces
+ * blocks raised by any other, and drops blocks lifted on any other.
+ */
+@Component
+@Slf4j
+public class IpBlocklist {
+
+    static final String COLLECTION = "ip_blocks";
+    private static final int WHEEL_SLOTS = 64;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.security.ip-blocklist.tick-ms:10000}")
+    private long tickMs;
+
+    // ip -> expiry (epoch ms)
+    private final ConcurrentHashMap<String, Long> blocked = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> reasons = new ConcurrentHashMap<>();
+    // When each local entry was last set, so a refresh does not drop a block newer than its read
+    private final ConcurrentHashMap<String, Long> updatedAt = new ConcurrentHashMap<>();
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<String>[] wheel = new ConcurrentLinkedQueue[WHEEL_SLOTS];
+    private final LongAdder rejectedRequests = new LongAdder();
+    private long lastTick = -1;
+
+    public IpBlocklist(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * @return milliseconds left on the block, or 0 if the IP is not blocked
+     */
+    public long remainingBlockMs(String ip, long nowMs) {
+        Long expiresAt = blocked.get(ip);
+        if (expiresAt == null) {
+            return 0;
+        }
+        if (expiresAt <= nowMs) {
+            if (blocked.remove(ip, expiresAt)) {
+                reasons.remove(ip);
+                updatedAt.remove(ip);
+            }
+            return 0;
+        }
+        rejectedRequests.increment();
+        return expiresAt - nowMs;
+    }
+
+    public boolean isBlocked(String ip) {
+        Long expiresAt = blocked.get(ip);
+        return expiresAt != null && expiresAt > System.currentTimeMillis();
+    }
+
+    /**
+     * Blocks the IP for {@code duration}, extending an existing shorter block.
+     */
+    public void block(String ip, String reason, Duration duration) {
+        long expiresAt = System.currentTimeMillis() + duration.toMillis();
+        Long merged = blocked.merge(ip, expiresAt, Math::max);
+        if (merged != expiresAt) {
+            return;
+        }
+        reasons.put(ip, reason);
+        updatedAt.put(ip, System.currentTimeMillis());
+        schedule(ip, expiresAt);
+
+        try {
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(ip)),
+                    new Update()
+                            .set("reason", reason)
+                            .set("expiresAt", new Date(expiresAt))
+                            .set("blockedAt", new Date()),
+                    COLLECTION);
+        } catch (Exception e) {
+            log.warn("Could not persist block for IP {}: {}", ip, e.getMessage());
+        }
+    }
+
+    public boolean unblock(String ip) {
+        boolean removed = blocked.remove(ip) != null;
+        reasons.remove(ip);
+        updatedAt.remove(ip);
+        try {
+            mongoTemplate.remove(new Query(Criteria.where("_id").is(ip)), COLLECTION);
+        } catch (Exception e) {
+            log.warn("Could not delete persisted block for IP {}: {}", ip, e.getMessage());
+        }
+        if (removed) {
+            log.info("IP unblocked: {}", ip);
+        }
+        return removed;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            mongoTemplate.indexOps(COLLECTION)
+                    .createIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO));
+        } catch (Exception e) {
+            log.warn("Could not create TTL index on {}: {}", COLLECTION, e.getMessage());
+        }
+        int loaded = refresh();
+        log.info("IP blocklist loaded: {} active blocks", loaded);
+    }
+
+    @Scheduled(fixedDelayString = "${app.security.ip-blocklist.refresh-ms:30000}",
+            initialDelayString = "${app.security.ip-blocklist.refresh-ms:30000}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    /**
+     * Merges the active blocks persisted by any node and drops local blocks
+     * whose document is gone (lifted through another node's unblock).
+     *
+     * @return number of active persisted blocks
+     */
+    public synchronized int refresh() {
+        try {
+            long readAt = System.currentTimeMillis();
+            List<Document> documents = mongoTemplate.find(
+                    new Query(Criteria.where("expiresAt").gt(new Date(readAt))), Document.class, COLLECTION);
+            Set<String> persisted = new HashSet<>();
+            for (Document document : documents) {
+                String ip = document.getString("_id");
+                persisted.add(ip);
+                long expiresAt = document.getDate("expiresAt").getTime();
+                Long merged = blocked.merge(ip, expiresAt, Math::max);
+                if (merged == expiresAt) {
+                    reasons.put(ip, document.getString("reason"));
+                    updatedAt.put(ip, readAt);
+                    schedule(ip, expiresAt);
+                }
+            }
+
+            for (String ip : blocked.keySet()) {
+                if (!persisted.contains(ip) && updatedAt.getOrDefault(ip, 0L) < readAt) {
+                    blocked.remove(ip);
+                    reasons.remove(ip);
+                    updatedAt.remove(ip);
+                    log.info("IP block lifted on another node: {}", ip);
+                }
+            }
+            return documents.size();
+        } catch (Exception e) {
+            log.warn("Could not load persisted IP blocks: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Advances the wheel: only the buckets of the elapsed ticks are visited.
+     * Entries due in a later rotation, or superseded by a longer block, are
+     * kept or dropped accordingly.
+     */
+    @Scheduled(fixedDelayString = "${app.security.ip-blocklist.tick-ms:10000}")
+    public synchronized void expire() {
+        long now = System.currentTimeMillis();
+        long currentTick = now / tickMs;
+        long from = lastTick < 0 || currentTick - lastTick > WHEEL_SLOTS ? currentTick - WHEEL_SLOTS + 1 : lastTick + 1;
+
+        for (long tick = from; tick <= currentTick; tick++) {
+            int slot = (int) Math.floorMod(tick, WHEEL_SLOTS);
+            ConcurrentLinkedQueue<String> bucket = wheel[slot];
+            List<String> requeue = new ArrayList<>();
+            String ip;
+            while ((ip = bucket.poll()) != null) {
+                Long expiresAt = blocked.get(ip);
+                if (expiresAt == null || slotOf(expiresAt) != slot) {
+                    // Unblocked or re-scheduled in another bucket
+                    continue;
+                }
+                if (expiresAt <= now) {
+                    if (blocked.remove(ip, expiresAt)) {
+                        reasons.remove(ip);
+                        updatedAt.remove(ip);
+                        log.info("Temporary block expired for IP: {}", ip);
+                    }
+                } else {
+                    requeue.add(ip);
+                }
+            }
+            bucket.addAll(requeue);
+        }
+        lastTick = currentTick;
+    }
+
+    public Map<String, Object> getBlockedIps() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> result = new LinkedHashMap<>();
+        blocked.forEach((ip, expiresAt) -> {
+            if (expiresAt > now) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("reason", reasons.get(ip));
+                entry.put("expiresAt", new Date(expiresAt));
+                entry.put("remainingSeconds", (expiresAt - now) / 1000);
+                result.put(ip, entry);
+            }
+        });
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("blockedIps", blocked.size());
+        stats.put("rejectedRequests", rejectedRequests.sum());
+        return stats;
+    }
+
+    private void schedule(String ip, long expiresAt) {
+        wheel[slotOf(expiresAt)].add(ip);
+    }
+
+    private int slotOf(long expiresAt) {
+        // Rounded up so the bucket is visited on or after the expiry
+        return (int) Math.floorMod((expiresAt + tickMs - 1) / tickMs, WHEEL_SLOTS);
+    }
+}
@@ -0,0 +1,48 @@
+package com.david.trenes.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Rejects requests from temporarily blocked IPs before anything else runs
+ * (JWT parsing, rate limiting, controllers). Registered as a servlet filter
+ * right after the security headers filter, ahead of the Spring Security chain.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class IpBlocklistFilter extends OncePerRequestFilter {
+
+    private final IpBlocklist ipBlocklist;
+    private final ClientIpResolver clientIpResolver;
+
+    public IpBlocklistFilter(IpBlocklist ipBlocklist, ClientIpResolver clientIpResolver) {
+        this.ipBlocklist = ipBlocklist;
+        this.clientIpResolver = clientIpResolver;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+
+        long remainingMs = ipBlocklist.remainingBlockMs(clientIpResolver.resolve(request), System.currentTimeMillis());
+        if (remainingMs > 0) {
+            long retryAfter = (remainingMs + 999) / 1000;
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
+            response.setContentType("application/json");
+            response.getWriter().write(
+                "{\"error\": \"Forbidden\", \"message\": \"IP temporarily blocked\", \"retryAfter\": " + retryAfter + "}");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -2,60 +2,118 @@ package com.david.trenes.security;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SecurityException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class JwtTokenProvider {
     
+    public static final String CLAIM_ROLE = "role";
+    public static final String CLAIM_USUARIO_ID = "usuarioId";
+    
     @Value("${app.jwt.secret:miClaveSecretaPorDefectoParaTrenes123456789}")
     private String jwtSecret;
     
     @Value("${app.jwt.expiration:86400000}") // 24 horas por defecto
     private int jwtExpirationInMs;
     
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    // Tokens already verified by this node; bounded, cleared when full
+    private static final int MAX_VERIFIED_TOKENS = 4096;
+    
+    private final MongoUserDetailsService userDetailsService;
+    
+    private SecretKey signingKey;
+    private JwtParser jwtParser;
+    private final ConcurrentHashMap<String, Claims> verifiedClaims = new ConcurrentHashMap<>();
+    
+    /**
+     * The key and parser are immutable and thread-safe, so they are built once
+     * instead of per token.
+     */
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
     }
     
-    public String generateToken(Authentication authentication) {
-        UserDetails userPrincipal = (UserDetails) authentication.getPrincipal();
+    /**
+     * Verifies the token and returns its claims. A token seen before skips the
+     * signature check and JSON parsing but is still checked for expiry.
+     *
+     * @throws JwtException or IllegalArgumentException if the token is not valid
+     */
+    private Claims parseClaims(String token) {
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("JWT String argument cannot be null or empty");
+        }
         
+        Claims claims = verifiedClaims.get(token);
+        if (claims == null) {
+            claims = jwtParser.parseClaimsJws(token).getBody();
+            if (verifiedClaims.size() >= MAX_VERIFIED_TOKENS) {
+                verifiedClaims.clear();
+            }
+            verifiedClaims.put(token, claims);
+        } else if (claims.getExpiration() != null && claims.getExpiration().before(new Date())) {
+            verifiedClaims.remove(token);
+            throw new ExpiredJwtException(null, claims, "JWT expired at " + claims.getExpiration());
+        }
+        return claims;
+    }
+    
+    public String generateToken(Authentication authentication) {
+        return buildToken((UserDetails) authentication.getPrincipal());
+    }
+    
+    private String buildToken(UserDetails userPrincipal) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtExpirationInMs);
         
-        return Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
                 .setSubject(userPrincipal.getUsername())
+                .claim(CLAIM_ROLE, userPrincipal.getAuthorities().stream()
+                        .map(GrantedAuthority::getAuthority)
+                        .collect(Collectors.joining(",")));
+        if (userPrincipal instanceof UsuarioPrincipal usuarioPrincipal) {
+            builder.claim(CLAIM_USUARIO_ID, usuarioPrincipal.getUsuarioId());
+        }
+        
+        return builder
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
-                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .signWith(signingKey, SignatureAlgorithm.HS512)
                 .compact();
     }
     
-    public String getUsernameFromJWT(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-        
-        return claims.getSubject();
-    }
-    
-    public boolean validateToken(String token) {
+    /**
+     * Parses and validates the token once.
+     *
+     * @return the claims, or null if the token is not valid
+     */
+    public Claims getValidatedClaims(String token) {
         try {
-            Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token);
-            return true;
+            return parseClaims(token);
         } catch (SecurityException ex) {
             log.error("Invalid JWT signature");
         } catch (MalformedJwtException ex) {
@@ -67,39 +125,50 @@ public class JwtTokenProvider {
         } catch (IllegalArgumentException ex) {
             log.error("JWT claims string is empty");
         }
-        return false;
+        return null;
+    }
+    
+    /**
+     * Authorities from the role claim; empty if the token predates it.
+     */
+    public static List<SimpleGrantedAuthority> getAuthoritiesFromClaims(Claims claims) {
+        String roles = claims.get(CLAIM_ROLE, String.class);
+        if (roles == null || roles.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(roles.split(","))
+                .map(SimpleGrantedAuthority::new)
+                .toList();
+    }
+    
+    public String getUsernameFromJWT(String token) {
+        return parseClaims(token).getSubject();
+    }
+    
+    public boolean validateToken(String token) {
+        return getValidatedClaims(token) != null;
     }
     
     public Date getExpirationDateFromJWT(String token) {
-        Claims claims = Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-        
-        return claims.getExpiration();
+        return parseClaims(token).getExpiration();
     }
     
+    /**
+     * Issues a new token with the role/usuarioId claims of the usuario as it is
+     * now. Copying them from the old token would let a demoted or deleted user
+     * keep the old role alive just by refreshing, since the new iat passes
+     * PrincipalCache.isTokenCurrent.
+     *
+     * @return the new token, or null if the token is not valid or the usuario no longer exists
+     */
     public String refreshToken(String token) {
         try {
-            Claims claims = Jwts.parserBuilder()
-                    .setSigningKey(getSigningKey())
-                    .build()
-                    .parseClaimsJws(token)
-                    .getBody();
-            
-            String username = claims.getSubject();
+            String username = parseClaims(token).getSubject();
+            return buildToken(userDetailsService.loadUserByUsername(username));
             
-            Date now = new Date();
-            Date expiryDate = new Date(now.getTime() + jwtExpirationInMs);
-            
-            return Jwts.builder()
-                    .setSubject(username)
-                    .setIssuedAt(now)
-                    .setExpiration(expiryDate)
-                    .signWith(getSigningKey(), SignatureAlgorithm.HS512)
-                    .compact();
-                    
+        } catch (UsernameNotFoundException ex) {
+            log.warn("Refusing to refresh token of a user that no longer exists");
+            return null;
         } catch (Exception ex) {
             log.error("Error refreshing JWT token", ex);
             return null;
@@ -108,8 +177,8 @@ public class JwtTokenProvider {
     
     public boolean isTokenExpired(String token) {
         try {
-            Date expiration = getExpirationDateFromJWT(token);
-            return expiration.before(new Date());
+            Date expiration = parseClaims(token).getExpiration();
+            return expiration != null && expiration.before(new Date());
         } catch (Exception ex) {
             return true;
         }
@@ -2,11 +2,8 @@ package com.david.trenes.security;
 
 import com.david.trenes.model.Usuario;
 import com.david.trenes.repository.UsuarioRepository;
-import java.util.List;
 import java.util.Optional;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
-import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -28,17 +25,11 @@ public class MongoUserDetailsService implements UserDetailsService {
             () -> new UsernameNotFoundException("Usuario no encontrado: " + usernameOrEmail)
         );
 
-        String role = usuario.getRole();
-        List<SimpleGrantedAuthority> authorities = List.of();
-        if (role != null && !role.isBlank()) {
-            String authority = role.startsWith("ROLE_") ? role : "ROLE_" + role;
-            authorities = List.of(new SimpleGrantedAuthority(authority));
-        }
-
-        return User.builder()
-            .username(usuario.getUsername())
-            .password(usuario.getPassword())
-            .authorities(authorities)
-            .build();
+        return new UsuarioPrincipal(
+            usuario.getUsername(),
+            usuario.getPassword(),
+            UsuarioPrincipal.authoritiesFor(usuario.getRole()),
+            usuario.getId()
+        );
     }
 }
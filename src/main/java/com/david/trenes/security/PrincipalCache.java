@@ -0,0 +1,234 @@
+package com.david.trenes.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded, TTL-evicting cache of authenticated principals by username, so
+ * JwtAuthenticationFilter does not hit the users collection on every request.
+ *
+ * Invalidating a user also records when it happened: tokens issued before
+ * that instant no longer have their role/usuarioId claims trusted and the
+ * principal is reloaded from Mongo once.
+ *
+ * Invalidations are also written to "principal_invalidations" (TTL on
+ * expiresAt) and merged by every node each sync-ms, so a role change or
+ * deletion handled by one node stops the stale claims being trusted on the
+ * others after at most that delay.
+ */
+@Component
+@Slf4j
+public class PrincipalCache {
+
+    static final String COLLECTION = "principal_invalidations";
+    private static final String ALL_ID = "all";
+    private static final String USERNAME_PREFIX = "u:";
+    private static final String USUARIO_ID_PREFIX = "id:";
+    // Re-read marks this much older than the newest one seen, for clock skew between nodes
+    private static final long SYNC_OVERLAP_MS = 60_000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.security.principal-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.security.principal-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    // Invalidation marks only matter while a token issued before them can still be valid
+    @Value("${app.jwt.expiration:86400000}")
+    private long jwtExpirationInMs;
+
+    private final ConcurrentHashMap<String, CachedPrincipal> principals = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> invalidatedUsernames = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> invalidatedUsuarioIds = new ConcurrentHashMap<>();
+    private volatile long allInvalidatedAt = Long.MIN_VALUE;
+    private long lastSeenMark = 0L;
+
+    public PrincipalCache(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class CachedPrincipal {
+        private final UserDetails principal;
+        private final long expiresAt;
+    }
+
+    public UserDetails get(String username) {
+        CachedPrincipal cached = principals.get(username);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.getExpiresAt() < System.currentTimeMillis()) {
+            principals.remove(username, cached);
+            return null;
+        }
+        return cached.getPrincipal();
+    }
+
+    public void put(UserDetails principal) {
+        if (principals.size() >= maxEntries) {
+            evictExpired();
+            // Still full: drop arbitrary entries, they will be reloaded on demand
+            Iterator<String> it = principals.keySet().iterator();
+            while (principals.size() >= maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        principals.put(principal.getUsername(),
+                new CachedPrincipal(principal, System.currentTimeMillis() + ttlSeconds * 1000));
+    }
+
+    /**
+     * Whether the role/usuarioId claims of a token issued at {@code issuedAt}
+     * can be used as-is for this user.
+     */
+    public boolean isTokenCurrent(String username, String usuarioId, Date issuedAt) {
+        long issued = issuedAt != null ? issuedAt.getTime() : 0L;
+        return issued > allInvalidatedAt
+                && issued > invalidatedUsernames.getOrDefault(username, Long.MIN_VALUE)
+                && (usuarioId == null || issued > invalidatedUsuarioIds.getOrDefault(usuarioId, Long.MIN_VALUE));
+    }
+
+    public void invalidate(String username) {
+        if (username == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        markUsername(username, now);
+        publish(USERNAME_PREFIX + username, now);
+        log.debug("Principal cache invalidated for user: {}", username);
+    }
+
+    /**
+     * Invalidates the usuario under its current username and under any
+     * previous one still cached or carried in older tokens.
+     */
+    public void invalidateUsuario(String usuarioId, String username) {
+        invalidate(username);
+        if (usuarioId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        markUsuarioId(usuarioId, now);
+        publish(USUARIO_ID_PREFIX + usuarioId, now);
+    }
+
+    public void invalidateAll() {
+        long now = System.currentTimeMillis();
+        markAll(now);
+        publish(ALL_ID, now);
+        log.debug("Principal cache cleared");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        try {
+            mongoTemplate.indexOps(COLLECTION)
+                    .createIndex(new Index().on("expiresAt", Sort.Direction.ASC).expire(Duration.ZERO));
+        } catch (Exception e) {
+            log.warn("Could not create TTL index on {}: {}", COLLECTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Merges the invalidations recorded by any node since the last sync.
+     */
+    @Scheduled(fixedDelayString = "${app.security.principal-cache.sync-ms:5000}")
+    public synchronized void syncInvalidations() {
+        try {
+            List<Document> marks = mongoTemplate.find(
+                    new Query(Criteria.where("at").gt(new Date(lastSeenMark - SYNC_OVERLAP_MS))), Document.class, COLLECTION);
+            for (Document mark : marks) {
+                String id = mark.getString("_id");
+                long at = mark.getDate("at").getTime();
+                lastSeenMark = Math.max(lastSeenMark, at);
+                if (ALL_ID.equals(id)) {
+                    markAll(at);
+                } else if (id.startsWith(USERNAME_PREFIX)) {
+                    markUsername(id.substring(USERNAME_PREFIX.length()), at);
+                } else if (id.startsWith(USUARIO_ID_PREFIX)) {
+                    markUsuarioId(id.substring(USUARIO_ID_PREFIX.length()), at);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Could not sync principal invalidations: {}", e.getMessage());
+        }
+    }
+
+    private void markUsername(String username, long at) {
+        if (invalidatedUsernames.merge(username, at, Math::max) == at) {
+            principals.remove(username);
+        }
+    }
+
+    private void markUsuarioId(String usuarioId, long at) {
+        if (invalidatedUsuarioIds.merge(usuarioId, at, Math::max) != at) {
+            return;
+        }
+        // Also under any previous username still cached
+        principals.entrySet().removeIf(e -> e.getValue().getPrincipal() instanceof UsuarioPrincipal p
+                && usuarioId.equals(p.getUsuarioId()));
+    }
+
+    private void markAll(long at) {
+        if (at > allInvalidatedAt) {
+            allInvalidatedAt = at;
+            principals.clear();
+        }
+    }
+
+    private void publish(String id, long at) {
+        try {
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(id)),
+                    new Update()
+                            .max("at", new Date(at))
+                            .max("expiresAt", new Date(at + jwtExpirationInMs)),
+                    COLLECTION);
+        } catch (Exception e) {
+            log.warn("Could not publish principal invalidation {}: {}", id, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.security.principal-cache.cleanup-ms:60000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        principals.entrySet().removeIf(e -> e.getValue().getExpiresAt() < now);
+        invalidatedUsernames.entrySet().removeIf(e -> e.getValue() + jwtExpirationInMs < now);
+        invalidatedUsuarioIds.entrySet().removeIf(e -> e.getValue() + jwtExpirationInMs < now);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("principals", principals.size());
+        stats.put("invalidations", invalidatedUsernames.size() + invalidatedUsuarioIds.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlSeconds", ttlSeconds);
+        return stats;
+    }
+}
@@ -1,89 +1,108 @@
 package com.david.trenes.security;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Component
-@Slf4j
 public class RateLimitingFilter extends OncePerRequestFilter {
     
     private final SecurityMonitoringService securityMonitoringService;
+    private final DistributedRateLimitStore distributedStore;
+    private final ClientIpResolver clientIpResolver;
     
-    public RateLimitingFilter(SecurityMonitoringService securityMonitoringService) {
+    public RateLimitingFilter(SecurityMonitoringService securityMonitoringService,
+                              DistributedRateLimitStore distributedStore,
+                              ClientIpResolver clientIpResolver) {
         this.securityMonitoringService = securityMonitoringService;
+        this.distributedStore = distributedStore;
+        this.clientIpResolver = clientIpResolver;
     }
     
+    // Counter dimensions sharing the limiter table
+    private static final int IP_GENERAL = 0;
+    private static final int IP_LOGIN = 1;
+    private static final int USER_GENERAL = 2;
+    private static final int USER_BILLETES = 3;
+    private static final String[] SCOPES = {"ip-general", "ip-login", "user-general", "user-billetes"};
+    
+    private static final RateLimitResult ALLOWED = RateLimitResult.builder().limited(false).build();
+    
     // Rate limits by IP
-    private static final int MAX_REQUESTS_PER_MINUTE_IP = 60;
-    private static final int MAX_LOGIN_ATTEMPTS_PER_MINUTE_IP = 5;
+    @Value("${app.rate-limit.general.ip-limit:60}")
+    private int maxRequestsPerWindowIp;
+    
+    @Value("${app.rate-limit.login.ip-limit:5}")
+    private int maxLoginAttemptsPerWindowIp;
+    
+    // Rate limits by authenticated user
+    @Value("${app.rate-limit.general.user-limit:120}")
+    private int maxRequestsPerWindowUser;
+    
+    @Value("${app.rate-limit.billetes.user-limit:20}")
+    private int maxBilleteOperationsPerWindow;
+    
+    @Value("${app.rate-limit.window-seconds:60}")
+    private long windowSeconds;
     
-    // Rate limits by authenticated user (more restrictive)
-    private static final int MAX_REQUESTS_PER_MINUTE_USER = 120;
-    private static final int MAX_BILLETE_OPERATIONS_PER_MINUTE = 20;
+    // Fixed number of counter slots: memory does not grow with the number of IPs
+    @Value("${app.rate-limit.capacity:65536}")
+    private int capacity;
     
-    private final ConcurrentHashMap<String, AtomicInteger> ipRequestCounts = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, AtomicInteger> ipLoginCounts = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, AtomicInteger> userRequestCounts = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, AtomicInteger> userBilleteCounts = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Long> lastResetTime = new ConcurrentHashMap<>();
+    private SlidingWindowRateLimiter limiter;
+    
+    enum RouteClass {
+        LOGIN,
+        BILLETES,
+        GENERAL
+    }
+    
+    @PostConstruct
+    void init() {
+        limiter = new SlidingWindowRateLimiter(capacity, windowSeconds * 1000);
+    }
     
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                    FilterChain filterChain) throws ServletException, IOException {
         
-        String clientIp = getClientIp(request);
+        String clientIp = clientIpResolver.resolve(request);
         String requestUri = request.getRequestURI();
         String username = getAuthenticatedUsername();
         
         // Record the request for monitoring
         securityMonitoringService.recordRequest(clientIp, requestUri, request.getMethod());
         
-        // Reset counters if needed (every minute)
-        long currentTime = System.currentTimeMillis();
-        lastResetTime.compute(clientIp, (key, lastTime) -> {
-            if (lastTime == null || currentTime - lastTime > 60000) {
-                ipRequestCounts.remove(clientIp);
-                ipLoginCounts.remove(clientIp);
-                if (username != null) {
-                    userRequestCounts.remove(username);
-                    userBilleteCounts.remove(username);
-                }
-                return currentTime;
-            }
-            return lastTime;
-        });
-        
         // Check rate limits
-        RateLimitResult rateLimitResult = checkRateLimits(clientIp, username, requestUri);
+        long now = System.currentTimeMillis();
+        RateLimitResult rateLimitResult = checkRateLimits(clientIp, username, routeClassOf(requestUri), now);
         
         if (rateLimitResult.isLimited()) {
-            log.warn("Rate limit exceeded for IP: {}, User: {}, URI: {}, Reason: {}", 
-                    clientIp, username, requestUri, rateLimitResult.getReason());
-            
-            // Record rate limit exceeded for monitoring
+            // Record rate limit exceeded for monitoring (logged asynchronously)
             securityMonitoringService.recordRateLimitExceeded(clientIp, username, requestUri);
             securityMonitoringService.recordBlockedRequest(clientIp, rateLimitResult.getReason());
             
+            long retryAfterSeconds = Math.max(1, (limiter.millisToNextWindow(now) + 999) / 1000);
             response.setStatus(429); // Too Many Requests
             response.setHeader("X-RateLimit-Limit", String.valueOf(rateLimitResult.getLimit()));
             response.setHeader("X-RateLimit-Remaining", "0");
-            response.setHeader("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() + 60000));
-            response.setHeader("Retry-After", "60");
+            response.setHeader("X-RateLimit-Reset", String.valueOf(now + limiter.millisToNextWindow(now)));
+            response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
             response.setContentType("application/json");
             response.getWriter().write(String.format(
-                "{\"error\": \"Rate limit exceeded\", \"message\": \"%s\", \"retryAfter\": 60}", 
-                rateLimitResult.getMessage()
+                "{\"error\": \"Rate limit exceeded\", \"message\": \"%s\", \"retryAfter\": %d}", 
+                rateLimitResult.getMessage(), retryAfterSeconds
             ));
             return;
         }
@@ -91,61 +110,91 @@ public class RateLimitingFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
     
-    private RateLimitResult checkRateLimits(String clientIp, String username, String requestUri) {
-        AtomicInteger ipRequestCount = ipRequestCounts.computeIfAbsent(clientIp, k -> new AtomicInteger(0));
-        AtomicInteger ipLoginCount = ipLoginCounts.computeIfAbsent(clientIp, k -> new AtomicInteger(0));
-        
+    static RouteClass routeClassOf(String requestUri) {
+        if (requestUri.contains("/auth/login")) {
+            return RouteClass.LOGIN;
+        }
+        if (requestUri.contains("/billetes/")) {
+            return RouteClass.BILLETES;
+        }
+        return RouteClass.GENERAL;
+    }
+    
+    private RateLimitResult checkRateLimits(String clientIp, String username, RouteClass routeClass, long now) {
         // Check IP-based rate limits
-        if (ipRequestCount.incrementAndGet() > MAX_REQUESTS_PER_MINUTE_IP) {
+        if (!tryAcquire(IP_GENERAL, clientIp, maxRequestsPerWindowIp, now)) {
             return RateLimitResult.builder()
                     .limited(true)
                     .reason("IP general limit")
                     .message("Too many requests from this IP")
-                    .limit(MAX_REQUESTS_PER_MINUTE_IP)
+                    .limit(maxRequestsPerWindowIp)
                     .build();
         }
         
         // Check stricter limit for login endpoint
-        if (requestUri.contains("/auth/login")) {
-            if (ipLoginCount.incrementAndGet() > MAX_LOGIN_ATTEMPTS_PER_MINUTE_IP) {
-                return RateLimitResult.builder()
-                        .limited(true)
-                        .reason("IP login limit")
-                        .message("Too many login attempts from this IP")
-                        .limit(MAX_LOGIN_ATTEMPTS_PER_MINUTE_IP)
-                        .build();
-            }
+        if (routeClass == RouteClass.LOGIN
+                && !tryAcquire(IP_LOGIN, clientIp, maxLoginAttemptsPerWindowIp, now)) {
+            return RateLimitResult.builder()
+                    .limited(true)
+                    .reason("IP login limit")
+                    .message("Too many login attempts from this IP")
+                    .limit(maxLoginAttemptsPerWindowIp)
+                    .build();
         }
         
         // Check user-based rate limits (only for authenticated users)
         if (username != null && !username.equals("anonymousUser")) {
-            AtomicInteger userRequestCount = userRequestCounts.computeIfAbsent(username, k -> new AtomicInteger(0));
-            AtomicInteger userBilleteCount = userBilleteCounts.computeIfAbsent(username, k -> new AtomicInteger(0));
-            
             // General user rate limit
-            if (userRequestCount.incrementAndGet() > MAX_REQUESTS_PER_MINUTE_USER) {
+            if (!tryAcquire(USER_GENERAL, username, maxRequestsPerWindowUser, now)) {
                 return RateLimitResult.builder()
                         .limited(true)
                         .reason("User general limit")
                         .message("Too many requests for this user")
-                        .limit(MAX_REQUESTS_PER_MINUTE_USER)
+                        .limit(maxRequestsPerWindowUser)
                         .build();
             }
             
             // Stricter limit for billete operations
-            if (requestUri.contains("/billetes/")) {
-                if (userBilleteCount.incrementAndGet() > MAX_BILLETE_OPERATIONS_PER_MINUTE) {
-                    return RateLimitResult.builder()
-                            .limited(true)
-                            .reason("User billete operations limit")
-                            .message("Too many billete operations for this user")
-                            .limit(MAX_BILLETE_OPERATIONS_PER_MINUTE)
-                            .build();
-                }
+            if (routeClass == RouteClass.BILLETES
+                    && !tryAcquire(USER_BILLETES, username, maxBilleteOperationsPerWindow, now)) {
+                return RateLimitResult.builder()
+                        .limited(true)
+                        .reason("User billete operations limit")
+                        .message("Too many billete operations for this user")
+                        .limit(maxBilleteOperationsPerWindow)
+                        .build();
             }
         }
         
-        return RateLimitResult.builder().limited(false).build();
+        return ALLOWED;
+    }
+    
+    /**
+     * Local sliding-window check. In distributed mode the hits seen on other
+     * nodes (from the last sync) are subtracted from the limit first.
+     */
+    private boolean tryAcquire(int dimension, String key, int limit, long now) {
+        if (!distributedStore.isEnabled()) {
+            return limiter.tryAcquire(dimension, key, limit, now) >= 0;
+        }
+        long windowMs = windowSeconds * 1000;
+        int effectiveLimit = limit - (int) Math.ceil(distributedStore.othersEstimate(SCOPES[dimension], key, windowMs, now));
+        if (limiter.tryAcquire(dimension, key, effectiveLimit, now) < 0) {
+            return false;
+        }
+        distributedStore.record(SCOPES[dimension], key, windowMs, now);
+        return true;
+    }
+    
+    public Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("capacity", limiter.getCapacity());
+        stats.put("activeCounters", limiter.countActive(now));
+        stats.put("evictions", limiter.getEvictions());
+        stats.put("windowSeconds", windowSeconds);
+        stats.put("distributed", distributedStore.getStats());
+        return stats;
     }
     
     private String getAuthenticatedUsername() {
@@ -156,20 +205,6 @@ public class RateLimitingFilter extends OncePerRequestFilter {
         return null;
     }
     
-    private String getClientIp(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        
-        return request.getRemoteAddr();
-    }
-    
     @lombok.Data
     @lombok.Builder
     @lombok.NoArgsConstructor
@@ -30,15 +30,18 @@ public class SecurityConfig {
 
     private final JwtTokenProvider tokenProvider;
     private final MongoUserDetailsService userDetailsService;
+    private final PrincipalCache principalCache;
 
-    public SecurityConfig(JwtTokenProvider tokenProvider, MongoUserDetailsService userDetailsService) {
+    public SecurityConfig(JwtTokenProvider tokenProvider, MongoUserDetailsService userDetailsService,
+                          PrincipalCache principalCache) {
         this.tokenProvider = tokenProvider;
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
     }
 
     @Bean
     public JwtAuthenticationFilter jwtAuthenticationFilter() {
-        return new JwtAuthenticationFilter(tokenProvider, userDetailsService);
+        return new JwtAuthenticationFilter(tokenProvider, userDetailsService, principalCache);
     }
 
     @Bean
@@ -80,13 +83,14 @@ public class SecurityConfig {
                         .anyRequest().authenticated()
                 );
 
+        http.addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
+
+        // After the JWT filter so per-user limits see the authenticated username
         RateLimitingFilter rateLimitingFilter = rateLimitingFilterProvider.getIfAvailable();
         if (rateLimitingFilter != null) {
-            http.addFilterBefore(rateLimitingFilter, UsernamePasswordAuthenticationFilter.class);
+            http.addFilterAfter(rateLimitingFilter, JwtAuthenticationFilter.class);
         }
 
-        http.addFilterBefore(jwtAuthenticationFilter(), UsernamePasswordAuthenticationFilter.class);
-
         return http.build();
     }
 
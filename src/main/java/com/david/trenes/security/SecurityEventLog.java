@@ -0,0 +1,194 @@
+package com.david.trenes.security;
+
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous security event pipeline. Request threads only build a small
+ * event and offer it to a lock-free ring buffer; a scheduled writer drains it,
+ * aggregates identical events (same type, IP, user and details) within the
+ * batch, logs one line per aggregate and inserts the batch into
+ * "security_events". Routine request events are sampled.
+ */
+@Component
+@Slf4j
+public class SecurityEventLog {
+
+    static final String COLLECTION = "security_events";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.security.events.buffer-size:16384}")
+    private int bufferSize;
+
+    @Value("${app.security.events.batch-size:2000}")
+    private int batchSize;
+
+    // Fraction of routine REQUEST events kept (0 disables them)
+    @Value("${app.security.events.request-sample-rate:0.0}")
+    private double requestSampleRate;
+
+    @Value("${app.security.events.persist:true}")
+    private boolean persist;
+
+    @Value("${app.security.events.retention-days:30}")
+    private long retentionDays;
+
+    private SecurityEventRingBuffer<SecurityEvent> buffer;
+    private final LongAdder published = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+
+    public SecurityEventLog(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    public enum Type {
+        REQUEST,
+        LOGIN_SUCCESS,
+        LOGIN_FAILED,
+        SUSPICIOUS_ACTIVITY,
+        RATE_LIMIT_EXCEEDED,
+        REQUEST_BLOCKED,
+        IP_BLOCKED
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class SecurityEvent {
+        private final Type type;
+        private final String clientIp;
+        private final String username;
+        private final String details;
+        private final long timestamp;
+    }
+
+    @PostConstruct
+    void init() {
+        buffer = new SecurityEventRingBuffer<>(bufferSize);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        if (!persist) {
+            return;
+        }
+        try {
+            mongoTemplate.indexOps(COLLECTION)
+                    .createIndex(new Index().on("lastAt", Sort.Direction.ASC).expire(Duration.ofDays(retentionDays)));
+        } catch (Exception e) {
+            log.warn("Could not create TTL index on {}: {}", COLLECTION, e.getMessage());
+        }
+    }
+
+    /**
+     * Routine request, kept only for the configured sample of requests.
+     */
+    public void publishRequest(String clientIp, String method, String endpoint) {
+        if (requestSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= requestSampleRate) {
+            sampledOut.increment();
+            return;
+        }
+        publish(Type.REQUEST, clientIp, null, method + " " + endpoint);
+    }
+
+    /**
+     * Queues the event without blocking; dropped if the buffer is full.
+     */
+    public void publish(Type type, String clientIp, String username, String details) {
+        if (buffer.offer(new SecurityEvent(type, clientIp, username, details, System.currentTimeMillis()))) {
+            published.increment();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.security.events.flush-ms:1000}")
+    public synchronized void flush() {
+        List<SecurityEvent> batch = new ArrayList<>();
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            write(aggregate(batch));
+            batch.clear();
+        }
+    }
+
+    private Map<String, Document> aggregate(List<SecurityEvent> batch) {
+        Map<String, Document> aggregates = new LinkedHashMap<>();
+        for (SecurityEvent event : batch) {
+            String key = event.getType() + "|" + event.getClientIp() + "|" + event.getUsername() + "|" + event.getDetails();
+            Document aggregate = aggregates.get(key);
+            if (aggregate == null) {
+                aggregate = new Document("type", event.getType().name())
+                        .append("clientIp", event.getClientIp())
+                        .append("username", event.getUsername())
+                        .append("details", event.getDetails())
+                        .append("count", 0)
+                        .append("firstAt", new Date(event.getTimestamp()));
+                aggregates.put(key, aggregate);
+            }
+            aggregate.put("count", aggregate.getInteger("count") + 1);
+            aggregate.put("lastAt", new Date(event.getTimestamp()));
+        }
+        return aggregates;
+    }
+
+    private void write(Map<String, Document> aggregates) {
+        for (Document aggregate : aggregates.values()) {
+            logAggregate(aggregate);
+        }
+        if (!persist || aggregates.isEmpty()) {
+            return;
+        }
+        try {
+            mongoTemplate.insert(new ArrayList<>(aggregates.values()), COLLECTION);
+            written.add(aggregates.size());
+        } catch (Exception e) {
+            writeFailures.add(aggregates.size());
+            log.warn("Could not write {} security events: {}", aggregates.size(), e.getMessage());
+        }
+    }
+
+    private void logAggregate(Document aggregate) {
+        Type type = Type.valueOf(aggregate.getString("type"));
+        Object[] args = {type, aggregate.get("clientIp"), aggregate.get("username"),
+                aggregate.get("details"), aggregate.get("count")};
+        String message = "Security event {} - IP: {}, User: {}, Details: {}, Count: {}";
+        switch (type) {
+            case REQUEST -> log.debug(message, args);
+            case LOGIN_SUCCESS, REQUEST_BLOCKED -> log.info(message, args);
+            case LOGIN_FAILED, SUSPICIOUS_ACTIVITY, RATE_LIMIT_EXCEEDED -> log.warn(message, args);
+            case IP_BLOCKED -> log.error(message, args);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bufferCapacity", buffer.getCapacity());
+        stats.put("queued", buffer.size());
+        stats.put("published", published.sum());
+        stats.put("dropped", buffer.getDropped());
+        stats.put("sampledOut", sampledOut.sum());
+        stats.put("written", written.sum());
+        stats.put("writeFailures", writeFailures.sum());
+        return stats;
+    }
+}
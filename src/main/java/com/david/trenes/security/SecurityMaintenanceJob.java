@@ -0,0 +1,61 @@
+package com.david.trenes.security;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Background maintenance of the in-memory security state: evicts the per-IP
+ * records of SecurityMonitoringService in bounded slices and gathers the size
+ * metrics of every security structure in one place.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SecurityMaintenanceJob {
+
+    private final SecurityMonitoringService securityMonitoringService;
+    private final RateLimitingFilter rateLimitingFilter;
+    private final IpBlocklist ipBlocklist;
+    private final SecurityEventLog securityEventLog;
+
+    // Entries visited per map on each run
+    @Value("${app.security.maintenance.slice-size:2000}")
+    private int sliceSize;
+
+    private volatile long lastRunMs;
+    private volatile int lastEvicted;
+
+    @Scheduled(fixedDelayString = "${app.security.maintenance.interval-ms:5000}")
+    public void evictStaleRecords() {
+        try {
+            lastEvicted = securityMonitoringService.evictStale(sliceSize);
+            lastRunMs = System.currentTimeMillis();
+            if (lastEvicted > 0) {
+                log.debug("Evicted {} stale security records", lastEvicted);
+            }
+        } catch (Exception e) {
+            log.warn("Security records eviction failed: {}", e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> maintenance = new LinkedHashMap<>();
+        maintenance.put("sliceSize", sliceSize);
+        maintenance.put("lastRunMs", lastRunMs);
+        maintenance.put("lastEvicted", lastEvicted);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("monitoring", securityMonitoringService.getTrackingStats());
+        stats.put("maintenance", maintenance);
+        stats.put("rateLimiting", rateLimitingFilter.getStats());
+        stats.put("ipBlocklist", ipBlocklist.getStats());
+        stats.put("events", securityEventLog.getStats());
+        return stats;
+    }
+}
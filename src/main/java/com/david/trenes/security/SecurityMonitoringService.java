@@ -1,17 +1,28 @@
 package com.david.trenes.security;
 
-import lombok.extern.slf4j.Slf4j;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
-@Slf4j
+@RequiredArgsConstructor
 public class SecurityMonitoringService {
     
+    private final DistributedRateLimitStore distributedStore;
+    private final IpBlocklist ipBlocklist;
+    private final SecurityEventLog eventLog;
+    
     private final ConcurrentHashMap<String, AtomicInteger> failedLoginAttempts = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, AtomicInteger> suspiciousActivities = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, AtomicLong> lastActivityTime = new ConcurrentHashMap<>();
@@ -22,49 +33,74 @@ public class SecurityMonitoringService {
     private static final int FAILED_LOGIN_THRESHOLD = 10;
     private static final int SUSPICIOUS_ACTIVITY_THRESHOLD = 20;
     private static final long TIME_WINDOW_MINUTES = 30;
+    private static final String FAILED_LOGIN_SCOPE = "failed-login";
+    private static final long SENSITIVE_WINDOW_MS = 60_000;
+    
+    // Requests per minute to /admin or /auth from one IP above which the burst is suspicious
+    @Value("${app.security.monitoring.sensitive-requests-per-minute:30}")
+    private int sensitiveRequestsPerMinute;
+    
+    @Value("${app.security.monitoring.sensitive-capacity:4096}")
+    private int sensitiveCapacity;
+    
+    private SlidingWindowRateLimiter sensitiveRequests;
+    
+    private final EvictionCursor activityCursor = new EvictionCursor(lastActivityTime);
+    private final EvictionCursor failedLoginCursor = new EvictionCursor(failedLoginAttempts);
+    private final EvictionCursor suspiciousCursor = new EvictionCursor(suspiciousActivities);
+    
+    @PostConstruct
+    void init() {
+        sensitiveRequests = new SlidingWindowRateLimiter(sensitiveCapacity, SENSITIVE_WINDOW_MS);
+    }
     
     public void recordSuccessfulLogin(String clientIp, String username) {
         failedLoginAttempts.remove(clientIp);
-        lastActivityTime.put(clientIp, new AtomicLong(System.currentTimeMillis()));
-        log.info("Successful login - IP: {}, User: {}", clientIp, username);
+        touch(clientIp, System.currentTimeMillis());
+        eventLog.publish(SecurityEventLog.Type.LOGIN_SUCCESS, clientIp, username, null);
     }
     
     public void recordFailedLogin(String clientIp, String username) {
         AtomicInteger count = failedLoginAttempts.computeIfAbsent(clientIp, k -> new AtomicInteger(0));
         int newCount = count.incrementAndGet();
         
-        if (newCount >= FAILED_LOGIN_THRESHOLD) {
-            log.warn("POTENTIAL BRUTE FORCE ATTACK DETECTED - IP: {}, Failed attempts: {}, Target user: {}", 
-                    clientIp, newCount, username);
-            
-            // Could implement IP blocking here
-            blockIpTemporarily(clientIp, "Brute force attack detected");
+        // In distributed mode the threshold applies to failures across all nodes
+        if (distributedStore.isEnabled()) {
+            long now = System.currentTimeMillis();
+            long windowMs = TIME_WINDOW_MINUTES * 60 * 1000;
+            distributedStore.record(FAILED_LOGIN_SCOPE, clientIp, windowMs, now);
+            newCount += distributedStore.othersCount(FAILED_LOGIN_SCOPE, clientIp, windowMs, now / windowMs);
         }
         
-        log.info("Failed login - IP: {}, User: {}, Attempts: {}", clientIp, username, newCount);
+        eventLog.publish(SecurityEventLog.Type.LOGIN_FAILED, clientIp, username, null);
+        
+        if (newCount >= FAILED_LOGIN_THRESHOLD) {
+            blockIpTemporarily(clientIp, username, "Brute force attack detected");
+        }
     }
     
     public void recordSuspiciousActivity(String clientIp, String activity, String details) {
         AtomicInteger count = suspiciousActivities.computeIfAbsent(clientIp, k -> new AtomicInteger(0));
         int newCount = count.incrementAndGet();
         
+        eventLog.publish(SecurityEventLog.Type.SUSPICIOUS_ACTIVITY, clientIp, null, activity + " - " + details);
+        
         if (newCount >= SUSPICIOUS_ACTIVITY_THRESHOLD) {
-            log.warn("SUSPICIOUS ACTIVITY SPIKE DETECTED - IP: {}, Count: {}, Activity: {}, Details: {}", 
-                    clientIp, newCount, activity, details);
-            
-            blockIpTemporarily(clientIp, "Suspicious activity spike");
+            blockIpTemporarily(clientIp, null, "Suspicious activity spike");
         }
-        
-        log.warn("Suspicious activity - IP: {}, Activity: {}, Details: {}, Count: {}", 
-                clientIp, activity, details, newCount);
     }
     
     public void recordRequest(String clientIp, String endpoint, String method) {
         totalRequests.incrementAndGet();
-        lastActivityTime.put(clientIp, new AtomicLong(System.currentTimeMillis()));
+        if (distributedStore.isEnabled()) {
+            distributedStore.incrementMetric("totalRequests");
+        }
+        long now = System.currentTimeMillis();
+        touch(clientIp, now);
+        eventLog.publishRequest(clientIp, method, endpoint);
         
         // Monitor for unusual patterns
-        if (isUnusualPattern(clientIp, endpoint, method)) {
+        if (isUnusualPattern(clientIp, endpoint, now)) {
             recordSuspiciousActivity(clientIp, "Unusual request pattern", 
                     String.format("Endpoint: %s %s", method, endpoint));
         }
@@ -72,59 +108,121 @@ public class SecurityMonitoringService {
     
     public void recordBlockedRequest(String clientIp, String reason) {
         blockedRequests.incrementAndGet();
-        log.info("Request blocked - IP: {}, Reason: {}", clientIp, reason);
+        if (distributedStore.isEnabled()) {
+            distributedStore.incrementMetric("blockedRequests");
+        }
+        eventLog.publish(SecurityEventLog.Type.REQUEST_BLOCKED, clientIp, null, reason);
     }
     
     public void recordRateLimitExceeded(String clientIp, String username, String endpoint) {
-        log.warn("Rate limit exceeded - IP: {}, User: {}, Endpoint: {}", clientIp, username, endpoint);
+        eventLog.publish(SecurityEventLog.Type.RATE_LIMIT_EXCEEDED, clientIp, username, endpoint);
         recordSuspiciousActivity(clientIp, "Rate limit exceeded", 
                 String.format("Endpoint: %s, User: %s", endpoint, username));
     }
     
-    private boolean isUnusualPattern(String clientIp, String endpoint, String method) {
-        // Implement logic to detect unusual patterns
-        // For example: rapid requests to sensitive endpoints, unusual user agents, etc.
-        return endpoint.contains("/admin") || endpoint.contains("/auth");
+    /**
+     * A burst of requests to sensitive endpoints from one IP; ordinary admin
+     * or auth traffic is not suspicious by itself.
+     */
+    private boolean isUnusualPattern(String clientIp, String endpoint, long now) {
+        if (!endpoint.contains("/admin") && !endpoint.contains("/auth")) {
+            return false;
+        }
+        return sensitiveRequests.tryAcquire(0, clientIp, sensitiveRequestsPerMinute, now) < 0;
     }
     
-    private void blockIpTemporarily(String clientIp, String reason) {
-        log.error("TEMPORARY IP BLOCK - IP: {}, Reason: {}, Duration: {} minutes", 
-                clientIp, reason, TIME_WINDOW_MINUTES);
+    private void blockIpTemporarily(String clientIp, String username, String reason) {
+        eventLog.publish(SecurityEventLog.Type.IP_BLOCKED, clientIp, username,
+                reason + " (" + TIME_WINDOW_MINUTES + " minutes)");
+        
+        // Enforced by IpBlocklistFilter on this and, after the next refresh, every other node
+        ipBlocklist.block(clientIp, reason, Duration.ofMinutes(TIME_WINDOW_MINUTES));
         
-        // In a real implementation, you would:
-        // 1. Add the IP to a blocked list
-        // 2. Set up a timer to unblock after TIME_WINDOW_MINUTES
-        // 3. Possibly notify administrators
+        // Start over once the block lifts instead of re-blocking on the next request
+        failedLoginAttempts.remove(clientIp);
+        suspiciousActivities.remove(clientIp);
     }
     
     public SecurityMetrics getSecurityMetrics() {
         return SecurityMetrics.builder()
-                .totalRequests(totalRequests.get())
-                .blockedRequests(blockedRequests.get())
+                .totalRequests(distributedStore.isEnabled()
+                        ? distributedStore.getClusterMetric("totalRequests") : totalRequests.get())
+                .blockedRequests(distributedStore.isEnabled()
+                        ? distributedStore.getClusterMetric("blockedRequests") : blockedRequests.get())
                 .uniqueIpsWithFailedLogins(failedLoginAttempts.size())
                 .uniqueIpsWithSuspiciousActivity(suspiciousActivities.size())
                 .timestamp(LocalDateTime.now())
                 .build();
     }
     
-    public void cleanupOldRecords() {
-        long currentTime = System.currentTimeMillis();
-        long timeWindow = TIME_WINDOW_MINUTES * 60 * 1000;
-        
-        failedLoginAttempts.entrySet().removeIf(entry -> {
-            AtomicLong lastActivityAtomic = lastActivityTime.get(entry.getKey());
-            long lastActivity = lastActivityAtomic != null ? lastActivityAtomic.get() : 0L;
-            return currentTime - lastActivity > timeWindow;
-        });
+    /**
+     * Evicts records of IPs idle for longer than the detection window, visiting
+     * at most {@code maxEntriesPerMap} entries of each map. Every call resumes
+     * where the previous one stopped, so a full sweep is spread over several
+     * calls instead of one removeIf pass over every IP ever seen.
+     *
+     * @return number of entries evicted
+     */
+    public synchronized int evictStale(int maxEntriesPerMap) {
+        long cutoff = System.currentTimeMillis() - TIME_WINDOW_MINUTES * 60 * 1000;
+        // Counters first: an IP whose activity record is gone is stale by definition
+        return failedLoginCursor.advance(maxEntriesPerMap, cutoff)
+                + suspiciousCursor.advance(maxEntriesPerMap, cutoff)
+                + activityCursor.advance(maxEntriesPerMap, cutoff);
+    }
+    
+    public Map<String, Object> getTrackingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("lastActivityTime", lastActivityTime.size());
+        stats.put("failedLoginAttempts", failedLoginAttempts.size());
+        stats.put("suspiciousActivities", suspiciousActivities.size());
+        stats.put("evictedLastActivity", activityCursor.evicted.sum());
+        stats.put("evictedFailedLogins", failedLoginCursor.evicted.sum());
+        stats.put("evictedSuspicious", suspiciousCursor.evicted.sum());
+        return stats;
+    }
+    
+    private void touch(String clientIp, long now) {
+        AtomicLong lastActivity = lastActivityTime.get(clientIp);
+        if (lastActivity == null) {
+            lastActivity = lastActivityTime.computeIfAbsent(clientIp, k -> new AtomicLong());
+        }
+        lastActivity.set(now);
+    }
+    
+    private boolean isStale(String clientIp, long cutoff) {
+        AtomicLong lastActivity = lastActivityTime.get(clientIp);
+        return lastActivity == null || lastActivity.get() < cutoff;
+    }
+    
+    /**
+     * Resumable walk over the keys of one map. ConcurrentHashMap iterators are
+     * weakly consistent, so the cursor can be kept between slices while
+     * requests keep updating the map.
+     */
+    private final class EvictionCursor {
+        private final ConcurrentHashMap<String, ?> map;
+        private final LongAdder evicted = new LongAdder();
+        private Iterator<String> keys;
         
-        suspiciousActivities.entrySet().removeIf(entry -> {
-            AtomicLong lastActivityAtomic = lastActivityTime.get(entry.getKey());
-            long lastActivity = lastActivityAtomic != null ? lastActivityAtomic.get() : 0L;
-            return currentTime - lastActivity > timeWindow;
-        });
+        EvictionCursor(ConcurrentHashMap<String, ?> map) {
+            this.map = map;
+        }
         
-        lastActivityTime.entrySet().removeIf(entry -> 
-                currentTime - entry.getValue().get() > timeWindow);
+        int advance(int maxEntries, long cutoff) {
+            if (keys == null || !keys.hasNext()) {
+                keys = map.keySet().iterator();
+            }
+            int removed = 0;
+            for (int visited = 0; visited < maxEntries && keys.hasNext(); visited++) {
+                if (isStale(keys.next(), cutoff)) {
+                    keys.remove();
+                    removed++;
+                }
+            }
+            evicted.add(removed);
+            return removed;
+        }
     }
     
     @lombok.Data
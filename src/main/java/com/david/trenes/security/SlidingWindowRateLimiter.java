@@ -0,0 +1,156 @@
+package com.david.trenes.security;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sliding-window counters in a fixed-size, open-addressed table of atomic
+ * slots. Each slot packs the current window id with the current and previous
+ * window counts into one long, so a hit is a CAS on a primitive array: no
+ * locks and no allocation. The table never grows; a key that finds no free
+ * slot within a few probes reclaims an expired one or evicts the least
+ * recently active, so memory stays constant however many IPs show up.
+ */
+public final class SlidingWindowRateLimiter {
+
+    private static final int MAX_PROBES = 8;
+    private static final long EMPTY = 0L;
+    private static final int MAX_COUNT = 0xFFFF;
+
+    private final long windowMs;
+    private final int mask;
+    private final AtomicLongArray keys;
+    // window id (32 bits) | current count (16 bits) | previous count (16 bits)
+    private final AtomicLongArray states;
+    private final LongAdder evictions = new LongAdder();
+
+    public SlidingWindowRateLimiter(int capacity, long windowMs) {
+        if (capacity <= 0 || windowMs <= 0) {
+            throw new IllegalArgumentException("Capacity and window must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(capacity, MAX_PROBES) - 1) << 1;
+        this.windowMs = windowMs;
+        this.mask = size - 1;
+        this.keys = new AtomicLongArray(size);
+        this.states = new AtomicLongArray(size);
+    }
+
+    /**
+     * Counts one hit for the key if it stays within the limit.
+     *
+     * @param dimension separates counters of different kinds for the same key
+     * @return remaining hits in the window, or -1 if the hit was rejected
+     */
+    public int tryAcquire(int dimension, String key, int limit, long nowMs) {
+        long hash = hash(dimension, key);
+        long window = nowMs / windowMs;
+        double previousWeight = 1.0 - (double) (nowMs % windowMs) / windowMs;
+
+        int slot = findSlot(hash, window);
+        while (true) {
+            long state = states.get(slot);
+            if (keys.get(slot) != hash) {
+                // Evicted by another key in the meantime
+                slot = findSlot(hash, window);
+                continue;
+            }
+
+            long stateWindow = state >>> 32;
+            int current = (int) ((state >>> 16) & MAX_COUNT);
+            int previous = (int) (state & MAX_COUNT);
+            if (stateWindow != window) {
+                previous = stateWindow == window - 1 ? current : 0;
+                current = 0;
+            }
+
+            double estimate = previous * previousWeight + current + 1;
+            if (estimate > limit) {
+                return -1;
+            }
+            long next = (window << 32) | ((long) Math.min(current + 1, MAX_COUNT) << 16) | previous;
+            if (states.compareAndSet(slot, state, next)) {
+                return (int) Math.max(0, limit - Math.ceil(estimate));
+            }
+        }
+    }
+
+    /**
+     * Milliseconds until the current window closes.
+     */
+    public long millisToNextWindow(long nowMs) {
+        return windowMs - nowMs % windowMs;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Slots whose counters still affect the current window.
+     */
+    public int countActive(long nowMs) {
+        long window = nowMs / windowMs;
+        int active = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (keys.get(i) != EMPTY && (states.get(i) >>> 32) >= window - 1) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    private int findSlot(long hash, long window) {
+        int base = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+            int victim = -1;
+            long victimWindow = Long.MAX_VALUE;
+            for (int i = 0; i < MAX_PROBES; i++) {
+                int s = (base + i) & mask;
+                long k = keys.get(s);
+                if (k == hash) {
+                    return s;
+                }
+                long w = states.get(s) >>> 32;
+                if ((k == EMPTY || w < window - 1) && claim(s, k, hash, window)) {
+                    return s;
+                }
+                if (w < victimWindow) {
+                    victim = s;
+                    victimWindow = w;
+                }
+            }
+            long k = keys.get(victim);
+            if (k == hash || claim(victim, k, hash, window)) {
+                if (k != hash) {
+                    evictions.increment();
+                }
+                return victim;
+            }
+        }
+    }
+
+    private boolean claim(int slot, long expectedKey, long hash, long window) {
+        if (keys.compareAndSet(slot, expectedKey, hash)) {
+            states.set(slot, window << 32);
+            return true;
+        }
+        return keys.get(slot) == hash;
+    }
+
+    // 64-bit FNV-1a over the chars plus a final mix; never returns EMPTY
+    private static long hash(int dimension, String key) {
+        long h = 0xcbf29ce484222325L ^ dimension;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1L : h;
+    }
+}
@@ -0,0 +1,37 @@
+package com.david.trenes.security;
+
+import com.david.trenes.model.Usuario;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops cached principals whenever a usuario is saved (role, password or
+ * username change) or deleted through Spring Data.
+ */
+@Component
+@RequiredArgsConstructor
+public class UsuarioChangeListener extends AbstractMongoEventListener<Usuario> {
+
+    private final PrincipalCache principalCache;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Usuario> event) {
+        Usuario usuario = event.getSource();
+        principalCache.invalidateUsuario(usuario.getId(), usuario.getUsername());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Usuario> event) {
+        Object id = event.getSource().get("_id");
+        if (id instanceof String || id instanceof ObjectId) {
+            principalCache.invalidateUsuario(id.toString(), null);
+        } else {
+            // Delete by an arbitrary query: we do not know which users went away
+            principalCache.invalidateAll();
+        }
+    }
+}
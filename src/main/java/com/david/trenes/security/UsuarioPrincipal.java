@@ -0,0 +1,38 @@
+package com.david.trenes.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Authenticated user carrying the usuario id, so callers can resolve the
+ * current usuario without going back to the users collection.
+ */
+public class UsuarioPrincipal extends User {
+
+    private final String usuarioId;
+
+    public UsuarioPrincipal(String username, String password, Collection<? extends GrantedAuthority> authorities,
+                            String usuarioId) {
+        super(username, password, authorities);
+        this.usuarioId = usuarioId;
+    }
+
+    public String getUsuarioId() {
+        return usuarioId;
+    }
+
+    /**
+     * Single authority for a stored role, adding the ROLE_ prefix if missing.
+     */
+    public static List<SimpleGrantedAuthority> authoritiesFor(String role) {
+        if (role == null || role.isBlank()) {
+            return List.of();
+        }
+        String authority = role.startsWith("ROLE_") ? role : "ROLE_" + role;
+        return List.of(new SimpleGrantedAuthority(authority));
+    }
+}
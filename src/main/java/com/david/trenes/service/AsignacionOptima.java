@@ -0,0 +1,122 @@
+package com.david.trenes.service;
+
+import java.util.Arrays;
+
+/**
+ * Asignación de coste mínimo entre filas y columnas de una matriz de costes
+ * (método húngaro con potenciales, O(n²·m) para n filas y m columnas con
+ * n &lt;= m). Si hay más filas que columnas se resuelve sobre la traspuesta y
+ * las filas sobrantes quedan sin asignar.
+ */
+public final class AsignacionOptima {
+
+    private AsignacionOptima() {
+    }
+
+    /**
+     * @param coste matriz rectangular coste[fila][columna], sin NaN ni infinitos
+     * @return para cada fila, la columna asignada o -1
+     */
+    public static int[] resolver(double[][] coste) {
+        int filas = coste.length;
+        if (filas == 0) {
+            return new int[0];
+        }
+        int columnas = coste[0].length;
+        if (columnas == 0) {
+            int[] vacio = new int[filas];
+            Arrays.fill(vacio, -1);
+            return vacio;
+        }
+
+        if (filas <= columnas) {
+            return resolverPorFilas(coste, filas, columnas);
+        }
+
+        double[][] traspuesta = new double[columnas][filas];
+        for (int i = 0; i < filas; i++) {
+            for (int j = 0; j < columnas; j++) {
+                traspuesta[j][i] = coste[i][j];
+            }
+        }
+        int[] porColumna = resolverPorFilas(traspuesta, columnas, filas);
+        int[] resultado = new int[filas];
+        Arrays.fill(resultado, -1);
+        for (int j = 0; j < columnas; j++) {
+            resultado[porColumna[j]] = j;
+        }
+        return resultado;
+    }
+
+    public static double costeTotal(double[][] coste, int[] asignacion) {
+        double total = 0;
+        for (int i = 0; i < asignacion.length; i++) {
+            if (asignacion[i] >= 0) {
+                total += coste[i][asignacion[i]];
+            }
+        }
+        return total;
+    }
+
+    // Requiere n <= m. Índices desde 1; la columna 0 es ficticia
+    private static int[] resolverPorFilas(double[][] a, int n, int m) {
+        double[] u = new double[n + 1];
+        double[] v = new double[m + 1];
+        int[] p = new int[m + 1];
+        int[] camino = new int[m + 1];
+        double[] minimo = new double[m + 1];
+        boolean[] usada = new boolean[m + 1];
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minimo, Double.POSITIVE_INFINITY);
+            Arrays.fill(usada, false);
+
+            do {
+                usada[j0] = true;
+                int i0 = p[j0];
+                double delta = Double.POSITIVE_INFINITY;
+                int j1 = 0;
+                double[] fila = a[i0 - 1];
+                for (int j = 1; j <= m; j++) {
+                    if (!usada[j]) {
+                        double reducido = fila[j - 1] - u[i0] - v[j];
+                        if (reducido < minimo[j]) {
+                            minimo[j] = reducido;
+                            camino[j] = j0;
+                        }
+                        if (minimo[j] < delta) {
+                            delta = minimo[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (usada[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minimo[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+
+            // Invertir el camino aumentante
+            do {
+                int j1 = camino[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] resultado = new int[n];
+        for (int j = 1; j <= m; j++) {
+            if (p[j] != 0) {
+                resultado[p[j] - 1] = j - 1;
+            }
+        }
+        return resultado;
+    }
+}
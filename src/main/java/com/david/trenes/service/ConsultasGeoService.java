@@ -0,0 +1,130 @@
+package com.david.trenes.service;
+
+import com.david.trenes.dto.CercaniaResponse;
+import com.david.trenes.model.Estacion;
+import com.david.trenes.model.Incidente;
+import com.david.trenes.model.Signal;
+import com.david.trenes.model.Tren;
+import com.david.trenes.model.Via;
+import com.david.trenes.repository.IncidenteRepository;
+import com.david.trenes.repository.ViaRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.Metrics;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.NearQuery;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Consultas de proximidad resueltas en MongoDB sobre los puntos GeoJSON con
+ * índice 2dsphere ($geoNear / $geoWithin), en lugar de filtrar por radio en Java.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConsultasGeoService {
+
+    private static final double KM_POR_GRADO = 111.32;
+
+    private final MongoTemplate mongoTemplate;
+    private final IncidenteRepository incidenteRepository;
+    private final ViaRepository viaRepository;
+
+    public List<CercaniaResponse<Estacion>> estacionesCercanas(double latitud, double longitud, double radioKm, int limite) {
+        log.debug("Buscando estaciones a menos de {} km de ({}, {})", radioKm, latitud, longitud);
+        return cercanos(Estacion.class, latitud, longitud, radioKm, limite, Criteria.where("activo").ne(false));
+    }
+
+    public List<CercaniaResponse<Tren>> trenesCercanos(double latitud, double longitud, double radioKm, int limite) {
+        log.debug("Buscando trenes a menos de {} km de ({}, {})", radioKm, latitud, longitud);
+        return cercanos(Tren.class, latitud, longitud, radioKm, limite, Criteria.where("activo").ne(false));
+    }
+
+    public List<CercaniaResponse<Incidente>> incidentesCercanos(double latitud, double longitud, double radioKm, int limite) {
+        log.debug("Buscando incidentes a menos de {} km de ({}, {})", radioKm, latitud, longitud);
+        return cercanos(Incidente.class, latitud, longitud, radioKm, limite, null);
+    }
+
+    public List<CercaniaResponse<Tren>> trenesCercanosAIncidente(String incidenteId, double radioKm, int limite) {
+        Incidente incidente = incidenteRepository.findById(incidenteId)
+                .orElseThrow(() -> new RuntimeException("Incidente no encontrado con ID: " + incidenteId));
+
+        Via.Coordenada ubicacion = incidente.getUbicacion();
+        if (ubicacion == null || ubicacion.getLatitud() == null || ubicacion.getLongitud() == null) {
+            throw new IllegalStateException("El incidente " + incidenteId + " no tiene ubicación");
+        }
+        return trenesCercanos(ubicacion.getLatitud(), ubicacion.getLongitud(), radioKm, limite);
+    }
+
+    /**
+     * Señales dentro de un pasillo de {@code margenKm} a cada lado del tramo
+     * recto entre el inicio y el fin de la vía (incluye las de vías paralelas).
+     */
+    public List<Signal> senalesEnTramo(String viaId, double margenKm) {
+        Via via = viaRepository.findById(viaId)
+                .orElseThrow(() -> new RuntimeException("Vía no encontrada con ID: " + viaId));
+
+        Via.Coordenada inicio = via.getCoordenadaInicio();
+        Via.Coordenada fin = via.getCoordenadaFin();
+        if (inicio == null || fin == null || inicio.getLatitud() == null || inicio.getLongitud() == null
+                || fin.getLatitud() == null || fin.getLongitud() == null) {
+            throw new IllegalStateException("La vía " + viaId + " no tiene coordenadas de inicio y fin");
+        }
+
+        GeoJsonPolygon pasillo = pasillo(inicio.getLatitud(), inicio.getLongitud(),
+                fin.getLatitud(), fin.getLongitud(), margenKm);
+        return mongoTemplate.find(new Query(Criteria.where("posicion").within(pasillo)), Signal.class);
+    }
+
+    private <T> List<CercaniaResponse<T>> cercanos(Class<T> tipo, double latitud, double longitud,
+                                                   double radioKm, int limite, Criteria filtro) {
+        NearQuery consulta = NearQuery.near(new GeoJsonPoint(longitud, latitud))
+                .maxDistance(new Distance(radioKm, Metrics.KILOMETERS))
+                .limit(Math.max(1, limite));
+        if (filtro != null) {
+            consulta.query(new Query(filtro));
+        }
+
+        return mongoTemplate.geoNear(consulta, tipo).getContent().stream()
+                .map(r -> CercaniaResponse.<T>builder()
+                        .elemento(r.getContent())
+                        .distanciaKm(r.getDistance().in(Metrics.KILOMETERS).getValue())
+                        .build())
+                .toList();
+    }
+
+    // Rectángulo alrededor del segmento A-B ampliado margenKm por cada lado, en proyección equirectangular local
+    private GeoJsonPolygon pasillo(double latA, double lonA, double latB, double lonB, double margenKm) {
+        double kmPorGradoLon = KM_POR_GRADO * Math.cos(Math.toRadians((latA + latB) / 2));
+        double dx = (lonB - lonA) * kmPorGradoLon;
+        double dy = (latB - latA) * KM_POR_GRADO;
+        double largo = Math.hypot(dx, dy);
+
+        // Dirección del tramo (si A y B coinciden, un cuadrado centrado en A)
+        double ux = largo > 0 ? dx / largo : 1;
+        double uy = largo > 0 ? dy / largo : 0;
+        double nx = -uy;
+        double ny = ux;
+
+        double[][] esquinas = {
+                {-ux * margenKm + nx * margenKm, -uy * margenKm + ny * margenKm},
+                {dx + ux * margenKm + nx * margenKm, dy + uy * margenKm + ny * margenKm},
+                {dx + ux * margenKm - nx * margenKm, dy + uy * margenKm - ny * margenKm},
+                {-ux * margenKm - nx * margenKm, -uy * margenKm - ny * margenKm}
+        };
+
+        Point[] puntos = new Point[esquinas.length];
+        for (int i = 0; i < esquinas.length; i++) {
+            puntos[i] = new Point(lonA + esquinas[i][0] / kmPorGradoLon, latA + esquinas[i][1] / KM_POR_GRADO);
+        }
+        return new GeoJsonPolygon(puntos[0], puntos[1], puntos[2], puntos[3], puntos[0]);
+    }
+}
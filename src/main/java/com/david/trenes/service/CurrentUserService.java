@@ -6,25 +6,55 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 @Service
 @RequiredArgsConstructor
 public class CurrentUserService {
 
+    // Usuario already loaded during the current request
+    private static final String USUARIO_ATTRIBUTE = CurrentUserService.class.getName() + ".usuario";
+
     private final UsuarioRepository usuarioRepository;
 
     public Usuario getCurrentUsuario() {
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        if (auth == null || !auth.isAuthenticated() || auth.getName() == null) {
-            throw new RuntimeException("Usuario no autenticado");
+        String username = getAuthenticatedUsername();
+
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null
+                && request.getAttribute(USUARIO_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof Usuario usuario
+                && username.equals(usuario.getUsername())) {
+            return usuario;
         }
 
-        String username = auth.getName();
-        return usuarioRepository.findByUsername(username)
+        Usuario usuario = usuarioRepository.findByUsername(username)
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado para username: " + username));
+        if (request != null) {
+            request.setAttribute(USUARIO_ATTRIBUTE, usuario, RequestAttributes.SCOPE_REQUEST);
+        }
+        return usuario;
     }
 
+    /**
+     * Taken from the authenticated principal (usuarioId claim of the JWT) when
+     * available; otherwise the usuario is loaded at most once per request.
+     */
     public String getCurrentUsuarioId() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.isAuthenticated()
+                && auth.getPrincipal() instanceof UsuarioPrincipal principal
+                && principal.getUsuarioId() != null) {
+            return principal.getUsuarioId();
+        }
         return getCurrentUsuario().getId();
     }
-}
\ No newline at end of file
+
+    private String getAuthenticatedUsername() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !auth.isAuthenticated() || auth.getName() == null) {
+            throw new RuntimeException("Usuario no autenticado");
+        }
+        return auth.getName();
+    }
+}
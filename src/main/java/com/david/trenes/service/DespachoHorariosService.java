@@ -0,0 +1,402 @@
+package com.david.trenes.service;
+
+import com.david.trenes.model.Horario;
+import com.david.trenes.model.Ruta;
+import com.david.trenes.model.Tren;
+import com.david.trenes.repository.HorarioRepository;
+import com.david.trenes.repository.RutaRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Despachador automático de horarios. Mantiene una cola de prioridad por
+ * instante con las salidas, llegadas a parada y llegadas a destino del
+ * horizonte próximo, y aplica en bloque los cambios de estado que vencen en
+ * cada tick. Solo el nodo que posee el lease "despacho-horarios" despacha.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DespachoHorariosService {
+
+    private static final String LEASE_DESPACHO = "despacho-horarios";
+
+    private static final List<Horario.EstadoHorario> ESTADOS_SIN_INICIAR =
+            List.of(Horario.EstadoHorario.PROGRAMADO, Horario.EstadoHorario.RETRASADO);
+    private static final List<Horario.EstadoHorario> ESTADOS_PENDIENTES =
+            List.of(Horario.EstadoHorario.PROGRAMADO, Horario.EstadoHorario.RETRASADO, Horario.EstadoHorario.EN_MARCHA);
+    private static final List<Horario.EstadoParada> PARADAS_PENDIENTES =
+            List.of(Horario.EstadoParada.PENDIENTE, Horario.EstadoParada.RETRASADA);
+    // Un tren solo arranca un servicio si está parado, no en marcha ni en taller
+    private static final List<Tren.EstadoTren> ESTADOS_TREN_DISPONIBLE =
+            List.of(Tren.EstadoTren.DETENIDO, Tren.EstadoTren.EN_ESTACION);
+
+    private final HorarioRepository horarioRepository;
+    private final MongoTemplate mongoTemplate;
+    private final LeaseService leaseService;
+    private final RutaRepository rutaRepository;
+    private final OcupacionViasService ocupacionViasService;
+
+    @Value("${app.despacho.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.despacho.horizonte-minutos:60}")
+    private long horizonteMinutos;
+
+    @Value("${app.despacho.recarga-segundos:60}")
+    private long recargaSegundos;
+
+    @Value("${app.despacho.lease-segundos:30}")
+    private long leaseSegundos;
+
+    // Espera antes de reintentar una salida cuyo primer bloque está ocupado
+    @Value("${app.despacho.reintento-salida-segundos:30}")
+    private long reintentoSalidaSegundos;
+
+    // Solo la usa el hilo del scheduler (fixedDelay no solapa ejecuciones)
+    private final PriorityQueue<EventoDespacho> cola =
+            new PriorityQueue<>(Comparator.comparing(EventoDespacho::getInstante));
+
+    private volatile LocalDateTime ultimaRecarga;
+    private volatile boolean lider;
+    private volatile long eventosAplicados;
+    private volatile long salidasAplazadas;
+
+    public enum TipoEvento {
+        SALIDA,
+        LLEGADA_PARADA,
+        LLEGADA_DESTINO
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class EventoDespacho {
+        private final LocalDateTime instante;
+        private final TipoEvento tipo;
+        private final String horarioId;
+        private final String trenId;
+        private final String rutaId;
+        private final String estacionId;
+        private final int indiceParada;
+    }
+
+    @Scheduled(fixedDelayString = "${app.despacho.intervalo-ms:5000}")
+    public void despachar() {
+        if (!habilitado) {
+            return;
+        }
+
+        try {
+            lider = leaseService.intentarAdquirir(LEASE_DESPACHO, Duration.ofSeconds(leaseSegundos));
+            if (!lider) {
+                // Si otro nodo tomó el lease, al recuperarlo recargaremos desde cero
+                cola.clear();
+                ultimaRecarga = null;
+                return;
+            }
+
+            LocalDateTime ahora = LocalDateTime.now();
+            if (ultimaRecarga == null || !ahora.isBefore(ultimaRecarga.plusSeconds(recargaSegundos))) {
+                recargarCola(ahora);
+            }
+
+            List<EventoDespacho> vencidos = new ArrayList<>();
+            while (!cola.isEmpty() && !cola.peek().getInstante().isAfter(ahora)) {
+                vencidos.add(cola.poll());
+            }
+
+            if (!vencidos.isEmpty()) {
+                aplicar(vencidos, ahora);
+            }
+
+        } catch (Exception e) {
+            log.error("Error en el despacho automático de horarios", e);
+        }
+    }
+
+    @PreDestroy
+    public void liberarLease() {
+        if (lider) {
+            leaseService.liberar(LEASE_DESPACHO);
+        }
+    }
+
+    public Map<String, Object> obtenerEstado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("habilitado", habilitado);
+        estado.put("nodoId", leaseService.getNodoId());
+        estado.put("lider", lider);
+        estado.put("ultimaRecarga", ultimaRecarga);
+        estado.put("eventosAplicados", eventosAplicados);
+        estado.put("salidasAplazadas", salidasAplazadas);
+        estado.put("horizonteMinutos", horizonteMinutos);
+        return estado;
+    }
+
+    private void recargarCola(LocalDateTime ahora) {
+        LocalDateTime desde = ahora.minusMinutes(horizonteMinutos);
+        LocalDateTime hasta = ahora.plusMinutes(horizonteMinutos);
+
+        List<Horario> horarios = horarioRepository
+                .findByActivoTrueAndEstadoInAndFechaSalidaLessThanAndFechaLlegadaGreaterThan(
+                        ESTADOS_PENDIENTES, hasta, desde);
+
+        cola.clear();
+        for (Horario h : horarios) {
+            encolarEventos(h);
+        }
+        ultimaRecarga = ahora;
+
+        log.debug("Cola de despacho recargada: {} horarios, {} eventos en [{}, {}]",
+                horarios.size(), cola.size(), desde, hasta);
+    }
+
+    private void encolarEventos(Horario h) {
+        if (h.getFechaSalida() == null || h.getFechaLlegada() == null) {
+            return;
+        }
+
+        if (ESTADOS_SIN_INICIAR.contains(h.getEstado())) {
+            cola.add(new EventoDespacho(h.getFechaSalida().plusMinutes(retrasoParada(h, 0)), TipoEvento.SALIDA,
+                    h.getId(), h.getTrenId(), h.getRutaId(), h.getEstacionOrigenId(), 0));
+        }
+
+        List<Horario.ParadaHorario> paradas = h.getParadas();
+        if (paradas != null) {
+            // La parada de origen se marca con la salida; el resto a su hora de llegada
+            for (int i = 1; i < paradas.size(); i++) {
+                Horario.ParadaHorario p = paradas.get(i);
+                if (p == null || p.getHoraLlegadaProgramada() == null || !PARADAS_PENDIENTES.contains(p.getEstado())) {
+                    continue;
+                }
+                cola.add(new EventoDespacho(p.getHoraLlegadaProgramada().plusMinutes(retrasoParada(h, i)), TipoEvento.LLEGADA_PARADA,
+                        h.getId(), h.getTrenId(), h.getRutaId(), p.getEstacionId(), i));
+            }
+        }
+
+        int ultimaParada = paradas == null || paradas.isEmpty() ? 0 : paradas.size() - 1;
+        cola.add(new EventoDespacho(h.getFechaLlegada().plusMinutes(retrasoParada(h, ultimaParada)), TipoEvento.LLEGADA_DESTINO,
+                h.getId(), h.getTrenId(), h.getRutaId(), h.getEstacionDestinoId(), 0));
+    }
+
+    // Retraso previsto (propagado por PropagacionRetrasosService) en la parada indicada
+    private int retrasoParada(Horario h, int indice) {
+        List<Horario.ParadaHorario> paradas = h.getParadas();
+        if (paradas == null || indice >= paradas.size() || paradas.get(indice) == null) {
+            return 0;
+        }
+        Integer retraso = paradas.get(indice).getRetrasoMinutos();
+        return retraso != null && retraso > 0 ? retraso : 0;
+    }
+
+    /**
+     * Aplica los eventos vencidos con una operación bulk ordenada por colección.
+     * Cada update lleva su condición de estado, así que reaplicar un evento
+     * (p. ej. tras un cambio de líder) no tiene efecto. Una salida cuyo tren
+     * no puede ocupar el primer bloque de la ruta se aplaza y se reintenta.
+     */
+    private void aplicar(List<EventoDespacho> eventos, LocalDateTime ahora) {
+        BulkOperations bulkHorarios = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Horario.class);
+        BulkOperations bulkTrenes = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Tren.class);
+        int opsHorarios = 0;
+        int opsTrenes = 0;
+        int aplazadas = 0;
+        List<String> llegadasDestino = new ArrayList<>();
+        Set<String> sinIniciar = horariosSinIniciar(eventos);
+        Set<String> trenesDisponibles = trenesDisponibles(eventos, sinIniciar);
+        Map<String, Ruta> rutas = rutasDeSalidas(eventos, trenesDisponibles);
+
+        for (EventoDespacho e : eventos) {
+            switch (e.getTipo()) {
+                case SALIDA -> {
+                    // Ya iniciado (a mano o por otro líder): el tren no se toca
+                    if (!sinIniciar.contains(e.getHorarioId())) {
+                        continue;
+                    }
+                    if (e.getTrenId() != null && trenesDisponibles.contains(e.getTrenId())) {
+                        Optional<OcupacionViasService.Bloque> bloque = ocupacionViasService.bloqueSalida(rutas.get(e.getRutaId()));
+                        if (bloque.isPresent() && !ocupacionViasService.adquirirSalida(bloque.get(), e.getTrenId())) {
+                            log.info("Salida del horario {} aplazada: el bloque {} está ocupado por el tren {}",
+                                    e.getHorarioId(), bloque.get().getClave(),
+                                    ocupacionViasService.ocupante(bloque.get().getClave()).orElse("desconocido"));
+                            cola.add(new EventoDespacho(ahora.plusSeconds(reintentoSalidaSegundos), e.getTipo(),
+                                    e.getHorarioId(), e.getTrenId(), e.getRutaId(), e.getEstacionId(), e.getIndiceParada()));
+                            aplazadas++;
+                            continue;
+                        }
+                    }
+                    bulkHorarios.updateOne(
+                            new Query(Criteria.where("_id").is(e.getHorarioId()).and("estado").in(ESTADOS_SIN_INICIAR)),
+                            new Update()
+                                    .set("estado", Horario.EstadoHorario.EN_MARCHA)
+                                    .set("fechaActualizacion", ahora));
+                    bulkHorarios.updateOne(
+                            new Query(Criteria.where("_id").is(e.getHorarioId())
+                                    .and("paradas.0.estado").in(PARADAS_PENDIENTES)),
+                            new Update()
+                                    .set("paradas.0.estado", Horario.EstadoParada.REALIZADA)
+                                    .set("paradas.0.horaSalidaReal", e.getInstante()));
+                    opsHorarios += 2;
+                    if (e.getTrenId() != null) {
+                        bulkTrenes.updateOne(
+                                new Query(Criteria.where("_id").is(e.getTrenId())
+                                        .and("estadoActual").in(ESTADOS_TREN_DISPONIBLE)),
+                                new Update()
+                                        .set("estadoActual", Tren.EstadoTren.EN_MARCHA)
+                                        .set("rutaActualId", e.getRutaId())
+                                        .set("estacionActualId", e.getEstacionId())
+                                        .set("fechaInicioViaje", e.getInstante())
+                                        .unset("viaActualId")
+                                        .unset("kilometroActual")
+                                        .unset("ubicacionActual")
+                                        .unset("posicionActual")
+                                        .set("fechaActualizacion", ahora));
+                        opsTrenes++;
+                    }
+                }
+                // Las llegadas exigen el servicio en marcha: con la salida aplazada no lo cierran
+                case LLEGADA_PARADA -> {
+                    String prefijo = "paradas." + e.getIndiceParada();
+                    bulkHorarios.updateOne(
+                            new Query(Criteria.where("_id").is(e.getHorarioId())
+                                    .and("estado").is(Horario.EstadoHorario.EN_MARCHA)
+                                    .and(prefijo + ".estacionId").is(e.getEstacionId())
+                                    .and(prefijo + ".estado").in(PARADAS_PENDIENTES)),
+                            new Update()
+                                    .set(prefijo + ".estado", Horario.EstadoParada.REALIZADA)
+                                    .set(prefijo + ".horaLlegadaReal", e.getInstante())
+                                    .set("fechaActualizacion", ahora));
+                    opsHorarios++;
+                }
+                case LLEGADA_DESTINO -> {
+                    bulkHorarios.updateOne(
+                            new Query(Criteria.where("_id").is(e.getHorarioId()).and("estado").is(Horario.EstadoHorario.EN_MARCHA)),
+                            new Update()
+                                    .set("estado", Horario.EstadoHorario.COMPLETADO)
+                                    .set("fechaActualizacion", ahora));
+                    opsHorarios++;
+                    if (e.getTrenId() != null) {
+                        // Solo si el tren sigue en este servicio
+                        bulkTrenes.updateOne(
+                                new Query(Criteria.where("_id").is(e.getTrenId())
+                                        .and("rutaActualId").is(e.getRutaId())
+                                        .and("estadoActual").is(Tren.EstadoTren.EN_MARCHA)),
+                                new Update()
+                                        .set("estadoActual", Tren.EstadoTren.FINALIZADO)
+                                        .set("estacionActualId", e.getEstacionId())
+                                        .set("fechaActualizacion", ahora));
+                        opsTrenes++;
+                        llegadasDestino.add(e.getTrenId());
+                    }
+                }
+            }
+        }
+
+        eventosAplicados += eventos.size() - aplazadas;
+        salidasAplazadas += aplazadas;
+
+        // Un bulk vacío no se puede ejecutar: tick con solo salidas ya iniciadas o aplazadas
+        if (opsHorarios == 0) {
+            if (aplazadas > 0) {
+                log.info("Despacho: {} salidas aplazadas, ningún evento que aplicar", aplazadas);
+            }
+            return;
+        }
+
+        var resultadoHorarios = bulkHorarios.execute();
+        if (opsTrenes > 0) {
+            bulkTrenes.execute();
+            liberarBloquesFinalizados(llegadasDestino);
+        }
+
+        log.info("Despacho: {} eventos aplicados ({} horarios modificados, {} operaciones sobre trenes, {} salidas aplazadas)",
+                eventos.size() - aplazadas, resultadoHorarios.getModifiedCount(), opsTrenes, aplazadas);
+    }
+
+    // Los trenes que el bulk dejó FINALIZADO sueltan sus bloques de vía
+    private void liberarBloquesFinalizados(List<String> trenIds) {
+        if (trenIds.isEmpty()) {
+            return;
+        }
+
+        Query query = new Query(Criteria.where("_id").in(trenIds).and("estadoActual").is(Tren.EstadoTren.FINALIZADO));
+        query.fields().include("_id");
+        List<String> finalizados = mongoTemplate.find(query, Tren.class).stream()
+                .map(Tren::getId)
+                .toList();
+        ocupacionViasService.liberarTrenes(finalizados);
+    }
+
+    // Horarios con salida vencida que siguen sin iniciar, en una sola consulta
+    private Set<String> horariosSinIniciar(List<EventoDespacho> eventos) {
+        List<String> ids = eventos.stream()
+                .filter(e -> e.getTipo() == TipoEvento.SALIDA)
+                .map(EventoDespacho::getHorarioId)
+                .toList();
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+
+        Query query = new Query(Criteria.where("_id").in(ids).and("estado").in(ESTADOS_SIN_INICIAR));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Horario.class).stream()
+                .map(Horario::getId)
+                .collect(Collectors.toSet());
+    }
+
+    // Trenes de esas salidas que están parados y pueden iniciar el servicio
+    private Set<String> trenesDisponibles(List<EventoDespacho> eventos, Set<String> sinIniciar) {
+        List<String> ids = eventos.stream()
+                .filter(e -> e.getTipo() == TipoEvento.SALIDA && e.getTrenId() != null
+                        && sinIniciar.contains(e.getHorarioId()))
+                .map(EventoDespacho::getTrenId)
+                .distinct()
+                .toList();
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+
+        Query query = new Query(Criteria.where("_id").in(ids).and("estadoActual").in(ESTADOS_TREN_DISPONIBLE));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Tren.class).stream()
+                .map(Tren::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private Map<String, Ruta> rutasDeSalidas(List<EventoDespacho> eventos, Set<String> trenesDisponibles) {
+        List<String> ids = eventos.stream()
+                .filter(e -> e.getTipo() == TipoEvento.SALIDA && e.getRutaId() != null
+                        && e.getTrenId() != null && trenesDisponibles.contains(e.getTrenId()))
+                .map(EventoDespacho::getRutaId)
+                .distinct()
+                .toList();
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return rutaRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Ruta::getId, r -> r));
+    }
+}
@@ -0,0 +1,336 @@
+package com.david.trenes.service;
+
+import com.david.trenes.dto.TrenPosicionResponse;
+import com.david.trenes.model.Incidente;
+import com.david.trenes.model.Tren;
+import com.david.trenes.model.Via;
+import com.david.trenes.repository.IncidenteRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detector periódico de conflictos entre trenes en marcha. En cada tick
+ * indexa las posiciones simuladas de la flota en una
+ * {@link IndiceEspacialTrenes} y detecta, en tiempo lineal:
+ * <ul>
+ *   <li>ocupación de una misma vía por varios trenes,</li>
+ *   <li>trenes de la misma vía separados menos que el intervalo mínimo,</li>
+ *   <li>trenes de vías distintas peligrosamente próximos.</li>
+ * </ul>
+ * Cada conflicto nuevo se registra como incidente y se resuelve cuando deja
+ * de detectarse. Solo el nodo con el lease "deteccion-conflictos" los emite
+ * y mantiene la ocupación de bloques de los trenes en circulación.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DetectorConflictosService {
+
+    private static final String LEASE_CONFLICTOS = "deteccion-conflictos";
+    private static final String REPORTADO_POR = "SISTEMA_DETECCION_CONFLICTOS";
+    private static final String PREFIJO_CODIGO = "CONF-";
+    // El mismo conflicto puede repetirse tras resolverse: el código lleva el instante de detección
+    private static final char SEPARADOR_INSTANTE = '@';
+    private static final DateTimeFormatter FORMATO_INSTANTE = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+
+    private static final Set<Incidente.EstadoIncidente> ESTADOS_ABIERTOS = Set.of(
+            Incidente.EstadoIncidente.REPORTADO,
+            Incidente.EstadoIncidente.CONFIRMADO,
+            Incidente.EstadoIncidente.EN_PROGRESO);
+
+    private final TrenService trenService;
+    private final IncidenteRepository incidenteRepository;
+    private final LeaseService leaseService;
+    private final OcupacionViasService ocupacionViasService;
+
+    @Value("${app.conflictos.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.conflictos.distancia-minima-km:0.5}")
+    private double distanciaMinimaKm;
+
+    @Value("${app.conflictos.headway-minutos:3}")
+    private double headwayMinutos;
+
+    @Value("${app.conflictos.lease-segundos:30}")
+    private long leaseSegundos;
+
+    private volatile IndiceEspacialTrenes indice = IndiceEspacialTrenes.vacio(1.0);
+    private volatile LocalDateTime ultimoTick;
+    private volatile boolean lider;
+
+    // Conflictos abiertos: clave del conflicto -> ID del incidente
+    private final Map<String, String> conflictosAbiertos = new ConcurrentHashMap<>();
+    private volatile boolean conflictosCargados;
+
+    private enum TipoConflicto {
+        OCUPACION_VIA,
+        HEADWAY,
+        PROXIMIDAD
+    }
+
+    private static final class Conflicto {
+        private final TipoConflicto tipo;
+        private final String viaId;
+        private final List<TrenPosicionResponse> trenes;
+        private final String detalle;
+
+        private Conflicto(TipoConflicto tipo, String viaId, List<TrenPosicionResponse> trenes, String detalle) {
+            this.tipo = tipo;
+            this.viaId = viaId;
+            this.trenes = trenes;
+            this.detalle = detalle;
+        }
+
+        private String clave() {
+            StringBuilder sb = new StringBuilder(tipo.name());
+            if (viaId != null && tipo != TipoConflicto.PROXIMIDAD) {
+                sb.append(':').append(viaId);
+            }
+            if (tipo != TipoConflicto.OCUPACION_VIA) {
+                trenes.stream().map(TrenPosicionResponse::getTrenId).sorted().forEach(id -> sb.append(':').append(id));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Trenes en marcha a menos de {@code radioKm} del punto, según el último tick.
+     */
+    public List<TrenPosicionResponse> trenesCercanos(double latitud, double longitud, double radioKm) {
+        return indice.cercanos(latitud, longitud, radioKm);
+    }
+
+    @Scheduled(fixedDelayString = "${app.conflictos.intervalo-ms:10000}")
+    public void detectar() {
+        if (!habilitado) {
+            return;
+        }
+
+        try {
+            List<TrenPosicionResponse> flota = trenService.getPosicionesFlota(null, null);
+            List<TrenPosicionResponse> posiciones = flota.stream()
+                    .filter(p -> p.getEstado() == Tren.EstadoTren.EN_MARCHA)
+                    .toList();
+
+            IndiceEspacialTrenes actual = IndiceEspacialTrenes.construir(posiciones, radioProximidadKm());
+            indice = actual;
+            ultimoTick = LocalDateTime.now();
+
+            lider = leaseService.intentarAdquirir(LEASE_CONFLICTOS, Duration.ofSeconds(leaseSegundos));
+            if (!lider) {
+                // Otro nodo emite; al recuperar el lease se recargan los abiertos desde Mongo
+                conflictosAbiertos.clear();
+                conflictosCargados = false;
+                return;
+            }
+
+            ocupacionViasService.sincronizarTrenesEnMarcha(flota);
+
+            List<Conflicto> conflictos = new ArrayList<>();
+            detectarEnVias(posiciones, conflictos);
+            detectarProximidad(actual, conflictos);
+
+            sincronizarIncidentes(conflictos, ultimoTick);
+
+        } catch (Exception e) {
+            log.error("Error en la detección de conflictos entre trenes", e);
+        }
+    }
+
+    // Agrupa por vía (O(n)) y ordena cada grupo por kilómetro para medir la separación entre trenes consecutivos
+    private void detectarEnVias(List<TrenPosicionResponse> posiciones, List<Conflicto> conflictos) {
+        Map<String, List<TrenPosicionResponse>> porVia = new HashMap<>();
+        for (TrenPosicionResponse p : posiciones) {
+            if (p.getViaId() != null) {
+                porVia.computeIfAbsent(p.getViaId(), k -> new ArrayList<>(2)).add(p);
+            }
+        }
+
+        for (Map.Entry<String, List<TrenPosicionResponse>> entrada : porVia.entrySet()) {
+            List<TrenPosicionResponse> trenes = entrada.getValue();
+            if (trenes.size() < 2) {
+                continue;
+            }
+
+            conflictos.add(new Conflicto(TipoConflicto.OCUPACION_VIA, entrada.getKey(), List.copyOf(trenes),
+                    trenes.size() + " trenes ocupan la vía " + entrada.getKey()));
+
+            trenes.sort(Comparator.comparing(TrenPosicionResponse::getKilometroEnVia,
+                    Comparator.nullsFirst(Double::compareTo)));
+            for (int i = 0; i + 1 < trenes.size(); i++) {
+                TrenPosicionResponse delante = trenes.get(i + 1);
+                TrenPosicionResponse detras = trenes.get(i);
+                if (delante.getKilometroEnVia() == null || detras.getKilometroEnVia() == null) {
+                    continue;
+                }
+                double separacionKm = delante.getKilometroEnVia() - detras.getKilometroEnVia();
+                double velocidad = detras.getVelocidadKmh() != null ? detras.getVelocidadKmh() : 0.0;
+                double minimaKm = Math.max(distanciaMinimaKm, velocidad * headwayMinutos / 60.0);
+                if (separacionKm < minimaKm) {
+                    conflictos.add(new Conflicto(TipoConflicto.HEADWAY, entrada.getKey(), List.of(detras, delante),
+                            String.format("Separación de %.2f km en la vía %s (mínimo %.2f km)",
+                                    separacionKm, entrada.getKey(), minimaKm)));
+                }
+            }
+        }
+    }
+
+    // Pares próximos en vías distintas (los de la misma vía ya los cubre el intervalo mínimo)
+    private void detectarProximidad(IndiceEspacialTrenes actual, List<Conflicto> conflictos) {
+        actual.paresCercanos(radioProximidadKm(), (a, b) -> {
+            if (!Objects.equals(a.getViaId(), b.getViaId())) {
+                conflictos.add(new Conflicto(TipoConflicto.PROXIMIDAD, null, List.of(a, b),
+                        String.format("Trenes a %.2f km en vías %s y %s",
+                                actual.distanciaKm(a, b), a.getViaId(), b.getViaId())));
+            }
+        });
+    }
+
+    // La celda de la rejilla coincide con el radio de proximidad; se acota para no crear celdas diminutas
+    private double radioProximidadKm() {
+        return Math.max(0.1, distanciaMinimaKm);
+    }
+
+    private void sincronizarIncidentes(List<Conflicto> conflictos, LocalDateTime ahora) {
+        if (!conflictosCargados) {
+            cargarConflictosAbiertos();
+        }
+
+        Map<String, Conflicto> detectados = new LinkedHashMap<>();
+        for (Conflicto c : conflictos) {
+            detectados.putIfAbsent(c.clave(), c);
+        }
+
+        List<Incidente> nuevos = new ArrayList<>();
+        for (Map.Entry<String, Conflicto> entrada : detectados.entrySet()) {
+            if (!conflictosAbiertos.containsKey(entrada.getKey())) {
+                nuevos.add(crearIncidente(entrada.getKey(), entrada.getValue(), ahora));
+            }
+        }
+        if (!nuevos.isEmpty()) {
+            incidenteRepository.saveAll(nuevos).forEach(i ->
+                    conflictosAbiertos.put(claveDeCodigo(i.getCodigoIncidente()), i.getId()));
+            log.warn("Conflictos entre trenes detectados: {}", nuevos.size());
+        }
+
+        List<String> resueltos = conflictosAbiertos.keySet().stream()
+                .filter(clave -> !detectados.containsKey(clave))
+                .toList();
+        if (!resueltos.isEmpty()) {
+            List<String> ids = resueltos.stream().map(conflictosAbiertos::get).toList();
+            List<Incidente> incidentes = new ArrayList<>();
+            incidenteRepository.findAllById(ids).forEach(i -> {
+                i.setEstado(Incidente.EstadoIncidente.RESUELTO);
+                i.setFechaFinReal(ahora);
+                i.setFechaActualizacion(ahora);
+                incidentes.add(i);
+            });
+            incidenteRepository.saveAll(incidentes);
+            resueltos.forEach(conflictosAbiertos::remove);
+            log.info("Conflictos entre trenes resueltos: {}", resueltos.size());
+        }
+    }
+
+    private void cargarConflictosAbiertos() {
+        conflictosAbiertos.clear();
+        incidenteRepository.findByReportadoPorAndEstadoIn(REPORTADO_POR, ESTADOS_ABIERTOS).forEach(i -> {
+            if (i.getCodigoIncidente() != null && i.getCodigoIncidente().startsWith(PREFIJO_CODIGO)) {
+                conflictosAbiertos.put(claveDeCodigo(i.getCodigoIncidente()), i.getId());
+            }
+        });
+        conflictosCargados = true;
+    }
+
+    // CONF-<clave>@<instante>; los códigos anteriores no llevan instante
+    private static String claveDeCodigo(String codigo) {
+        int fin = codigo.lastIndexOf(SEPARADOR_INSTANTE);
+        return codigo.substring(PREFIJO_CODIGO.length(), fin > 0 ? fin : codigo.length());
+    }
+
+    private Incidente crearIncidente(String clave, Conflicto conflicto, LocalDateTime ahora) {
+        List<Incidente.ElementoAfectado> elementos = new ArrayList<>();
+        for (TrenPosicionResponse t : conflicto.trenes) {
+            elementos.add(Incidente.ElementoAfectado.builder()
+                    .tipo("TREN")
+                    .id(t.getTrenId())
+                    .fechaAfectacion(ahora)
+                    .build());
+        }
+        if (conflicto.viaId != null) {
+            elementos.add(Incidente.ElementoAfectado.builder()
+                    .tipo("VIA")
+                    .id(conflicto.viaId)
+                    .fechaAfectacion(ahora)
+                    .build());
+        }
+
+        TrenPosicionResponse referencia = conflicto.trenes.get(0);
+        Incidente.SeveridadIncidente severidad = switch (conflicto.tipo) {
+            case OCUPACION_VIA -> Incidente.SeveridadIncidente.MEDIA;
+            case HEADWAY -> Incidente.SeveridadIncidente.ALTA;
+            case PROXIMIDAD -> Incidente.SeveridadIncidente.CRITICA;
+        };
+
+        return Incidente.builder()
+                .codigoIncidente(PREFIJO_CODIGO + clave + SEPARADOR_INSTANTE + FORMATO_INSTANTE.format(ahora))
+                .titulo("Conflicto de circulación: " + conflicto.tipo)
+                .descripcion(conflicto.detalle)
+                .tipoIncidente(Incidente.TipoIncidente.OTRO)
+                .severidad(severidad)
+                .estado(Incidente.EstadoIncidente.REPORTADO)
+                .ubicacion(Via.Coordenada.builder()
+                        .latitud(referencia.getLatitud())
+                        .longitud(referencia.getLongitud())
+                        .altitud(referencia.getAltitud())
+                        .build())
+                .elementosAfectados(elementos)
+                .impactoOperativo(Incidente.ImpactoIncidente.builder()
+                        .afectaServicio(true)
+                        .trenesAfectados(conflicto.trenes.size())
+                        .viasAfectadas(conflicto.viaId != null ? 1 : 0)
+                        .build())
+                .fechaHora(ahora)
+                .fechaDeteccion(ahora)
+                .reportadoPor(REPORTADO_POR)
+                .fechaCreacion(ahora)
+                .fechaActualizacion(ahora)
+                .build();
+    }
+
+    public Map<String, Object> obtenerEstado() {
+        IndiceEspacialTrenes actual = indice;
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("habilitado", habilitado);
+        estado.put("lider", lider);
+        estado.put("ultimoTick", ultimoTick);
+        estado.put("trenesIndexados", actual.getNumeroTrenes());
+        estado.put("celdasOcupadas", actual.getNumeroCeldas());
+        estado.put("conflictosAbiertos", new ArrayList<>(conflictosAbiertos.keySet()));
+        return estado;
+    }
+
+    @PreDestroy
+    public void liberarLease() {
+        if (lider) {
+            leaseService.liberar(LEASE_CONFLICTOS);
+        }
+    }
+}
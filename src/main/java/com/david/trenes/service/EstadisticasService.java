@@ -0,0 +1,181 @@
+package com.david.trenes.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.GroupOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Resúmenes de flota, red y explotación calculados en Mongo: cada colección
+ * se resume con un único pipeline ($facet con los totales en un $group y el
+ * desglose por estado en otro), en un solo viaje y sin cargar documentos en
+ * la JVM. Los resultados se cachean durante app.estadisticas.cache-ttl-segundos
+ * (0 desactiva la caché).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EstadisticasService {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.estadisticas.cache-ttl-segundos:60}")
+    private long cacheTtlSegundos;
+
+    private final ConcurrentHashMap<String, ResultadoCacheado> cache = new ConcurrentHashMap<>();
+
+    @Getter
+    @AllArgsConstructor
+    private static class ResultadoCacheado {
+        private final Map<String, Object> valor;
+        private final long expiraEn;
+    }
+
+    public Map<String, Object> resumenFlota() {
+        return cacheado("flota", () -> resumir("trenes",
+                Aggregation.group().count().as("total")
+                        .sum(activos()).as("activos")
+                        .sum("kilometraje_total").as("kilometrajeTotal")
+                        .sum("capacidad_pasajeros").as("capacidadTotalPasajeros"),
+                Aggregation.group("estado_actual").count().as("total")));
+    }
+
+    public Map<String, Object> resumenRutas() {
+        return cacheado("rutas", () -> resumir("rutas",
+                Aggregation.group().count().as("total")
+                        .sum(activos()).as("activas")
+                        .sum("distancia_total_km").as("distanciaTotalKm")
+                        .avg("tiempo_estimado_minutos").as("tiempoPromedioMinutos"),
+                Aggregation.group("estado").count().as("total")
+                        .sum("distancia_total_km").as("distanciaKm")));
+    }
+
+    public Map<String, Object> resumenVias() {
+        return cacheado("vias", () -> resumir("vias",
+                Aggregation.group().count().as("total")
+                        .sum(activos()).as("activas")
+                        .sum("longitud_km").as("longitudTotalKm"),
+                Aggregation.group("estado").count().as("total")
+                        .sum("longitud_km").as("longitudKm")));
+    }
+
+    public Map<String, Object> resumenHorarios() {
+        return cacheado("horarios", () -> resumir("horarios",
+                Aggregation.group().count().as("total")
+                        .sum("pasajeros_actuales").as("pasajerosActuales")
+                        .sum("capacidad_pasajeros").as("capacidadTotal")
+                        .avg("tarifa").as("tarifaPromedio"),
+                Aggregation.group("estado").count().as("total")));
+    }
+
+    public Map<String, Object> resumenIncidentes() {
+        return cacheado("incidentes", () -> resumir("incidentes",
+                Aggregation.group().count().as("total")
+                        .sum("costo_estimado").as("costoEstimado")
+                        .sum("costo_real").as("costoReal")
+                        .avg("duracion_minutos").as("duracionPromedioMinutos")
+                        .sum("impacto_operativo.pasajerosAfectados").as("pasajerosAfectados")
+                        .sum("impacto_operativo.trenesAfectados").as("trenesAfectados"),
+                Aggregation.group("estado").count().as("total")));
+    }
+
+    public Map<String, Object> resumenMantenimientos() {
+        return cacheado("mantenimientos", () -> resumir("mantenimientos",
+                Aggregation.group().count().as("total")
+                        .sum("costo_estimado").as("costoEstimado")
+                        .sum("costo_real").as("costoReal")
+                        .sum("duracion_estimada_horas").as("duracionEstimadaHoras")
+                        .sum("duracion_real_horas").as("duracionRealHoras"),
+                Aggregation.group("estado").count().as("total")));
+    }
+
+    public Map<String, Object> resumenRed() {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("vias", resumenVias());
+        resultado.put("rutas", resumenRutas());
+        resultado.put("timestamp", LocalDateTime.now());
+        return resultado;
+    }
+
+    public Map<String, Object> resumenGeneral() {
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("flota", resumenFlota());
+        resultado.put("vias", resumenVias());
+        resultado.put("rutas", resumenRutas());
+        resultado.put("horarios", resumenHorarios());
+        resultado.put("incidentes", resumenIncidentes());
+        resultado.put("mantenimientos", resumenMantenimientos());
+        resultado.put("timestamp", LocalDateTime.now());
+        return resultado;
+    }
+
+    public void limpiarCache() {
+        cache.clear();
+    }
+
+    private Map<String, Object> resumir(String coleccion, GroupOperation totales, GroupOperation porEstado) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.facet(totales).as("totales")
+                        .and(porEstado).as("porEstado"));
+        Document documento = mongoTemplate.aggregate(aggregation, coleccion, Document.class).getUniqueMappedResult();
+
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        List<Document> filasTotales = documento != null ? documento.getList("totales", Document.class) : List.of();
+        if (filasTotales.isEmpty()) {
+            resumen.put("total", 0);
+        } else {
+            filasTotales.get(0).forEach((campo, valor) -> {
+                if (!"_id".equals(campo)) {
+                    resumen.put(campo, valor);
+                }
+            });
+        }
+
+        Map<String, Object> desglose = new LinkedHashMap<>();
+        List<Document> filasEstado = documento != null ? documento.getList("porEstado", Document.class) : List.of();
+        for (Document fila : filasEstado) {
+            String estado = String.valueOf(fila.get("_id"));
+            fila.remove("_id");
+            desglose.put(estado, fila.size() == 1 ? fila.get("total") : fila);
+        }
+        resumen.put("porEstado", desglose);
+        return resumen;
+    }
+
+    private Map<String, Object> cacheado(String clave, Supplier<Map<String, Object>> calculo) {
+        if (cacheTtlSegundos <= 0) {
+            return calculo.get();
+        }
+        long ahora = System.currentTimeMillis();
+        ResultadoCacheado cacheado = cache.get(clave);
+        if (cacheado != null && cacheado.getExpiraEn() > ahora) {
+            return cacheado.getValor();
+        }
+
+        long inicio = System.nanoTime();
+        Map<String, Object> valor = Collections.unmodifiableMap(calculo.get());
+        cache.put(clave, new ResultadoCacheado(valor, ahora + cacheTtlSegundos * 1000));
+        log.debug("Estadísticas '{}' recalculadas en {} ms", clave, (System.nanoTime() - inicio) / 1_000_000);
+        return valor;
+    }
+
+    private static ConditionalOperators.Cond activos() {
+        return ConditionalOperators.when(Criteria.where("activo").is(true)).then(1).otherwise(0);
+    }
+}
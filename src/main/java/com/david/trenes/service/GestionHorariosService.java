@@ -1,16 +1,21 @@
 package com.david.trenes.service;
 
+import com.david.trenes.dto.MonitorizacionTrenesResponse;
 import com.david.trenes.model.Horario;
 import com.david.trenes.model.Ruta;
 import com.david.trenes.model.Tren;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -20,12 +25,28 @@ public class GestionHorariosService {
     private final HorarioService horarioService;
     private final RutaService rutaService;
     private final TrenService trenService;
+    private final OcupacionViasService ocupacionViasService;
 
     // Índices para rotación de trenes por tipo
     private final java.util.Map<Tren.TipoTren, Integer> indicesRotacion = new java.util.concurrent.ConcurrentHashMap<>();
 
     // Margen entre servicios para el mismo tren (limpieza, cambio de tripulación, maniobras, etc.)
-    private static final java.time.Duration MARGEN_ENTRE_SERVICIOS = java.time.Duration.ofMinutes(15);
+    static final java.time.Duration MARGEN_ENTRE_SERVICIOS = java.time.Duration.ofMinutes(15);
+
+    // Snapshot opcional de monitorización refrescado en segundo plano
+    @Value("${app.monitorizacion.snapshot-habilitado:false}")
+    private boolean snapshotMonitorizacionHabilitado;
+
+    private volatile MonitorizacionTrenesResponse ultimaMonitorizacion;
+
+    // Verificación de consistencia por lotes con marca de agua para el modo incremental
+    private static final int TAMANO_LOTE_CONSISTENCIA = 1000;
+    private static final int MAX_INCONSISTENCIAS_DETALLADAS = 1000;
+
+    @Value("${app.consistencia.programada-habilitada:false}")
+    private boolean verificacionConsistenciaProgramada;
+
+    private volatile LocalDateTime ultimaVerificacionConsistencia;
 
     public void crearHorariosProgramados() {
         log.info("Creando horarios programados para el sistema");
@@ -141,6 +162,16 @@ public class GestionHorariosService {
         Tren tren = trenService.findById(horario.getTrenId())
                 .orElseThrow(() -> new RuntimeException("Tren no encontrado con ID: " + horario.getTrenId()));
 
+        // 0) El tren sale ocupando el primer bloque de la ruta; si está ocupado no se inicia nada
+        Ruta ruta = rutaService.findById(horario.getRutaId())
+                .orElseThrow(() -> new RuntimeException("Ruta no encontrada con ID: " + horario.getRutaId()));
+        OcupacionViasService.Bloque bloque = ocupacionViasService.bloqueSalida(ruta)
+                .orElseThrow(() -> new IllegalStateException("La ruta no tiene vías asociadas"));
+        if (!ocupacionViasService.adquirirSalida(bloque, tren.getId())) {
+            throw new IllegalStateException("La vía " + bloque.getViaId() + " está ocupada por el tren "
+                    + ocupacionViasService.ocupante(bloque.getClave()).orElse("desconocido"));
+        }
+
         // 1) Actualizar horario
         horario.setEstado(Horario.EstadoHorario.EN_MARCHA);
         horario.setFechaActualizacion(ahora);
@@ -647,56 +678,129 @@ public class GestionHorariosService {
     }
 
     public Map<String, Object> verificarConsistenciaParadasConRuta() {
-        log.info("Iniciando verificación de consistencia entre paradas de horarios y rutas");
-        
-        Map<String, Object> resultado = new HashMap<>();
+        return verificarConsistenciaParadasConRuta(false);
+    }
+
+    /**
+     * Verifica las paradas de los horarios contra su ruta recorriendo la
+     * colección con un cursor en lotes de {@value #TAMANO_LOTE_CONSISTENCIA}
+     * que se validan en paralelo. Las rutas se cargan una vez por ejecución.
+     * En modo incremental solo se revisan los horarios modificados (o cuya ruta
+     * se modificó) desde la última verificación.
+     */
+    public synchronized Map<String, Object> verificarConsistenciaParadasConRuta(boolean incremental) {
+        LocalDateTime inicio = LocalDateTime.now();
+        LocalDateTime desde = incremental ? ultimaVerificacionConsistencia : null;
+
+        log.info("Iniciando verificación de consistencia entre paradas de horarios y rutas ({})",
+                desde == null ? "completa" : "incremental desde " + desde);
+
+        Map<String, Ruta> rutas = rutaService.findAll().stream()
+                .filter(r -> r.getId() != null)
+                .collect(Collectors.toMap(Ruta::getId, r -> r, (a, b) -> a));
+
+        List<String> rutasModificadas = desde == null ? List.of() : rutas.values().stream()
+                .filter(r -> r.getFechaActualizacion() != null && r.getFechaActualizacion().isAfter(desde))
+                .map(Ruta::getId)
+                .toList();
+
         List<Map<String, Object>> inconsistencias = new ArrayList<>();
-        int horariosVerificados = 0;
-        int horariosConsistentes = 0;
-        
-        List<Horario> todosHorarios = horarioService.findAll();
-        
-        for (Horario horario : todosHorarios) {
-            horariosVerificados++;
-            
-            Map<String, Object> verificacionHorario = verificarConsistenciaHorarioRuta(horario);
-            
-            Boolean esConsistente = (Boolean) verificacionHorario.get("consistente");
-            if (esConsistente) {
-                horariosConsistentes++;
-            } else {
-                inconsistencias.add(verificacionHorario);
+        int[] contadores = new int[3]; // verificados, consistentes, inconsistencias omitidas
+
+        try (Stream<Horario> horarios = desde == null
+                ? horarioService.streamAll()
+                : horarioService.streamModificadosDesde(desde, rutasModificadas)) {
+
+            Iterator<Horario> it = horarios.iterator();
+            List<Horario> lote = new ArrayList<>(TAMANO_LOTE_CONSISTENCIA);
+            while (it.hasNext()) {
+                lote.add(it.next());
+                if (lote.size() == TAMANO_LOTE_CONSISTENCIA) {
+                    verificarLoteConsistencia(lote, rutas, inconsistencias, contadores);
+                    lote = new ArrayList<>(TAMANO_LOTE_CONSISTENCIA);
+                }
+            }
+            if (!lote.isEmpty()) {
+                verificarLoteConsistencia(lote, rutas, inconsistencias, contadores);
             }
         }
-        
+
+        ultimaVerificacionConsistencia = inicio;
+
+        int horariosVerificados = contadores[0];
+        int horariosConsistentes = contadores[1];
+        double porcentaje = horariosVerificados > 0 ? (double) horariosConsistentes / horariosVerificados * 100 : 0.0;
+
+        Map<String, Object> resultado = new HashMap<>();
+        resultado.put("modo", desde == null ? "COMPLETO" : "INCREMENTAL");
+        resultado.put("desde", desde);
         resultado.put("horariosVerificados", horariosVerificados);
         resultado.put("horariosConsistentes", horariosConsistentes);
         resultado.put("horariosInconsistentes", horariosVerificados - horariosConsistentes);
         resultado.put("inconsistencias", inconsistencias);
-        resultado.put("porcentajeConsistencia", horariosVerificados > 0 ? 
-            (double) horariosConsistentes / horariosVerificados * 100 : 0.0);
-        
-        log.info("Verificación completada: {}/{} horarios consistentes ({:.2f}%)", 
-            horariosConsistentes, horariosVerificados, 
-            horariosVerificados > 0 ? (double) horariosConsistentes / horariosVerificados * 100 : 0.0);
-        
+        resultado.put("inconsistenciasOmitidas", contadores[2]);
+        resultado.put("porcentajeConsistencia", porcentaje);
+
+        log.info("Verificación completada: {}/{} horarios consistentes ({}%)",
+                horariosConsistentes, horariosVerificados, String.format("%.2f", porcentaje));
+
         return resultado;
     }
+
+    @Scheduled(cron = "${app.consistencia.cron:0 30 3 * * *}")
+    public void verificarConsistenciaProgramada() {
+        if (!verificacionConsistenciaProgramada) {
+            return;
+        }
+        try {
+            verificarConsistenciaParadasConRuta(true);
+        } catch (Exception e) {
+            log.error("Error en la verificación programada de consistencia", e);
+        }
+    }
+
+    private void verificarLoteConsistencia(List<Horario> lote, Map<String, Ruta> rutas,
+                                           List<Map<String, Object>> inconsistencias, int[] contadores) {
+        List<Map<String, Object>> resultados = lote.parallelStream()
+                .map(h -> {
+                    try {
+                        return verificarConsistenciaHorarioRuta(h, rutas.get(h.getRutaId()));
+                    } catch (RuntimeException e) {
+                        Map<String, Object> error = new HashMap<>();
+                        error.put("horarioId", h.getId());
+                        error.put("codigoServicio", h.getCodigoServicio());
+                        error.put("rutaId", h.getRutaId());
+                        error.put("consistente", false);
+                        error.put("error", "Datos incompletos: " + e.getMessage());
+                        return error;
+                    }
+                })
+                .toList();
+
+        for (Map<String, Object> r : resultados) {
+            contadores[0]++;
+            if (Boolean.TRUE.equals(r.get("consistente"))) {
+                contadores[1]++;
+            } else if (inconsistencias.size() < MAX_INCONSISTENCIAS_DETALLADAS) {
+                inconsistencias.add(r);
+            } else {
+                contadores[2]++;
+            }
+        }
+    }
     
-    private Map<String, Object> verificarConsistenciaHorarioRuta(Horario horario) {
+    private Map<String, Object> verificarConsistenciaHorarioRuta(Horario horario, Ruta ruta) {
         Map<String, Object> resultado = new HashMap<>();
         resultado.put("horarioId", horario.getId());
         resultado.put("codigoServicio", horario.getCodigoServicio());
         resultado.put("rutaId", horario.getRutaId());
         
-        Optional<Ruta> rutaOpt = rutaService.findById(horario.getRutaId());
-        if (rutaOpt.isEmpty()) {
+        if (ruta == null) {
             resultado.put("consistente", false);
             resultado.put("error", "Ruta no encontrada");
             return resultado;
         }
         
-        Ruta ruta = rutaOpt.get();
         List<String> problemas = new ArrayList<>();
         
         // 1. Verificar origen y destino
@@ -800,15 +904,47 @@ public class GestionHorariosService {
         return resultado;
     }
 
-    public Map<String, Object> monitorizarEstadoTrenesTiempoReal() {
+    /**
+     * Estado en tiempo real de toda la flota. Con el snapshot habilitado
+     * devuelve el último calculado por {@link #refrescarSnapshotMonitorizacion()}
+     * sin tocar la base de datos.
+     */
+    public MonitorizacionTrenesResponse monitorizarEstadoTrenesTiempoReal() {
+        if (snapshotMonitorizacionHabilitado) {
+            MonitorizacionTrenesResponse snapshot = ultimaMonitorizacion;
+            if (snapshot != null) {
+                return snapshot;
+            }
+        }
+        return calcularMonitorizacion();
+    }
+
+    @Scheduled(fixedDelayString = "${app.monitorizacion.snapshot-intervalo-ms:5000}")
+    public void refrescarSnapshotMonitorizacion() {
+        if (!snapshotMonitorizacionHabilitado) {
+            return;
+        }
+        try {
+            ultimaMonitorizacion = calcularMonitorizacion();
+        } catch (Exception e) {
+            log.error("Error al refrescar el snapshot de monitorización", e);
+        }
+    }
+
+    private MonitorizacionTrenesResponse calcularMonitorizacion() {
         log.info("Iniciando monitorización en tiempo real de todos los trenes");
 
-        Map<String, Object> resultado = new HashMap<>();
-        List<Map<String, Object>> estadosTrenes = new ArrayList<>();
         LocalDateTime ahora = LocalDateTime.now();
 
-        // Obtener todos los trenes
+        // Dos consultas en total: todos los trenes y todos los horarios activos agrupados por tren
         List<Tren> todosTrenes = trenService.findAll();
+        Map<String, List<Horario>> horariosPorTren = horarioService.findHorariosActivos().stream()
+                .filter(h -> h.getTrenId() != null)
+                .collect(Collectors.groupingBy(Horario::getTrenId));
+
+        List<MonitorizacionTrenesResponse.EstadoTrenMonitorizado> estadosTrenes = todosTrenes.parallelStream()
+                .map(tren -> analizarEstadoTrenActual(tren, horariosPorTren.getOrDefault(tren.getId(), List.of()), ahora))
+                .toList();
 
         int trenesEnMarcha = 0;
         int trenesDetenidos = 0;
@@ -817,11 +953,8 @@ public class GestionHorariosService {
 
         Map<String, Integer> contadorPorEstado = new HashMap<>();
 
-        for (Tren tren : todosTrenes) {
-            Map<String, Object> estadoTren = analizarEstadoTrenActual(tren, ahora);
-            estadosTrenes.add(estadoTren);
-
-            String estado = (String) estadoTren.get("estadoOperativo");
+        for (MonitorizacionTrenesResponse.EstadoTrenMonitorizado estadoTren : estadosTrenes) {
+            String estado = estadoTren.getEstadoOperativo();
             if (estado == null) estado = "DESCONOCIDO";
 
             contadorPorEstado.merge(estado, 1, Integer::sum);
@@ -833,46 +966,44 @@ public class GestionHorariosService {
                 default -> { /* se cuenta en contadorPorEstado */ }
             }
 
-            if (Boolean.TRUE.equals(estadoTren.get("tieneIncidentes"))) {
+            if (Boolean.TRUE.equals(estadoTren.getTieneIncidentes())) {
                 incidentesDetectados++;
             }
         }
 
-        resultado.put("timestamp", ahora);
-        resultado.put("totalTrenes", todosTrenes.size());
-        resultado.put("trenesEnMarcha", trenesEnMarcha);
-        resultado.put("trenesDetenidos", trenesDetenidos);
-        resultado.put("trenesEnMantenimiento", trenesEnMantenimiento);
-        resultado.put("incidentesDetectados", incidentesDetectados);
-        resultado.put("contadorPorEstado", contadorPorEstado);
-        resultado.put("estadosTrenes", estadosTrenes);
-
         log.info("Monitorización completada: {} trenes totales, {} en marcha, {} incidentes",
                 todosTrenes.size(), trenesEnMarcha, incidentesDetectados);
 
-        return resultado;
+        return MonitorizacionTrenesResponse.builder()
+                .timestamp(ahora)
+                .totalTrenes(todosTrenes.size())
+                .trenesEnMarcha(trenesEnMarcha)
+                .trenesDetenidos(trenesDetenidos)
+                .trenesEnMantenimiento(trenesEnMantenimiento)
+                .incidentesDetectados(incidentesDetectados)
+                .contadorPorEstado(contadorPorEstado)
+                .estadosTrenes(estadosTrenes)
+                .build();
     }
     
-    private Map<String, Object> analizarEstadoTrenActual(Tren tren, LocalDateTime ahora) {
-        Map<String, Object> estado = new HashMap<>();
-        
-        estado.put("trenId", tren.getId());
-        estado.put("numeroTren", tren.getNumeroTren());
-        estado.put("tipoTren", tren.getTipoTren());
-        estado.put("estadoActual", tren.getEstadoActual());
-        estado.put("capacidadPasajeros", tren.getCapacidadPasajeros());
-        estado.put("ultimaActualizacion", tren.getFechaActualizacion());
-        
-        // Obtener horarios activos del tren
-        List<Horario> horariosActivos = obtenerHorariosActivosPorTren(tren.getId());
+    private MonitorizacionTrenesResponse.EstadoTrenMonitorizado analizarEstadoTrenActual(
+            Tren tren, List<Horario> horariosActivos, LocalDateTime ahora) {
+        MonitorizacionTrenesResponse.EstadoTrenMonitorizado.EstadoTrenMonitorizadoBuilder estado =
+                MonitorizacionTrenesResponse.EstadoTrenMonitorizado.builder()
+                        .trenId(tren.getId())
+                        .numeroTren(tren.getNumeroTren())
+                        .tipoTren(tren.getTipoTren())
+                        .estadoActual(tren.getEstadoActual())
+                        .capacidadPasajeros(tren.getCapacidadPasajeros())
+                        .ultimaActualizacion(tren.getFechaActualizacion());
         
         if (horariosActivos.isEmpty()) {
-            estado.put("estadoOperativo", "SIN_SERVICIO");
-            estado.put("posicionActual", "Depósito/Taller");
-            estado.put("proximoServicio", null);
-            estado.put("tieneIncidentes", false);
-            estado.put("incidentes", new ArrayList<>());
-            return estado;
+            return estado
+                    .estadoOperativo("SIN_SERVICIO")
+                    .posicionActual("Depósito/Taller")
+                    .tieneIncidentes(false)
+                    .incidentes(List.of())
+                    .build();
         }
         
         // Buscar el horario actual o el más próximo
@@ -882,41 +1013,34 @@ public class GestionHorariosService {
             // No hay horario en este momento, buscar el próximo
             horarioActual = encontrarProximoHorario(horariosActivos, ahora);
             if (horarioActual != null) {
-                estado.put("estadoOperativo", "PREPARANDO_SALIDA");
-                estado.put("posicionActual", "Estación origen: " + horarioActual.getEstacionOrigenId());
-                estado.put("proximoServicio", horarioActual.getCodigoServicio());
-                estado.put("horaSalida", horarioActual.getFechaSalida());
+                estado.estadoOperativo("PREPARANDO_SALIDA")
+                        .posicionActual("Estación origen: " + horarioActual.getEstacionOrigenId())
+                        .proximoServicio(horarioActual.getCodigoServicio())
+                        .horaSalida(horarioActual.getFechaSalida());
             } else {
-                estado.put("estadoOperativo", "SERVICIO_COMPLETADO");
-                estado.put("posicionActual", "Depósito");
-                estado.put("proximoServicio", null);
+                estado.estadoOperativo("SERVICIO_COMPLETADO")
+                        .posicionActual("Depósito");
             }
         } else {
             // El tren está en servicio
-            estado.put("estadoOperativo", "EN_MARCHA");
-            estado.put("horarioActual", horarioActual.getCodigoServicio());
-            estado.put("rutaId", horarioActual.getRutaId());
-            estado.put("estacionOrigen", horarioActual.getEstacionOrigenId());
-            estado.put("estacionDestino", horarioActual.getEstacionDestinoId());
-            estado.put("fechaSalida", horarioActual.getFechaSalida());
-            estado.put("fechaLlegada", horarioActual.getFechaLlegada());
+            estado.estadoOperativo("EN_MARCHA")
+                    .horarioActual(horarioActual.getCodigoServicio())
+                    .rutaId(horarioActual.getRutaId())
+                    .estacionOrigen(horarioActual.getEstacionOrigenId())
+                    .estacionDestino(horarioActual.getEstacionDestinoId())
+                    .fechaSalida(horarioActual.getFechaSalida())
+                    .fechaLlegada(horarioActual.getFechaLlegada());
             
             // Determinar posición actual
-            Map<String, Object> posicion = determinarPosicionActual(horarioActual, ahora);
-            estado.put("posicionActual", posicion.get("descripcion"));
-            estado.put("paradaActual", posicion.get("paradaActual"));
-            estado.put("proximaParada", posicion.get("proximaParada"));
-            estado.put("progresoPorcentaje", posicion.get("progresoPorcentaje"));
-            estado.put("kilometrosRecorridos", posicion.get("kilometrosRecorridos"));
-            estado.put("kilometrosTotales", posicion.get("kilometrosTotales"));
+            determinarPosicionActual(horarioActual, ahora, estado);
         }
         
         // Analizar incidentes
-        List<Map<String, Object>> incidentes = analizarIncidentesTren(tren, horariosActivos, ahora);
-        estado.put("tieneIncidentes", !incidentes.isEmpty());
-        estado.put("incidentes", incidentes);
-        
-        return estado;
+        List<MonitorizacionTrenesResponse.IncidenteMonitorizado> incidentes = analizarIncidentesTren(tren, horariosActivos, ahora);
+        return estado
+                .tieneIncidentes(!incidentes.isEmpty())
+                .incidentes(incidentes)
+                .build();
     }
     
     private Horario encontrarHorarioActual(List<Horario> horarios, LocalDateTime ahora) {
@@ -938,17 +1062,14 @@ public class GestionHorariosService {
             .orElse(null);
     }
     
-    private Map<String, Object> determinarPosicionActual(Horario horario, LocalDateTime ahora) {
-        Map<String, Object> posicion = new HashMap<>();
-        
+    private void determinarPosicionActual(Horario horario, LocalDateTime ahora,
+                                          MonitorizacionTrenesResponse.EstadoTrenMonitorizado.EstadoTrenMonitorizadoBuilder estado) {
         if (horario.getParadas() == null || horario.getParadas().isEmpty()) {
-            posicion.put("descripcion", "Ruta sin paradas definidas");
-            posicion.put("paradaActual", null);
-            posicion.put("proximaParada", null);
-            posicion.put("progresoPorcentaje", 0.0);
-            posicion.put("kilometrosRecorridos", 0.0);
-            posicion.put("kilometrosTotales", 0.0);
-            return posicion;
+            estado.posicionActual("Ruta sin paradas definidas")
+                    .progresoPorcentaje(0.0)
+                    .kilometrosRecorridos(0.0)
+                    .kilometrosTotales(0.0);
+            return;
         }
         
         // Calcular progreso temporal
@@ -984,45 +1105,44 @@ public class GestionHorariosService {
         double distanciaTotal = 100.0; // km base, se puede ajustar según ruta real
         double kilometrosRecorridos = distanciaTotal * (progresoTemporal / 100.0);
         
-        posicion.put("descripcion", paradaActual != null ? 
-            String.format("Entre %s y %s", 
-                paradaActual.getNombreEstacion(), 
-                proximaParada != null ? proximaParada.getNombreEstacion() : "Destino final") :
-            "En ruta hacia próxima parada");
-        posicion.put("paradaActual", paradaActual);
-        posicion.put("proximaParada", proximaParada);
-        posicion.put("progresoPorcentaje", Math.round(progresoTemporal * 100.0) / 100.0);
-        posicion.put("kilometrosRecorridos", Math.round(kilometrosRecorridos * 100.0) / 100.0);
-        posicion.put("kilometrosTotales", distanciaTotal);
-        
-        return posicion;
+        estado.posicionActual(paradaActual != null ?
+                    String.format("Entre %s y %s",
+                        paradaActual.getNombreEstacion(),
+                        proximaParada != null ? proximaParada.getNombreEstacion() : "Destino final") :
+                    "En ruta hacia próxima parada")
+                .paradaActual(paradaActual)
+                .proximaParada(proximaParada)
+                .progresoPorcentaje(Math.round(progresoTemporal * 100.0) / 100.0)
+                .kilometrosRecorridos(Math.round(kilometrosRecorridos * 100.0) / 100.0)
+                .kilometrosTotales(distanciaTotal);
     }
     
-    private List<Map<String, Object>> analizarIncidentesTren(Tren tren, List<Horario> horarios, LocalDateTime ahora) {
-        List<Map<String, Object>> incidentes = new ArrayList<>();
+    private List<MonitorizacionTrenesResponse.IncidenteMonitorizado> analizarIncidentesTren(
+            Tren tren, List<Horario> horarios, LocalDateTime ahora) {
+        List<MonitorizacionTrenesResponse.IncidenteMonitorizado> incidentes = new ArrayList<>();
         
         // 1. Verificar retrasos
         for (Horario horario : horarios) {
             if (horario.getEstado() == Horario.EstadoHorario.RETRASADO) {
-                Map<String, Object> incidente = new HashMap<>();
-                incidente.put("tipo", "RETRASO");
-                incidente.put("descripcion", "El tren presenta retraso en su servicio");
-                incidente.put("horario", horario.getCodigoServicio());
-                incidente.put("severidad", "MEDIA");
-                incidentes.add(incidente);
+                incidentes.add(MonitorizacionTrenesResponse.IncidenteMonitorizado.builder()
+                        .tipo("RETRASO")
+                        .descripcion("El tren presenta retraso en su servicio")
+                        .horario(horario.getCodigoServicio())
+                        .severidad("MEDIA")
+                        .build());
             }
             
             // 2. Verificar paradas omitidas
             if (horario.getParadas() != null) {
                 for (Horario.ParadaHorario parada : horario.getParadas()) {
                     if (parada.getEstado() == Horario.EstadoParada.OMITIDA) {
-                        Map<String, Object> incidente = new HashMap<>();
-                        incidente.put("tipo", "PARADA_OMITIDA");
-                        incidente.put("descripcion", String.format("Parada omitida en %s", parada.getNombreEstacion()));
-                        incidente.put("horario", horario.getCodigoServicio());
-                        incidente.put("estacion", parada.getEstacionId());
-                        incidente.put("severidad", "ALTA");
-                        incidentes.add(incidente);
+                        incidentes.add(MonitorizacionTrenesResponse.IncidenteMonitorizado.builder()
+                                .tipo("PARADA_OMITIDA")
+                                .descripcion(String.format("Parada omitida en %s", parada.getNombreEstacion()))
+                                .horario(horario.getCodigoServicio())
+                                .estacion(parada.getEstacionId())
+                                .severidad("ALTA")
+                                .build());
                     }
                 }
             }
@@ -1033,12 +1153,12 @@ public class GestionHorariosService {
                 if (ultimaActualizacion != null) {
                     long minutosSinActualizacion = java.time.Duration.between(ultimaActualizacion, ahora).toMinutes();
                     if (minutosSinActualizacion > 30) { // Más de 30 minutos sin actualización
-                        Map<String, Object> incidente = new HashMap<>();
-                        incidente.put("tipo", "SIN_COMUNICACION");
-                        incidente.put("descripcion", String.format("Sin comunicación por %d minutos", minutosSinActualizacion));
-                        incidente.put("horario", horario.getCodigoServicio());
-                        incidente.put("severidad", "ALTA");
-                        incidentes.add(incidente);
+                        incidentes.add(MonitorizacionTrenesResponse.IncidenteMonitorizado.builder()
+                                .tipo("SIN_COMUNICACION")
+                                .descripcion(String.format("Sin comunicación por %d minutos", minutosSinActualizacion))
+                                .horario(horario.getCodigoServicio())
+                                .severidad("ALTA")
+                                .build());
                     }
                 }
             }
@@ -1046,11 +1166,11 @@ public class GestionHorariosService {
         
         // 4. Verificar estado del tren
         if (tren.getEstadoActual() == Tren.EstadoTren.MANTENIMIENTO) {
-            Map<String, Object> incidente = new HashMap<>();
-            incidente.put("tipo", "MANTENIMIENTO");
-            incidente.put("descripcion", "Tren actualmente en mantenimiento");
-            incidente.put("severidad", "BAJA");
-            incidentes.add(incidente);
+            incidentes.add(MonitorizacionTrenesResponse.IncidenteMonitorizado.builder()
+                    .tipo("MANTENIMIENTO")
+                    .descripcion("Tren actualmente en mantenimiento")
+                    .severidad("BAJA")
+                    .build());
         }
         
         return incidentes;
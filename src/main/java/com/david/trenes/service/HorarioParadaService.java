@@ -1,16 +1,33 @@
 package com.david.trenes.service;
 
+import com.david.trenes.model.Estacion;
 import com.david.trenes.model.Horario;
 import com.david.trenes.model.Ruta;
+import com.david.trenes.repository.EstacionRepository;
 import com.david.trenes.repository.HorarioRepository;
 import com.david.trenes.repository.RutaRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -18,33 +35,58 @@ import java.util.List;
 @Transactional
 public class HorarioParadaService {
 
+    private static final int TAMANO_LOTE = 1000;
+
     private final HorarioRepository horarioRepository;
     private final RutaRepository rutaRepository;
+    private final EstacionRepository estacionRepository;
+    private final MongoTemplate mongoTemplate;
 
     /**
-     * Actualiza todos los horarios con las paradas de sus rutas
+     * Actualiza todos los horarios con las paradas de sus rutas. Rutas y
+     * nombres de estación se cargan una sola vez; los horarios se recorren con
+     * un cursor por lotes, las paradas se reconstruyen en paralelo y solo los
+     * horarios cuyas paradas cambian se escriben con un bulk desordenado.
      */
-    public void actualizarParadasEnTodosLosHorarios() {
+    public Map<String, Object> actualizarParadasEnTodosLosHorarios() {
         log.info("Iniciando actualización de paradas en todos los horarios");
-        
-        List<Horario> horarios = horarioRepository.findAll();
-        int actualizados = 0;
-        int errores = 0;
-        
-        for (Horario horario : horarios) {
-            try {
-                if (actualizarParadasDeHorario(horario)) {
-                    actualizados++;
+        long inicio = System.currentTimeMillis();
+
+        Map<String, Ruta> rutas = rutaRepository.findAll().stream()
+                .filter(r -> r.getId() != null)
+                .collect(Collectors.toMap(Ruta::getId, r -> r, (a, b) -> a));
+        Map<String, String> nombresEstacion = estacionRepository.findAll().stream()
+                .filter(e -> e.getId() != null && e.getNombre() != null)
+                .collect(Collectors.toMap(Estacion::getId, Estacion::getNombre, (a, b) -> a));
+
+        int[] contadores = new int[4]; // procesados, actualizados, sin cambios, errores
+
+        try (Stream<Horario> horarios = horarioRepository.streamAllBy()) {
+            Iterator<Horario> it = horarios.iterator();
+            List<Horario> lote = new ArrayList<>(TAMANO_LOTE);
+            while (it.hasNext()) {
+                lote.add(it.next());
+                if (lote.size() == TAMANO_LOTE) {
+                    procesarLote(lote, rutas, nombresEstacion, contadores);
+                    lote = new ArrayList<>(TAMANO_LOTE);
                 }
-            } catch (Exception e) {
-                log.error("Error actualizando paradas del horario {}: {}", 
-                        horario.getId(), e.getMessage(), e);
-                errores++;
+            }
+            if (!lote.isEmpty()) {
+                procesarLote(lote, rutas, nombresEstacion, contadores);
             }
         }
-        
-        log.info("Actualización completada. Horarios actualizados: {}, Errores: {}", 
-                actualizados, errores);
+
+        long duracionMs = System.currentTimeMillis() - inicio;
+        log.info("Actualización completada en {} ms. Horarios procesados: {}, actualizados: {}, sin cambios: {}, errores: {}",
+                duracionMs, contadores[0], contadores[1], contadores[2], contadores[3]);
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("horariosProcesados", contadores[0]);
+        resultado.put("horariosActualizados", contadores[1]);
+        resultado.put("horariosSinCambios", contadores[2]);
+        resultado.put("errores", contadores[3]);
+        resultado.put("duracionMs", duracionMs);
+        return resultado;
     }
 
     /**
@@ -63,6 +105,73 @@ public class HorarioParadaService {
             return false;
         }
 
+        Map<String, String> nombresEstacion = new HashMap<>();
+        estacionRepository.findAllById(estacionesDeRuta(ruta))
+                .forEach(e -> nombresEstacion.put(e.getId(), e.getNombre()));
+
+        List<Horario.ParadaHorario> paradasHorario = construirParadas(ruta, nombresEstacion);
+
+        // Actualizar el horario
+        horario.setParadas(paradasHorario);
+        horario.setFechaActualizacion(LocalDateTime.now());
+        
+        Horario guardado = horarioRepository.save(horario);
+        log.info("Horario {} actualizado con {} paradas", guardado.getId(), paradasHorario.size());
+        
+        return true;
+    }
+
+    // paradas == null y error == null: sin ruta válida; paradas iguales a las actuales: sin cambios
+    private record Reconstruccion(Horario horario, List<Horario.ParadaHorario> paradas, RuntimeException error) {
+    }
+
+    private void procesarLote(List<Horario> lote, Map<String, Ruta> rutas, Map<String, String> nombresEstacion,
+                              int[] contadores) {
+        List<Reconstruccion> reconstruidos = lote.parallelStream()
+                .map(h -> {
+                    try {
+                        Ruta ruta = h.getRutaId() == null ? null : rutas.get(h.getRutaId());
+                        return new Reconstruccion(h, ruta == null ? null : construirParadas(ruta, nombresEstacion), null);
+                    } catch (RuntimeException e) {
+                        log.error("Error reconstruyendo paradas del horario {}: {}", h.getId(), e.getMessage());
+                        return new Reconstruccion(h, null, e);
+                    }
+                })
+                .toList();
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Horario.class);
+        LocalDateTime ahora = LocalDateTime.now();
+        int cambios = 0;
+
+        for (Reconstruccion r : reconstruidos) {
+            Horario h = r.horario();
+            contadores[0]++;
+
+            if (r.error() != null) {
+                contadores[3]++;
+            } else if (r.paradas() == null) {
+                log.warn("Horario {} sin ruta válida ({})", h.getId(), h.getRutaId());
+                contadores[3]++;
+            } else {
+                List<Horario.ParadaHorario> paradas = r.paradas();
+                if (mismasParadas(h.getParadas(), paradas)) {
+                    contadores[2]++;
+                } else {
+                    // fechaActualizacion mantiene al día a quien lee por marca de agua
+                    bulk.updateOne(new Query(Criteria.where("_id").is(h.getId())),
+                            new Update().set("paradas", paradas).set("fechaActualizacion", ahora));
+                    cambios++;
+                }
+            }
+        }
+
+        if (cambios > 0) {
+            bulk.execute();
+            contadores[1] += cambios;
+        }
+    }
+
+    private List<Horario.ParadaHorario> construirParadas(Ruta ruta, Map<String, String> nombresEstacion) {
         // Convertir ParadaRuta a ParadaHorario
         List<Horario.ParadaHorario> paradasHorario = new ArrayList<>();
         
@@ -70,7 +179,7 @@ public class HorarioParadaService {
         if (ruta.getEstacionOrigenId() != null && !ruta.getEstacionOrigenId().isBlank()) {
             paradasHorario.add(Horario.ParadaHorario.builder()
                     .estacionId(ruta.getEstacionOrigenId())
-                    .nombreEstacion(obtenerNombreEstacion(ruta.getEstacionOrigenId()))
+                    .nombreEstacion(obtenerNombreEstacion(ruta.getEstacionOrigenId(), null, nombresEstacion))
                     .orden(0)
                     .build());
         }
@@ -81,7 +190,8 @@ public class HorarioParadaService {
                 if (paradaRuta.getEstacionId() != null && !paradaRuta.getEstacionId().isBlank()) {
                     paradasHorario.add(Horario.ParadaHorario.builder()
                             .estacionId(paradaRuta.getEstacionId())
-                            .nombreEstacion(paradaRuta.getNombreEstacion())
+                            .nombreEstacion(obtenerNombreEstacion(paradaRuta.getEstacionId(),
+                                    paradaRuta.getNombreEstacion(), nombresEstacion))
                             .orden(paradaRuta.getOrden() != null ? paradaRuta.getOrden() : 1)
                             .build());
                 }
@@ -93,27 +203,53 @@ public class HorarioParadaService {
             int ultimoOrden = paradasHorario.size();
             paradasHorario.add(Horario.ParadaHorario.builder()
                     .estacionId(ruta.getEstacionDestinoId())
-                    .nombreEstacion(obtenerNombreEstacion(ruta.getEstacionDestinoId()))
+                    .nombreEstacion(obtenerNombreEstacion(ruta.getEstacionDestinoId(), null, nombresEstacion))
                     .orden(ultimoOrden)
                     .build());
         }
 
-        // Actualizar el horario
-        horario.setParadas(paradasHorario);
-        horario.setFechaActualizacion(java.time.LocalDateTime.now());
-        
-        Horario guardado = horarioRepository.save(horario);
-        log.info("Horario {} actualizado con {} paradas", guardado.getId(), paradasHorario.size());
-        
+        return paradasHorario;
+    }
+
+    private boolean mismasParadas(List<Horario.ParadaHorario> actuales, List<Horario.ParadaHorario> nuevas) {
+        if (actuales == null || actuales.size() != nuevas.size()) {
+            return false;
+        }
+        for (int i = 0; i < nuevas.size(); i++) {
+            Horario.ParadaHorario a = actuales.get(i);
+            Horario.ParadaHorario b = nuevas.get(i);
+            if (a == null
+                    || !Objects.equals(a.getEstacionId(), b.getEstacionId())
+                    || !Objects.equals(a.getNombreEstacion(), b.getNombreEstacion())
+                    || !Objects.equals(a.getOrden(), b.getOrden())) {
+                return false;
+            }
+        }
         return true;
     }
 
+    private Set<String> estacionesDeRuta(Ruta ruta) {
+        Set<String> ids = new HashSet<>();
+        if (ruta.getEstacionOrigenId() != null) ids.add(ruta.getEstacionOrigenId());
+        if (ruta.getEstacionDestinoId() != null) ids.add(ruta.getEstacionDestinoId());
+        if (ruta.getEstacionesIntermedias() != null) {
+            ruta.getEstacionesIntermedias().stream()
+                    .map(Ruta.ParadaRuta::getEstacionId)
+                    .filter(Objects::nonNull)
+                    .forEach(ids::add);
+        }
+        return ids;
+    }
+
     /**
-     * Obtiene el nombre de una estación (simulado - en un caso real buscaría en la BD)
+     * Nombre real de la estación; si no existe en la colección se usa el de la
+     * ruta o, en último caso, el propio ID.
      */
-    private String obtenerNombreEstacion(String estacionId) {
-        // Por ahora retornamos el ID como nombre
-        // En una implementación completa, buscaríamos en la base de datos de estaciones
-        return "Estacion_" + estacionId.substring(0, Math.min(8, estacionId.length()));
+    private String obtenerNombreEstacion(String estacionId, String nombreEnRuta, Map<String, String> nombresEstacion) {
+        String nombre = nombresEstacion.get(estacionId);
+        if (nombre != null) {
+            return nombre;
+        }
+        return nombreEnRuta != null && !nombreEnRuta.isBlank() ? nombreEnRuta : estacionId;
     }
 }
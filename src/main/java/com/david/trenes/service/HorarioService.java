@@ -8,9 +8,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.ArrayList;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -19,12 +21,27 @@ import java.util.ArrayList;
 public class HorarioService {
     
     private final HorarioRepository horarioRepository;
+    private final PropagacionRetrasosService propagacionRetrasosService;
+    private final PlanificadorViajesService planificadorViajesService;
     
     public List<Horario> findAll() {
         log.debug("Buscando todos los horarios");
         return horarioRepository.findAll();
     }
     
+    /**
+     * Recorre todos los horarios con un cursor. El llamante debe cerrar el stream.
+     */
+    public Stream<Horario> streamAll() {
+        log.debug("Recorriendo todos los horarios con cursor");
+        return horarioRepository.streamAllBy();
+    }
+
+    public Stream<Horario> streamModificadosDesde(LocalDateTime fecha, Collection<String> rutaIds) {
+        log.debug("Recorriendo horarios modificados desde {} o de {} rutas modificadas", fecha, rutaIds.size());
+        return horarioRepository.streamByFechaActualizacionAfterOrRutaIdIn(fecha, rutaIds);
+    }
+
     public Optional<Horario> findById(String id) {
         log.debug("Buscando horario por ID: {}", id);
         return horarioRepository.findById(id);
@@ -220,6 +237,7 @@ public class HorarioService {
         }
         
         horarioRepository.deleteById(id);
+        planificadorViajesService.eliminarHorario(id);
     }
     
     public boolean existsByCodigoServicio(String codigoServicio) {
@@ -360,17 +378,8 @@ public class HorarioService {
                             .resuelta(false)
                             .build();
 
-                    if (horario.getIncidencias() == null) {
-                        horario.setIncidencias(new ArrayList<>());
-                    }
-                    horario.getIncidencias().add(incidencia);
-
-                    if (horario.getEstado() == Horario.EstadoHorario.PROGRAMADO) {
-                        horario.setEstado(Horario.EstadoHorario.RETRASADO);
-                    }
-
-                    horario.setFechaActualizacion(LocalDateTime.now());
-                    return horarioRepository.save(horario);
+                    int minutos = minutosRetraso != null ? Math.max(0, minutosRetraso) : 0;
+                    return propagacionRetrasosService.registrarRetraso(horario, minutos, incidencia);
                 })
                 .orElseThrow(() -> new RuntimeException("Horario no encontrado con ID: " + id));
     }
@@ -0,0 +1,217 @@
+package com.david.trenes.service;
+
+import com.david.trenes.dto.TrenPosicionResponse;
+import com.david.trenes.util.GeoUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Rejilla uniforme con las posiciones de los trenes de un instante. Las
+ * coordenadas se proyectan a km (equirectangular con la latitud media de la
+ * flota) y cada celda guarda un rango contiguo del array ordenado por celda,
+ * de modo que una búsqueda solo revisa las celdas vecinas. Inmutable: se
+ * reconstruye en cada tick.
+ */
+public final class IndiceEspacialTrenes {
+
+    private static final double KM_POR_GRADO = 111.32;
+    // Holgura de la caja de búsqueda frente a la distancia Haversine (radio terrestre y arco de círculo máximo)
+    private static final double MARGEN_CAJA = 1.01;
+
+    private final double celdaKm;
+    private final double kmPorGradoLon;
+    private final TrenPosicionResponse[] trenes;
+    private final double[] x;
+    private final double[] y;
+    private final double[] lat;
+    private final double[] lon;
+    // clave de celda -> {desde, hasta} en los arrays anteriores
+    private final Map<Long, int[]> celdas;
+
+    private IndiceEspacialTrenes(double celdaKm, double kmPorGradoLon, TrenPosicionResponse[] trenes,
+                                 double[] x, double[] y, double[] lat, double[] lon, Map<Long, int[]> celdas) {
+        this.celdaKm = celdaKm;
+        this.kmPorGradoLon = kmPorGradoLon;
+        this.trenes = trenes;
+        this.x = x;
+        this.y = y;
+        this.lat = lat;
+        this.lon = lon;
+        this.celdas = celdas;
+    }
+
+    public static IndiceEspacialTrenes vacio(double celdaKm) {
+        return construir(List.of(), celdaKm);
+    }
+
+    /**
+     * Construye la rejilla con las posiciones que tienen latitud y longitud.
+     */
+    public static IndiceEspacialTrenes construir(List<TrenPosicionResponse> posiciones, double celdaKm) {
+        if (celdaKm <= 0) {
+            throw new IllegalArgumentException("El tamaño de celda debe ser positivo: " + celdaKm);
+        }
+
+        List<TrenPosicionResponse> validas = posiciones.stream()
+                .filter(p -> p.getLatitud() != null && p.getLongitud() != null)
+                .toList();
+
+        double latMedia = validas.stream().mapToDouble(TrenPosicionResponse::getLatitud).average().orElse(0.0);
+        double kmPorGradoLon = KM_POR_GRADO * Math.max(0.01, Math.cos(Math.toRadians(latMedia)));
+
+        int n = validas.size();
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        long[] claves = new long[n];
+        Integer[] orden = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = validas.get(i).getLongitud() * kmPorGradoLon;
+            ys[i] = validas.get(i).getLatitud() * KM_POR_GRADO;
+            claves[i] = clave(celda(xs[i], celdaKm), celda(ys[i], celdaKm));
+            orden[i] = i;
+        }
+        Arrays.sort(orden, Comparator.comparingLong(i -> claves[i]));
+
+        TrenPosicionResponse[] trenes = new TrenPosicionResponse[n];
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        Map<Long, int[]> celdas = new HashMap<>();
+        for (int k = 0; k < n; k++) {
+            int i = orden[k];
+            trenes[k] = validas.get(i);
+            x[k] = xs[i];
+            y[k] = ys[i];
+            lat[k] = trenes[k].getLatitud();
+            lon[k] = trenes[k].getLongitud();
+            int pos = k;
+            celdas.computeIfAbsent(claves[i], c -> new int[]{pos, pos})[1] = k + 1;
+        }
+
+        return new IndiceEspacialTrenes(celdaKm, kmPorGradoLon, trenes, x, y, lat, lon, celdas);
+    }
+
+    public int getNumeroTrenes() {
+        return trenes.length;
+    }
+
+    public int getNumeroCeldas() {
+        return celdas.size();
+    }
+
+    /**
+     * Trenes a menos de {@code radioKm} (Haversine) del punto. La rejilla
+     * selecciona los candidatos de las celdas que cubren el radio y la
+     * distancia exacta se calcula en lote sobre ellos. La caja se ensancha en
+     * longitud con el coseno de la latitud más alejada del ecuador que alcanza
+     * el radio, porque la proyección usa la latitud media de la flota.
+     */
+    public List<TrenPosicionResponse> cercanos(double latitud, double longitud, double radioKm) {
+        double px = longitud * kmPorGradoLon;
+        double py = latitud * KM_POR_GRADO;
+        double latExtrema = Math.min(89.0, Math.abs(latitud) + radioKm / KM_POR_GRADO);
+        double radioX = radioKm * MARGEN_CAJA * kmPorGradoLon
+                / (KM_POR_GRADO * Math.max(0.01, Math.cos(Math.toRadians(latExtrema))));
+        double radioY = radioKm * MARGEN_CAJA;
+        long cx0 = celda(px - radioX, celdaKm);
+        long cx1 = celda(px + radioX, celdaKm);
+        long cy0 = celda(py - radioY, celdaKm);
+        long cy1 = celda(py + radioY, celdaKm);
+
+        int[] candidatos = new int[Math.min(trenes.length, 16)];
+        int total = 0;
+        for (long cx = cx0; cx <= cx1; cx++) {
+            for (long cy = cy0; cy <= cy1; cy++) {
+                int[] rango = celdas.get(clave(cx, cy));
+                if (rango == null) {
+                    continue;
+                }
+                for (int k = rango[0]; k < rango[1]; k++) {
+                    if (total == candidatos.length) {
+                        candidatos = Arrays.copyOf(candidatos, Math.max(1, total * 2));
+                    }
+                    candidatos[total++] = k;
+                }
+            }
+        }
+
+        double[] lats = new double[total];
+        double[] lons = new double[total];
+        for (int c = 0; c < total; c++) {
+            lats[c] = lat[candidatos[c]];
+            lons[c] = lon[candidatos[c]];
+        }
+        double[] distancias = new double[total];
+        GeoUtils.calcularDistanciasKm(latitud, longitud, lats, lons, distancias);
+
+        List<TrenPosicionResponse> resultado = new ArrayList<>();
+        for (int c = 0; c < total; c++) {
+            if (distancias[c] <= radioKm) {
+                resultado.add(trenes[candidatos[c]]);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Recorre cada par de trenes a menos de {@code radioKm} una sola vez. Con
+     * radioKm no mayor que la celda basta revisar las 8 celdas vecinas, así
+     * que el coste es lineal en el número de trenes para densidades acotadas.
+     */
+    public void paresCercanos(double radioKm, BiConsumer<TrenPosicionResponse, TrenPosicionResponse> consumidor) {
+        if (radioKm > celdaKm) {
+            throw new IllegalArgumentException("El radio (" + radioKm + " km) supera el tamaño de celda (" + celdaKm + " km)");
+        }
+        double radio2 = radioKm * radioKm;
+
+        for (Map.Entry<Long, int[]> entrada : celdas.entrySet()) {
+            long cx = entrada.getKey() >> 32;
+            long cy = (int) (long) entrada.getKey();
+            int[] propia = entrada.getValue();
+
+            for (long dx = -1; dx <= 1; dx++) {
+                for (long dy = -1; dy <= 1; dy++) {
+                    int[] vecina = celdas.get(clave(cx + dx, cy + dy));
+                    // Cada par de celdas distintas se visita desde la de menor inicio
+                    if (vecina == null || vecina[0] < propia[0]) {
+                        continue;
+                    }
+                    boolean misma = vecina == propia;
+                    for (int i = propia[0]; i < propia[1]; i++) {
+                        for (int j = misma ? i + 1 : vecina[0]; j < vecina[1]; j++) {
+                            double ddx = x[i] - x[j];
+                            double ddy = y[i] - y[j];
+                            if (ddx * ddx + ddy * ddy <= radio2) {
+                                consumidor.accept(trenes[i], trenes[j]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Distancia en km entre dos posiciones con la misma proyección del índice.
+     */
+    public double distanciaKm(TrenPosicionResponse a, TrenPosicionResponse b) {
+        double dx = (a.getLongitud() - b.getLongitud()) * kmPorGradoLon;
+        double dy = (a.getLatitud() - b.getLatitud()) * KM_POR_GRADO;
+        return Math.hypot(dx, dy);
+    }
+
+    private static long celda(double km, double celdaKm) {
+        return (long) Math.floor(km / celdaKm);
+    }
+
+    private static long clave(long cx, long cy) {
+        return (cx << 32) | (cy & 0xffffffffL);
+    }
+}
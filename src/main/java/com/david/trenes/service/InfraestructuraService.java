@@ -16,6 +16,7 @@ import java.util.UUID;
 public class InfraestructuraService {
 
     private final ViaService viaService;
+    private final OcupacionViasService ocupacionViasService;
 
     public void crearInfraestructuraDeEjemplo() {
         log.info("Creando infraestructura de ejemplo (desvíos y vías muertas)");
@@ -290,8 +291,13 @@ public class InfraestructuraService {
         try {
             Via viaMuerta = viaService.findById(viaMuertaId).orElse(null);
             if (viaMuerta != null && viaMuerta.getTipoVia() == Via.TipoVia.VIA_MUERTA) {
-                // Aquí se podría implementar la lógica para asignar un tren a la vía muerta
-                // Por ahora solo registramos la operación
+                OcupacionViasService.Bloque bloque = ocupacionViasService.bloque(viaMuerta, 0.0);
+                if (!ocupacionViasService.adquirir(bloque, trenId)) {
+                    log.warn("Vía muerta {} ocupada por el tren {}; no se asigna el tren {}", viaMuertaId,
+                            ocupacionViasService.ocupante(bloque.getClave()).orElse("desconocido"), trenId);
+                    return false;
+                }
+                ocupacionViasService.liberarTren(trenId, bloque.getClave());
                 log.info("Tren {} asignado a vía muerta: {}", trenId, viaMuertaId);
                 return true;
             }
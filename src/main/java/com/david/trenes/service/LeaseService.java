@@ -0,0 +1,86 @@
+package com.david.trenes.service;
+
+import com.david.trenes.model.Lease;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Leases en Mongo para que las tareas en segundo plano se ejecuten en un solo
+ * nodo del clúster. Un lease caducado puede ser tomado por cualquier nodo; el
+ * propietario lo renueva en cada adquisición.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LeaseService {
+
+    private final MongoTemplate mongoTemplate;
+
+    private final String nodoId = generarNodoId();
+
+    public String getNodoId() {
+        return nodoId;
+    }
+
+    /**
+     * Intenta adquirir o renovar el lease indicado durante {@code duracion}.
+     *
+     * @return true si este nodo es el propietario tras la llamada
+     */
+    public boolean intentarAdquirir(String nombre, Duration duracion) {
+        LocalDateTime ahora = LocalDateTime.now();
+
+        Query query = new Query(Criteria.where("_id").is(nombre)
+                .orOperator(
+                        Criteria.where("expiraEn").lt(ahora),
+                        Criteria.where("propietario").is(nodoId)
+                ));
+
+        Update update = new Update()
+                .set("propietario", nodoId)
+                .set("expiraEn", ahora.plus(duracion))
+                .set("fechaActualizacion", ahora);
+
+        try {
+            Lease lease = mongoTemplate.findAndModify(
+                    query,
+                    update,
+                    FindAndModifyOptions.options().returnNew(true).upsert(true),
+                    Lease.class
+            );
+            return lease != null && nodoId.equals(lease.getPropietario());
+        } catch (DuplicateKeyException e) {
+            // Otro nodo tiene el lease vigente: el upsert choca con su documento
+            return false;
+        }
+    }
+
+    public void liberar(String nombre) {
+        mongoTemplate.remove(
+                new Query(Criteria.where("_id").is(nombre).and("propietario").is(nodoId)),
+                Lease.class
+        );
+    }
+
+    private static String generarNodoId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "desconocido";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,306 @@
+package com.david.trenes.service;
+
+import com.david.trenes.dto.TrenPosicionResponse;
+import com.david.trenes.model.OcupacionVia;
+import com.david.trenes.model.Ruta;
+import com.david.trenes.model.Tren;
+import com.david.trenes.model.Via;
+import com.mongodb.bulk.BulkWriteError;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tabla de ocupación de bloques de vía. Un bloque es la vía completa o, si la
+ * vía tiene segmentos, cada segmento. La colección "ocupaciones_via" es la
+ * fuente de verdad: un documento por bloque ocupado cuyo _id es la clave del
+ * bloque, de modo que adquirir es un upsert condicionado al mismo tren (CAS) y
+ * un segundo tren choca con la clave duplicada. Un mapa concurrente en memoria
+ * refleja la tabla para descartar bloques ocupados sin ir a Mongo.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OcupacionViasService {
+
+    private final MongoTemplate mongoTemplate;
+    private final RedFerroviariaService redFerroviariaService;
+
+    // clave de bloque -> trenId
+    private final ConcurrentHashMap<String, String> ocupaciones = new ConcurrentHashMap<>();
+
+    @Getter
+    @AllArgsConstructor
+    public static class Bloque {
+        private final String clave;
+        private final String viaId;
+        private final String segmentoId;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        ocupaciones.clear();
+        mongoTemplate.findAll(OcupacionVia.class)
+                .forEach(o -> ocupaciones.put(o.getId(), o.getTrenId()));
+        log.info("Ocupaciones de vía cargadas: {}", ocupaciones.size());
+    }
+
+    /**
+     * Bloque de la vía que contiene el kilómetro indicado: el segmento si la
+     * vía está segmentada, o la vía completa si no.
+     */
+    public Bloque bloque(Via via, Double kilometro) {
+        List<Via.SegmentoVia> segmentos = via.getSegmentos();
+        if (segmentos == null || segmentos.isEmpty()) {
+            return new Bloque(via.getId(), via.getId(), null);
+        }
+
+        double km = kilometro != null ? kilometro : 0.0;
+        Via.SegmentoVia elegido = segmentos.get(0);
+        for (Via.SegmentoVia s : segmentos) {
+            if (s.getKilometroInicio() != null && s.getKilometroInicio() <= km
+                    && (s.getKilometroFin() == null || km < s.getKilometroFin())) {
+                elegido = s;
+                break;
+            }
+        }
+        String segmentoId = elegido.getId() != null ? elegido.getId() : String.valueOf(segmentos.indexOf(elegido));
+        return new Bloque(via.getId() + "#" + segmentoId, via.getId(), segmentoId);
+    }
+
+    public Bloque bloque(String viaId, Double kilometro) {
+        return redFerroviariaService.obtenerVia(viaId)
+                .map(v -> bloque(v, kilometro))
+                .orElseGet(() -> new Bloque(viaId, viaId, null));
+    }
+
+    /**
+     * Primer bloque de la ruta (el de su primera vía), el que ocupa un tren al
+     * salir de la estación de origen. Vacío si la ruta no tiene vías.
+     */
+    public Optional<Bloque> bloqueSalida(Ruta ruta) {
+        if (ruta == null || ruta.getVias() == null) {
+            return Optional.empty();
+        }
+        return ruta.getVias().stream()
+                .filter(v -> v != null && v.getViaId() != null)
+                .min(Comparator.comparing(Ruta.ViaRuta::getOrden, Comparator.nullsLast(Integer::compareTo)))
+                .map(v -> bloque(v.getViaId(), 0.0));
+    }
+
+    public Optional<String> ocupante(String clave) {
+        return Optional.ofNullable(ocupaciones.get(clave));
+    }
+
+    /**
+     * Libre según la réplica en memoria (o ya ocupado por el mismo tren).
+     */
+    public boolean estaLibre(Bloque bloque, String trenId) {
+        String actual = ocupaciones.get(bloque.getClave());
+        return actual == null || actual.equals(trenId);
+    }
+
+    /**
+     * Adquiere el bloque para el tren. Idempotente si el tren ya lo tiene.
+     *
+     * @return false si lo ocupa otro tren
+     */
+    public boolean adquirir(Bloque bloque, String trenId) {
+        String actual = ocupaciones.get(bloque.getClave());
+        if (actual != null && !actual.equals(trenId)) {
+            // La réplica puede estar desfasada si otro nodo liberó el bloque
+            OcupacionVia enMongo = mongoTemplate.findById(bloque.getClave(), OcupacionVia.class);
+            if (enMongo != null) {
+                ocupaciones.put(bloque.getClave(), enMongo.getTrenId());
+                return trenId.equals(enMongo.getTrenId());
+            }
+            ocupaciones.remove(bloque.getClave(), actual);
+        }
+
+        Query query = new Query(Criteria.where("_id").is(bloque.getClave()).and("trenId").is(trenId));
+        Update update = new Update()
+                .set("viaId", bloque.getViaId())
+                .set("segmentoId", bloque.getSegmentoId())
+                .setOnInsert("fechaOcupacion", LocalDateTime.now());
+
+        try {
+            mongoTemplate.upsert(query, update, OcupacionVia.class);
+            ocupaciones.put(bloque.getClave(), trenId);
+            return true;
+        } catch (DuplicateKeyException e) {
+            OcupacionVia enMongo = mongoTemplate.findById(bloque.getClave(), OcupacionVia.class);
+            if (enMongo != null) {
+                ocupaciones.put(bloque.getClave(), enMongo.getTrenId());
+            }
+            log.debug("Bloque {} ocupado; el tren {} no puede adquirirlo", bloque.getClave(), trenId);
+            return false;
+        }
+    }
+
+    /**
+     * Adquiere el bloque de salida y suelta los demás que tuviera el tren
+     * (el de la estación o los de un servicio anterior).
+     *
+     * @return false si lo ocupa otro tren; entonces no se suelta nada
+     */
+    public boolean adquirirSalida(Bloque bloque, String trenId) {
+        if (!adquirir(bloque, trenId)) {
+            return false;
+        }
+        liberarTren(trenId, bloque.getClave());
+        return true;
+    }
+
+    /**
+     * Adquiere varios bloques con una única escritura en bloque desordenada.
+     * Los bloques que ya ocupa otro tren (en memoria o en Mongo) se descartan.
+     *
+     * @param reservas bloque -> trenId
+     * @return claves de los bloques adquiridos
+     */
+    public Set<String> adquirirEnBloque(Map<Bloque, String> reservas) {
+        Set<String> adquiridos = new HashSet<>();
+        List<Map.Entry<Bloque, String>> pendientes = new ArrayList<>();
+        LocalDateTime ahora = LocalDateTime.now();
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OcupacionVia.class);
+        for (Map.Entry<Bloque, String> r : reservas.entrySet()) {
+            String actual = ocupaciones.get(r.getKey().getClave());
+            if (r.getValue().equals(actual)) {
+                adquiridos.add(r.getKey().getClave());
+            } else if (actual == null) {
+                bulk.insert(OcupacionVia.builder()
+                        .id(r.getKey().getClave())
+                        .viaId(r.getKey().getViaId())
+                        .segmentoId(r.getKey().getSegmentoId())
+                        .trenId(r.getValue())
+                        .fechaOcupacion(ahora)
+                        .build());
+                pendientes.add(r);
+            }
+        }
+
+        if (pendientes.isEmpty()) {
+            return adquiridos;
+        }
+
+        Set<Integer> fallidos = new HashSet<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                fallidos.add(error.getIndex());
+            }
+        }
+
+        for (int i = 0; i < pendientes.size(); i++) {
+            Map.Entry<Bloque, String> r = pendientes.get(i);
+            if (!fallidos.contains(i)) {
+                ocupaciones.put(r.getKey().getClave(), r.getValue());
+                adquiridos.add(r.getKey().getClave());
+            }
+        }
+
+        if (!fallidos.isEmpty()) {
+            log.info("{} bloques ya estaban ocupados por otro nodo; se recarga la réplica", fallidos.size());
+            cargar();
+        }
+        return adquiridos;
+    }
+
+    public boolean liberar(String clave, String trenId) {
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(clave).and("trenId").is(trenId)), OcupacionVia.class);
+        return ocupaciones.remove(clave, trenId);
+    }
+
+    /**
+     * Libera todos los bloques del tren salvo {@code excepto} (puede ser null).
+     */
+    public long liberarTren(String trenId, String excepto) {
+        Criteria criteria = Criteria.where("trenId").is(trenId);
+        if (excepto != null) {
+            criteria = criteria.and("_id").ne(excepto);
+        }
+        long eliminados = mongoTemplate.remove(new Query(criteria), OcupacionVia.class).getDeletedCount();
+        ocupaciones.entrySet().removeIf(e -> e.getValue().equals(trenId) && !e.getKey().equals(excepto));
+        return eliminados;
+    }
+
+    /**
+     * Libera todos los bloques de varios trenes con un único borrado.
+     */
+    public long liberarTrenes(Collection<String> trenIds) {
+        if (trenIds.isEmpty()) {
+            return 0;
+        }
+        Set<String> ids = new HashSet<>(trenIds);
+        long eliminados = mongoTemplate.remove(new Query(Criteria.where("trenId").in(ids)), OcupacionVia.class)
+                .getDeletedCount();
+        ocupaciones.entrySet().removeIf(e -> ids.contains(e.getValue()));
+        return eliminados;
+    }
+
+    /**
+     * Mantiene la ocupación de los trenes en circulación: cada tren en marcha
+     * ocupa el bloque de su posición (soltando el anterior) y los que acaban
+     * de finalizar liberan lo que tuvieran. Solo escribe cuando un tren cambia
+     * de bloque.
+     */
+    public void sincronizarTrenesEnMarcha(List<TrenPosicionResponse> posiciones) {
+        int cambios = 0;
+        for (TrenPosicionResponse p : posiciones) {
+            if (p.getEstado() == Tren.EstadoTren.FINALIZADO) {
+                // Normalmente ya liberado al finalizar; solo se borra si la réplica aún le asigna algún bloque
+                if (ocupaciones.containsValue(p.getTrenId())) {
+                    cambios += liberarTren(p.getTrenId(), null) > 0 ? 1 : 0;
+                }
+                continue;
+            }
+            if (p.getEstado() != Tren.EstadoTren.EN_MARCHA || p.getViaId() == null) {
+                continue;
+            }
+
+            Bloque bloque = bloque(p.getViaId(), p.getKilometroEnVia());
+            if (p.getTrenId().equals(ocupaciones.get(bloque.getClave()))) {
+                continue;
+            }
+            if (adquirir(bloque, p.getTrenId())) {
+                liberarTren(p.getTrenId(), bloque.getClave());
+                cambios++;
+            }
+        }
+        if (cambios > 0) {
+            log.debug("Ocupaciones de vía actualizadas para {} trenes en circulación", cambios);
+        }
+    }
+
+    public Map<String, Object> obtenerEstado() {
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("bloquesOcupados", ocupaciones.size());
+        estado.put("ocupaciones", new LinkedHashMap<>(ocupaciones));
+        return estado;
+    }
+}
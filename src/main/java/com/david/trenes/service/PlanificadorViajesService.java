@@ -0,0 +1,203 @@
+package com.david.trenes.service;
+
+import com.david.trenes.dto.ItinerarioResponse;
+import com.david.trenes.model.Horario;
+import com.david.trenes.repository.HorarioRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Planificador de viajes con transbordos sobre los horarios generados.
+ * Mantiene en memoria una {@link RedConexiones} con la ventana de horarios
+ * [ahora - diasAtras, ahora + diasAdelante] y la actualiza de forma
+ * incremental leyendo solo los horarios modificados desde la última marca.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PlanificadorViajesService {
+
+    // Solape de la marca de agua para no perder escrituras concurrentes con la consulta
+    private static final Duration SOLAPE_MARCA_AGUA = Duration.ofSeconds(5);
+
+    private static final Set<Horario.EstadoHorario> ESTADOS_NO_PLANIFICABLES =
+            Set.of(Horario.EstadoHorario.CANCELADO, Horario.EstadoHorario.SUSPENDIDO);
+
+    private static final Set<Horario.EstadoParada> PARADAS_SIN_SERVICIO =
+            Set.of(Horario.EstadoParada.OMITIDA, Horario.EstadoParada.CANCELADA);
+
+    private final HorarioRepository horarioRepository;
+
+    @Value("${app.planificador.dias-atras:1}")
+    private long diasAtras;
+
+    @Value("${app.planificador.dias-adelante:8}")
+    private long diasAdelante;
+
+    @Value("${app.planificador.transbordo-minutos:5}")
+    private long transbordoMinutos;
+
+    @Value("${app.planificador.max-tramos:5}")
+    private int maxTramos;
+
+    private volatile RedConexiones red;
+    private volatile LocalDateTime marcaAgua;
+
+    private final Set<String> horariosEliminados = ConcurrentHashMap.newKeySet();
+
+    public enum Criterio {
+        LLEGADA_TEMPRANA,
+        MENOS_TRANSBORDOS
+    }
+
+    public ItinerarioResponse planificar(String estacionOrigenId, String estacionDestinoId,
+                                         LocalDateTime salidaDesde, Criterio criterio) {
+        RedConexiones actual = red;
+        if (actual == null) {
+            reconstruir();
+            actual = red;
+        }
+
+        LocalDateTime desde = salidaDesde != null ? salidaDesde : LocalDateTime.now();
+        Duration transbordo = Duration.ofMinutes(transbordoMinutos);
+
+        return switch (criterio) {
+            case LLEGADA_TEMPRANA -> actual.llegadaMasTemprana(estacionOrigenId, estacionDestinoId, desde, transbordo);
+            case MENOS_TRANSBORDOS -> actual.menosTransbordos(estacionOrigenId, estacionDestinoId, desde,
+                    desde.plusDays(1), transbordo, maxTramos);
+        };
+    }
+
+    /**
+     * Marca un horario borrado para retirarlo en la próxima actualización
+     * (los borrados no aparecen en la consulta por fechaActualizacion).
+     */
+    public void eliminarHorario(String horarioId) {
+        if (horarioId != null) {
+            horariosEliminados.add(horarioId);
+        }
+    }
+
+    public Map<String, Object> obtenerEstado() {
+        RedConexiones actual = red;
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("conexiones", actual != null ? actual.getNumeroConexiones() : 0);
+        estado.put("estaciones", actual != null ? actual.getNumeroEstaciones() : 0);
+        estado.put("horarios", actual != null ? actual.getNumeroHorarios() : 0);
+        estado.put("marcaAgua", marcaAgua);
+        return estado;
+    }
+
+    @Scheduled(fixedDelayString = "${app.planificador.reconstruccion-ms:3600000}")
+    public synchronized void reconstruir() {
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime desde = ahora.minusDays(diasAtras);
+
+        List<Horario> horarios = horarioRepository.findByFechaSalidaBetween(desde, ahora.plusDays(diasAdelante));
+
+        List<RedConexiones.Conexion> conexiones = new ArrayList<>();
+        for (Horario h : horarios) {
+            anadirConexiones(h, conexiones);
+        }
+
+        red = RedConexiones.construir(conexiones);
+        marcaAgua = ahora.minus(SOLAPE_MARCA_AGUA);
+        horariosEliminados.clear();
+
+        log.info("Red de conexiones reconstruida: {} conexiones, {} estaciones, {} horarios",
+                red.getNumeroConexiones(), red.getNumeroEstaciones(), red.getNumeroHorarios());
+    }
+
+    @Scheduled(fixedDelayString = "${app.planificador.refresco-ms:30000}", initialDelayString = "${app.planificador.refresco-ms:30000}")
+    public synchronized void actualizarIncremental() {
+        if (red == null || marcaAgua == null) {
+            reconstruir();
+            return;
+        }
+
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime desde = ahora.minusDays(diasAtras);
+        LocalDateTime hasta = ahora.plusDays(diasAdelante);
+
+        List<Horario> modificados = horarioRepository.findByFechaActualizacionAfter(marcaAgua);
+
+        Set<String> retirados = new HashSet<>(horariosEliminados);
+        horariosEliminados.removeAll(retirados);
+
+        List<RedConexiones.Conexion> nuevas = new ArrayList<>();
+        for (Horario h : modificados) {
+            retirados.add(h.getId());
+            if (h.getFechaSalida() != null && !h.getFechaSalida().isBefore(desde) && !h.getFechaSalida().isAfter(hasta)) {
+                anadirConexiones(h, nuevas);
+            }
+        }
+
+        red = red.fusionar(retirados, nuevas, RedConexiones.segundos(desde));
+        marcaAgua = ahora.minus(SOLAPE_MARCA_AGUA);
+
+        if (!retirados.isEmpty()) {
+            log.debug("Red de conexiones actualizada: {} horarios modificados, {} conexiones nuevas, {} totales",
+                    retirados.size(), nuevas.size(), red.getNumeroConexiones());
+        }
+    }
+
+    // Una conexión por cada par de paradas consecutivas con servicio, a hora prevista (programada + retraso)
+    private void anadirConexiones(Horario h, List<RedConexiones.Conexion> destino) {
+        if (h.getId() == null || Boolean.FALSE.equals(h.getActivo()) || ESTADOS_NO_PLANIFICABLES.contains(h.getEstado())) {
+            return;
+        }
+
+        List<Horario.ParadaHorario> paradas = h.getParadas() == null ? List.of() : h.getParadas().stream()
+                .filter(p -> p != null && p.getEstacionId() != null && !PARADAS_SIN_SERVICIO.contains(p.getEstado()))
+                .toList();
+
+        if (paradas.size() < 2) {
+            if (h.getEstacionOrigenId() != null && h.getEstacionDestinoId() != null
+                    && h.getFechaSalida() != null && h.getFechaLlegada() != null) {
+                destino.add(new RedConexiones.Conexion(h.getEstacionOrigenId(), h.getEstacionDestinoId(),
+                        RedConexiones.segundos(h.getFechaSalida()), RedConexiones.segundos(h.getFechaLlegada()), h.getId()));
+            }
+            return;
+        }
+
+        for (int i = 0; i + 1 < paradas.size(); i++) {
+            Horario.ParadaHorario a = paradas.get(i);
+            Horario.ParadaHorario b = paradas.get(i + 1);
+
+            LocalDateTime salida = a.getHoraSalidaProgramada() != null ? a.getHoraSalidaProgramada()
+                    : (i == 0 ? h.getFechaSalida() : a.getHoraLlegadaProgramada());
+            LocalDateTime llegada = b.getHoraLlegadaProgramada() != null ? b.getHoraLlegadaProgramada()
+                    : (i + 2 == paradas.size() ? h.getFechaLlegada() : null);
+
+            if (salida == null || llegada == null) {
+                continue;
+            }
+
+            salida = salida.plusMinutes(retraso(a));
+            llegada = llegada.plusMinutes(retraso(b));
+            if (llegada.isBefore(salida)) {
+                continue;
+            }
+
+            destino.add(new RedConexiones.Conexion(a.getEstacionId(), b.getEstacionId(),
+                    RedConexiones.segundos(salida), RedConexiones.segundos(llegada), h.getId()));
+        }
+    }
+
+    private int retraso(Horario.ParadaHorario parada) {
+        return parada.getRetrasoMinutos() != null && parada.getRetrasoMinutos() > 0 ? parada.getRetrasoMinutos() : 0;
+    }
+}
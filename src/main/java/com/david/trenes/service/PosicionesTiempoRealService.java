@@ -0,0 +1,215 @@
+package com.david.trenes.service;
+
+import com.david.trenes.dto.TrenPosicionResponse;
+import com.david.trenes.model.Tren;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Stream SSE de posiciones y cambios de estado de los trenes en marcha.
+ * Un único productor calcula la flota una vez por tick y reparte los deltas
+ * entre todos los suscriptores, filtrando por ruta o por rectángulo.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PosicionesTiempoRealService {
+
+    // Cambio mínimo (en grados o km) para considerar que un tren se ha movido
+    private static final double UMBRAL_MOVIMIENTO = 1e-6;
+
+    private final TrenService trenService;
+
+    private final CopyOnWriteArrayList<Suscripcion> suscripciones = new CopyOnWriteArrayList<>();
+
+    // Último estado enviado por tren; solo lo reemplaza el hilo del scheduler
+    private volatile Map<String, TrenPosicionResponse> ultimoSnapshot = new HashMap<>();
+
+    @Value("${app.tiempo-real.timeout-ms:1800000}")
+    private Long timeoutMs;
+
+    public SseEmitter suscribir(String rutaId, Double latMin, Double latMax, Double lonMin, Double lonMax) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Suscripcion suscripcion = new Suscripcion(emitter, rutaId, latMin, latMax, lonMin, lonMax);
+
+        emitter.onCompletion(() -> suscripciones.remove(suscripcion));
+        emitter.onTimeout(() -> suscripciones.remove(suscripcion));
+        emitter.onError(e -> suscripciones.remove(suscripcion));
+
+        suscripciones.add(suscripcion);
+        log.debug("Nueva suscripción SSE (ruta={}, bbox=[{},{}]x[{},{}]). Total: {}",
+                rutaId, latMin, latMax, lonMin, lonMax, suscripciones.size());
+
+        // Estado inicial completo para que el cliente no espere al primer delta
+        enviar(suscripcion, "posiciones", filtrar(suscripcion, new ArrayList<>(ultimoSnapshot.values())));
+
+        return emitter;
+    }
+
+    public int getNumeroSuscriptores() {
+        return suscripciones.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.tiempo-real.intervalo-ms:2000}")
+    public void publicarTick() {
+        if (suscripciones.isEmpty()) {
+            ultimoSnapshot = new HashMap<>();
+            return;
+        }
+
+        try {
+            List<TrenPosicionResponse> posiciones = trenService.getPosicionesFlota(null, null);
+
+            Map<String, TrenPosicionResponse> actual = new HashMap<>();
+            for (TrenPosicionResponse p : posiciones) {
+                actual.put(p.getTrenId(), p);
+            }
+
+            // Trenes que estaban en marcha y ya no aparecen: consultar su estado real
+            List<String> desaparecidos = ultimoSnapshot.values().stream()
+                    .filter(p -> p.getEstado() == Tren.EstadoTren.EN_MARCHA)
+                    .map(TrenPosicionResponse::getTrenId)
+                    .filter(id -> !actual.containsKey(id))
+                    .toList();
+            Map<String, Tren.EstadoTren> estadosDesaparecidos = new HashMap<>();
+            if (!desaparecidos.isEmpty()) {
+                trenService.findAllById(desaparecidos)
+                        .forEach(t -> estadosDesaparecidos.put(t.getId(), t.getEstadoActual()));
+            }
+
+            List<TrenPosicionResponse> deltas = new ArrayList<>();
+            List<Map<String, Object>> transiciones = new ArrayList<>();
+            LocalDateTime ahora = LocalDateTime.now();
+
+            for (TrenPosicionResponse p : posiciones) {
+                TrenPosicionResponse anterior = ultimoSnapshot.get(p.getTrenId());
+                if (anterior == null || haCambiado(anterior, p)) {
+                    deltas.add(p);
+                }
+                if (anterior != null && anterior.getEstado() != p.getEstado()) {
+                    transiciones.add(transicion(p.getTrenId(), p.getRutaId(), anterior.getEstado(), p.getEstado(), ahora));
+                }
+            }
+            for (String trenId : desaparecidos) {
+                TrenPosicionResponse anterior = ultimoSnapshot.get(trenId);
+                transiciones.add(transicion(trenId, anterior.getRutaId(), anterior.getEstado(),
+                        estadosDesaparecidos.get(trenId), ahora));
+            }
+
+            Map<String, TrenPosicionResponse> snapshotAnterior = ultimoSnapshot;
+            ultimoSnapshot = actual;
+
+            if (deltas.isEmpty() && transiciones.isEmpty()) {
+                return;
+            }
+
+            for (Suscripcion s : suscripciones) {
+                List<TrenPosicionResponse> misDeltas = filtrar(s, deltas);
+                if (!misDeltas.isEmpty()) {
+                    enviar(s, "posiciones", misDeltas);
+                }
+                List<Map<String, Object>> misTransiciones = transiciones.stream()
+                        .filter(t -> s.aceptaRuta((String) t.get("rutaId")))
+                        .filter(t -> {
+                            TrenPosicionResponse ref = actual.getOrDefault((String) t.get("trenId"),
+                                    snapshotAnterior.get((String) t.get("trenId")));
+                            return ref == null || s.aceptaPosicion(ref);
+                        })
+                        .toList();
+                if (!misTransiciones.isEmpty()) {
+                    enviar(s, "estado", misTransiciones);
+                }
+            }
+
+            log.debug("Tick tiempo real: {} deltas, {} transiciones, {} suscriptores",
+                    deltas.size(), transiciones.size(), suscripciones.size());
+
+        } catch (Exception e) {
+            log.error("Error en el tick de posiciones en tiempo real", e);
+        }
+    }
+
+    private boolean haCambiado(TrenPosicionResponse a, TrenPosicionResponse b) {
+        return a.getEstado() != b.getEstado()
+                || !Objects.equals(a.getViaId(), b.getViaId())
+                || diferente(a.getLatitud(), b.getLatitud())
+                || diferente(a.getLongitud(), b.getLongitud())
+                || diferente(a.getKilometroEnVia(), b.getKilometroEnVia());
+    }
+
+    private boolean diferente(Double a, Double b) {
+        if (a == null || b == null) return a != b;
+        return Math.abs(a - b) > UMBRAL_MOVIMIENTO;
+    }
+
+    private Map<String, Object> transicion(String trenId, String rutaId,
+                                           Tren.EstadoTren anterior, Tren.EstadoTren nuevo, LocalDateTime ahora) {
+        Map<String, Object> t = new LinkedHashMap<>();
+        t.put("trenId", trenId);
+        t.put("rutaId", rutaId);
+        t.put("estadoAnterior", anterior);
+        t.put("estadoNuevo", nuevo);
+        t.put("timestamp", ahora);
+        return t;
+    }
+
+    private List<TrenPosicionResponse> filtrar(Suscripcion s, List<TrenPosicionResponse> posiciones) {
+        return posiciones.stream()
+                .filter(p -> s.aceptaRuta(p.getRutaId()))
+                .filter(s::aceptaPosicion)
+                .toList();
+    }
+
+    private void enviar(Suscripcion s, String evento, Object datos) {
+        try {
+            s.emitter.send(SseEmitter.event().name(evento).data(datos));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Suscriptor SSE desconectado: {}", e.getMessage());
+            suscripciones.remove(s);
+            s.emitter.completeWithError(e);
+        }
+    }
+
+    private static final class Suscripcion {
+        private final SseEmitter emitter;
+        private final String rutaId;
+        private final Double latMin;
+        private final Double latMax;
+        private final Double lonMin;
+        private final Double lonMax;
+
+        private Suscripcion(SseEmitter emitter, String rutaId, Double latMin, Double latMax, Double lonMin, Double lonMax) {
+            this.emitter = emitter;
+            this.rutaId = rutaId;
+            this.latMin = latMin;
+            this.latMax = latMax;
+            this.lonMin = lonMin;
+            this.lonMax = lonMax;
+        }
+
+        private boolean aceptaRuta(String otraRutaId) {
+            return rutaId == null || rutaId.isBlank() || rutaId.equals(otraRutaId);
+        }
+
+        private boolean aceptaPosicion(TrenPosicionResponse p) {
+            if (latMin == null || latMax == null || lonMin == null || lonMax == null) return true;
+            if (p.getLatitud() == null || p.getLongitud() == null) return false;
+            return p.getLatitud() >= latMin && p.getLatitud() <= latMax
+                    && p.getLongitud() >= lonMin && p.getLongitud() <= lonMax;
+        }
+    }
+}
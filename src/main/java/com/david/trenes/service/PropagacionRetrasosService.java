@@ -0,0 +1,202 @@
+package com.david.trenes.service;
+
+import com.david.trenes.model.Horario;
+import com.david.trenes.repository.HorarioRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Propaga un retraso a las paradas pendientes del horario y a los siguientes
+ * servicios del mismo tren. Los horarios programados no se tocan: el retraso
+ * previsto de cada parada se guarda en {@code retrasoMinutos} (hora prevista =
+ * hora programada + retraso). En cada parada intermedia el tren recupera la
+ * holgura de su tiempo de parada por encima del mínimo, y entre servicios se
+ * respeta el margen de {@link GestionHorariosService#MARGEN_ENTRE_SERVICIOS}.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PropagacionRetrasosService {
+
+    // Tiempo mínimo de parada al que se puede recortar una parada intermedia
+    private static final int TIEMPO_PARADA_MINIMO_MINUTOS = 1;
+
+    private static final Set<Horario.EstadoParada> PARADAS_CERRADAS =
+            Set.of(Horario.EstadoParada.REALIZADA, Horario.EstadoParada.OMITIDA, Horario.EstadoParada.CANCELADA);
+
+    private final HorarioRepository horarioRepository;
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Registra el retraso en el horario y lo propaga. {@code minutosRetraso} es
+     * el retraso estimado en la próxima parada pendiente (no se acumula con
+     * registros anteriores). Todos los cambios se escriben en un único bulk.
+     */
+    public Horario registrarRetraso(Horario horario, int minutosRetraso, Horario.IncidenciaHorario incidencia) {
+        LocalDateTime ahora = LocalDateTime.now();
+        Map<String, Update> cambios = new LinkedHashMap<>();
+
+        // Horario origen: incidencia, estado y paradas pendientes
+        Update updateOrigen = new Update()
+                .push("incidencias", incidencia)
+                .set("fechaActualizacion", ahora);
+        if (horario.getIncidencias() == null) {
+            horario.setIncidencias(new ArrayList<>());
+        }
+        horario.getIncidencias().add(incidencia);
+
+        if (horario.getEstado() == Horario.EstadoHorario.PROGRAMADO) {
+            horario.setEstado(Horario.EstadoHorario.RETRASADO);
+            updateOrigen.set("estado", Horario.EstadoHorario.RETRASADO);
+        }
+        horario.setFechaActualizacion(ahora);
+        cambios.put(horario.getId(), updateOrigen);
+
+        int retrasoFinal = propagarEnHorario(horario, primeraParadaPendiente(horario), minutosRetraso, updateOrigen);
+
+        // Siguientes servicios del tren, en orden de salida
+        int serviciosAfectados = 0;
+        if (horario.getTrenId() != null && horario.getFechaSalida() != null && horario.getFechaLlegada() != null) {
+            List<Horario> siguientes = horarioRepository.findByTrenIdAndActivoTrue(horario.getTrenId()).stream()
+                    .filter(h -> !h.getId().equals(horario.getId()))
+                    .filter(h -> h.getEstado() == Horario.EstadoHorario.PROGRAMADO
+                            || h.getEstado() == Horario.EstadoHorario.RETRASADO)
+                    .filter(h -> h.getFechaSalida() != null && h.getFechaLlegada() != null)
+                    .filter(h -> h.getFechaSalida().isAfter(horario.getFechaSalida()))
+                    .sorted(Comparator.comparing(Horario::getFechaSalida))
+                    .toList();
+
+            LocalDateTime llegadaPrevista = horario.getFechaLlegada().plusMinutes(retrasoFinal);
+
+            for (Horario siguiente : siguientes) {
+                LocalDateTime salidaMinima = llegadaPrevista.plus(GestionHorariosService.MARGEN_ENTRE_SERVICIOS);
+                int retrasoSalida = minutosHasta(siguiente.getFechaSalida(), salidaMinima);
+
+                // Si la salida prevista no cambia, el resto de la cadena tampoco
+                if (retrasoSalida == retrasoEnParada(siguiente, 0)) {
+                    break;
+                }
+
+                Update update = new Update();
+                int retrasoLlegada = propagarEnHorario(siguiente, 0, retrasoSalida, update);
+                actualizarEstadoPorRetraso(siguiente, retrasoSalida, update);
+                update.set("fechaActualizacion", ahora);
+                cambios.put(siguiente.getId(), update);
+                serviciosAfectados++;
+
+                llegadaPrevista = siguiente.getFechaLlegada().plusMinutes(retrasoLlegada);
+            }
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Horario.class);
+        cambios.forEach((id, update) -> bulk.updateOne(new Query(Criteria.where("_id").is(id)), update));
+        bulk.execute();
+
+        log.info("Retraso de {} min en horario {} propagado: llegada +{} min, {} servicios posteriores afectados",
+                minutosRetraso, horario.getId(), retrasoFinal, serviciosAfectados);
+
+        return horario;
+    }
+
+    /**
+     * Recalcula el retraso de las paradas desde {@code desde} y añade al update
+     * solo las que cambian. Devuelve el retraso previsto a la llegada a destino.
+     */
+    private int propagarEnHorario(Horario horario, int desde, int retrasoInicial, Update update) {
+        List<Horario.ParadaHorario> paradas = horario.getParadas();
+        if (paradas == null || paradas.isEmpty() || desde >= paradas.size()) {
+            return retrasoInicial;
+        }
+
+        int retraso = retrasoInicial;
+        int ultima = paradas.size() - 1;
+
+        for (int i = desde; i <= ultima; i++) {
+            Horario.ParadaHorario parada = paradas.get(i);
+            if (parada == null) {
+                continue;
+            }
+
+            String prefijo = "paradas." + i;
+            if (retrasoEnParada(horario, i) != retraso) {
+                parada.setRetrasoMinutos(retraso);
+                update.set(prefijo + ".retrasoMinutos", retraso);
+            }
+
+            Horario.EstadoParada estado = parada.getEstado();
+            if (estado == null || estado == Horario.EstadoParada.PENDIENTE || estado == Horario.EstadoParada.RETRASADA) {
+                Horario.EstadoParada nuevoEstado = retraso > 0 ? Horario.EstadoParada.RETRASADA : Horario.EstadoParada.PENDIENTE;
+                if (nuevoEstado != estado) {
+                    parada.setEstado(nuevoEstado);
+                    update.set(prefijo + ".estado", nuevoEstado);
+                }
+            }
+
+            // Holgura recuperable en paradas intermedias
+            if (i > 0 && i < ultima && parada.getTiempoParadaMinutos() != null) {
+                int holgura = Math.max(0, parada.getTiempoParadaMinutos() - TIEMPO_PARADA_MINIMO_MINUTOS);
+                retraso = Math.max(0, retraso - holgura);
+            }
+        }
+
+        return retraso;
+    }
+
+    private void actualizarEstadoPorRetraso(Horario horario, int retraso, Update update) {
+        if (retraso > 0 && horario.getEstado() == Horario.EstadoHorario.PROGRAMADO) {
+            horario.setEstado(Horario.EstadoHorario.RETRASADO);
+            update.set("estado", Horario.EstadoHorario.RETRASADO);
+        } else if (retraso == 0 && horario.getEstado() == Horario.EstadoHorario.RETRASADO && !tieneRetrasoPropio(horario)) {
+            horario.setEstado(Horario.EstadoHorario.PROGRAMADO);
+            update.set("estado", Horario.EstadoHorario.PROGRAMADO);
+        }
+    }
+
+    private boolean tieneRetrasoPropio(Horario horario) {
+        return horario.getIncidencias() != null && horario.getIncidencias().stream()
+                .anyMatch(i -> i.getTipo() == Horario.TipoIncidencia.RETRASO && !Boolean.TRUE.equals(i.getResuelta()));
+    }
+
+    private int primeraParadaPendiente(Horario horario) {
+        List<Horario.ParadaHorario> paradas = horario.getParadas();
+        if (paradas == null) {
+            return 0;
+        }
+        for (int i = 0; i < paradas.size(); i++) {
+            Horario.ParadaHorario p = paradas.get(i);
+            if (p != null && !PARADAS_CERRADAS.contains(p.getEstado())) {
+                return i;
+            }
+        }
+        return paradas.size();
+    }
+
+    private int retrasoEnParada(Horario horario, int indice) {
+        List<Horario.ParadaHorario> paradas = horario.getParadas();
+        if (paradas == null || indice >= paradas.size() || paradas.get(indice) == null) {
+            return 0;
+        }
+        Integer retraso = paradas.get(indice).getRetrasoMinutos();
+        return retraso != null ? retraso : 0;
+    }
+
+    private int minutosHasta(LocalDateTime desde, LocalDateTime hasta) {
+        long segundos = Duration.between(desde, hasta).getSeconds();
+        return segundos <= 0 ? 0 : (int) ((segundos + 59) / 60);
+    }
+}
@@ -0,0 +1,370 @@
+package com.david.trenes.service;
+
+import com.david.trenes.dto.ItinerarioResponse;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Conexiones elementales (tramo entre dos paradas consecutivas de un horario)
+ * ordenadas por hora de salida en arrays primitivos, para el Connection Scan
+ * Algorithm. Inmutable: cada actualización produce una red nueva fusionando
+ * la anterior con las conexiones de los horarios modificados.
+ */
+public final class RedConexiones {
+
+    private static final long SIN_LLEGADA = Long.MAX_VALUE;
+
+    private final String[] estacionIds;
+    private final Map<String, Integer> indiceEstacion;
+    private final String[] horarioIds;
+
+    // Conexión c: estSalida[c] -> estLlegada[c], de tSalida[c] a tLlegada[c] (segundos), del horario horario[c]
+    private final int[] estSalida;
+    private final int[] estLlegada;
+    private final long[] tSalida;
+    private final long[] tLlegada;
+    private final int[] horario;
+
+    private RedConexiones(String[] estacionIds, Map<String, Integer> indiceEstacion, String[] horarioIds,
+                          int[] estSalida, int[] estLlegada, long[] tSalida, long[] tLlegada, int[] horario) {
+        this.estacionIds = estacionIds;
+        this.indiceEstacion = indiceEstacion;
+        this.horarioIds = horarioIds;
+        this.estSalida = estSalida;
+        this.estLlegada = estLlegada;
+        this.tSalida = tSalida;
+        this.tLlegada = tLlegada;
+        this.horario = horario;
+    }
+
+    public static RedConexiones vacia() {
+        return new RedConexiones(new String[0], Map.of(), new String[0],
+                new int[0], new int[0], new long[0], new long[0], new int[0]);
+    }
+
+    public static RedConexiones construir(List<Conexion> conexiones) {
+        return vacia().fusionar(Set.of(), conexiones, Long.MIN_VALUE);
+    }
+
+    /**
+     * Devuelve una red nueva sin las conexiones de {@code horariosRetirados} ni
+     * las que salen antes de {@code podarAntesDe}, más {@code nuevas}. Solo se
+     * ordenan las conexiones nuevas; el resto se fusiona en un único recorrido.
+     */
+    public RedConexiones fusionar(Set<String> horariosRetirados, List<Conexion> nuevas, long podarAntesDe) {
+        List<Conexion> ordenadas = new ArrayList<>(nuevas);
+        ordenadas.sort(Comparator.comparingLong(Conexion::getSalida));
+
+        boolean[] retirado = new boolean[horarioIds.length];
+        for (int h = 0; h < horarioIds.length; h++) {
+            retirado[h] = horariosRetirados.contains(horarioIds[h]);
+        }
+
+        int capacidad = tSalida.length + ordenadas.size();
+        Constructor b = new Constructor(capacidad);
+
+        int i = 0;
+        int j = 0;
+        while (i < tSalida.length || j < ordenadas.size()) {
+            boolean tomarBase = j >= ordenadas.size()
+                    || (i < tSalida.length && tSalida[i] <= ordenadas.get(j).getSalida());
+            if (tomarBase) {
+                if (!retirado[horario[i]] && tSalida[i] >= podarAntesDe) {
+                    b.add(estacionIds[estSalida[i]], estacionIds[estLlegada[i]], tSalida[i], tLlegada[i], horarioIds[horario[i]]);
+                }
+                i++;
+            } else {
+                Conexion c = ordenadas.get(j);
+                if (c.getSalida() >= podarAntesDe) {
+                    b.add(c.getEstacionSalidaId(), c.getEstacionLlegadaId(), c.getSalida(), c.getLlegada(), c.getHorarioId());
+                }
+                j++;
+            }
+        }
+
+        return b.build();
+    }
+
+    public int getNumeroConexiones() {
+        return tSalida.length;
+    }
+
+    public int getNumeroEstaciones() {
+        return estacionIds.length;
+    }
+
+    public int getNumeroHorarios() {
+        return horarioIds.length;
+    }
+
+    /**
+     * Itinerario con la llegada más temprana saliendo de origen a partir de
+     * {@code desde}. Para hacer transbordo en una estación intermedia hay que
+     * llegar al menos {@code transbordo} antes de la salida.
+     */
+    public ItinerarioResponse llegadaMasTemprana(String origenId, String destinoId, LocalDateTime desde, Duration transbordo) {
+        Integer o = indiceEstacion.get(origenId);
+        Integer d = indiceEstacion.get(destinoId);
+        if (o == null || d == null || o.equals(d)) {
+            return null;
+        }
+
+        long t0 = segundos(desde);
+        long margen = transbordo.getSeconds();
+
+        long[] llegada = new long[estacionIds.length];
+        int[] conexionLlegada = new int[estacionIds.length];
+        int[] entradaHorario = new int[horarioIds.length];
+        Arrays.fill(llegada, SIN_LLEGADA);
+        Arrays.fill(conexionLlegada, -1);
+        Arrays.fill(entradaHorario, -1);
+        llegada[o] = t0;
+
+        for (int c = primeraConexionDesde(t0); c < tSalida.length; c++) {
+            if (tSalida[c] > llegada[d]) {
+                break;
+            }
+            int h = horario[c];
+            if (entradaHorario[h] == -1 && puedeSubir(llegada, estSalida[c], o, margen, tSalida[c])) {
+                entradaHorario[h] = c;
+            }
+            if (entradaHorario[h] != -1 && tLlegada[c] < llegada[estLlegada[c]]) {
+                llegada[estLlegada[c]] = tLlegada[c];
+                conexionLlegada[estLlegada[c]] = c;
+            }
+        }
+
+        if (conexionLlegada[d] == -1) {
+            return null;
+        }
+
+        List<int[]> tramos = new ArrayList<>();
+        int s = d;
+        while (s != o && tramos.size() <= estacionIds.length) {
+            int c = conexionLlegada[s];
+            int e = entradaHorario[horario[c]];
+            tramos.add(0, new int[]{e, c});
+            s = estSalida[e];
+        }
+
+        return itinerario(origenId, destinoId, tramos);
+    }
+
+    /**
+     * Itinerario con el menor número de tramos (y, a igualdad, la llegada más
+     * temprana) saliendo entre {@code desde} y {@code hasta}. Cada ronda k
+     * calcula las llegadas alcanzables con k tramos a partir de la ronda k-1.
+     */
+    public ItinerarioResponse menosTransbordos(String origenId, String destinoId, LocalDateTime desde, LocalDateTime hasta,
+                                               Duration transbordo, int maxTramos) {
+        Integer o = indiceEstacion.get(origenId);
+        Integer d = indiceEstacion.get(destinoId);
+        if (o == null || d == null || o.equals(d)) {
+            return null;
+        }
+
+        long t0 = segundos(desde);
+        long tFin = segundos(hasta);
+        long margen = transbordo.getSeconds();
+        int inicio = primeraConexionDesde(t0);
+
+        long[] anterior = new long[estacionIds.length];
+        Arrays.fill(anterior, SIN_LLEGADA);
+        anterior[o] = t0;
+
+        int[][] conexionLlegada = new int[maxTramos + 1][];
+        int[][] entradaHorario = new int[maxTramos + 1][];
+
+        for (int k = 1; k <= maxTramos; k++) {
+            long[] actual = anterior.clone();
+            int[] llegadaK = new int[estacionIds.length];
+            int[] entradaK = new int[horarioIds.length];
+            Arrays.fill(llegadaK, -1);
+            Arrays.fill(entradaK, -1);
+            boolean mejora = false;
+
+            for (int c = inicio; c < tSalida.length; c++) {
+                if (tSalida[c] > tFin || tSalida[c] > actual[d]) {
+                    break;
+                }
+                int h = horario[c];
+                if (entradaK[h] == -1 && puedeSubir(anterior, estSalida[c], o, margen, tSalida[c])) {
+                    entradaK[h] = c;
+                }
+                if (entradaK[h] != -1 && tLlegada[c] < actual[estLlegada[c]]) {
+                    actual[estLlegada[c]] = tLlegada[c];
+                    llegadaK[estLlegada[c]] = c;
+                    mejora = true;
+                }
+            }
+
+            conexionLlegada[k] = llegadaK;
+            entradaHorario[k] = entradaK;
+
+            if (llegadaK[d] != -1) {
+                return itinerario(origenId, destinoId, reconstruirPorRondas(conexionLlegada, entradaHorario, o, d, k));
+            }
+            if (!mejora) {
+                // Ninguna estación nueva alcanzable: más rondas no cambian nada
+                return null;
+            }
+            anterior = actual;
+        }
+
+        return null;
+    }
+
+    private List<int[]> reconstruirPorRondas(int[][] conexionLlegada, int[][] entradaHorario, int o, int d, int k) {
+        List<int[]> tramos = new ArrayList<>();
+        int s = d;
+        int r = k;
+        while (s != o && r >= 1) {
+            // La estación pudo alcanzarse en una ronda anterior y heredarse
+            while (r >= 1 && conexionLlegada[r][s] == -1) {
+                r--;
+            }
+            if (r < 1) {
+                break;
+            }
+            int c = conexionLlegada[r][s];
+            int e = entradaHorario[r][horario[c]];
+            tramos.add(0, new int[]{e, c});
+            s = estSalida[e];
+            r--;
+        }
+        return tramos;
+    }
+
+    private boolean puedeSubir(long[] llegada, int estacion, int origen, long margen, long salida) {
+        long t = llegada[estacion];
+        if (t == SIN_LLEGADA) {
+            return false;
+        }
+        return (estacion == origen ? t : t + margen) <= salida;
+    }
+
+    // Primera conexión con salida >= t (búsqueda binaria)
+    private int primeraConexionDesde(long t) {
+        int lo = 0;
+        int hi = tSalida.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tSalida[mid] < t) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private ItinerarioResponse itinerario(String origenId, String destinoId, List<int[]> tramos) {
+        List<ItinerarioResponse.Tramo> resultado = new ArrayList<>(tramos.size());
+        for (int[] t : tramos) {
+            resultado.add(ItinerarioResponse.Tramo.builder()
+                    .horarioId(horarioIds[horario[t[0]]])
+                    .estacionSalidaId(estacionIds[estSalida[t[0]]])
+                    .estacionLlegadaId(estacionIds[estLlegada[t[1]]])
+                    .salida(fecha(tSalida[t[0]]))
+                    .llegada(fecha(tLlegada[t[1]]))
+                    .build());
+        }
+
+        LocalDateTime salida = resultado.get(0).getSalida();
+        LocalDateTime llegada = resultado.get(resultado.size() - 1).getLlegada();
+
+        return ItinerarioResponse.builder()
+                .estacionOrigenId(origenId)
+                .estacionDestinoId(destinoId)
+                .salida(salida)
+                .llegada(llegada)
+                .duracionMinutos(Duration.between(salida, llegada).toMinutes())
+                .transbordos(resultado.size() - 1)
+                .tramos(resultado)
+                .build();
+    }
+
+    public static long segundos(LocalDateTime fecha) {
+        return fecha.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime fecha(long segundos) {
+        return LocalDateTime.ofEpochSecond(segundos, 0, ZoneOffset.UTC);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Conexion {
+        private final String estacionSalidaId;
+        private final String estacionLlegadaId;
+        private final long salida;
+        private final long llegada;
+        private final String horarioId;
+    }
+
+    // Acumula conexiones ya ordenadas asignando índices compactos a estaciones y horarios
+    private static final class Constructor {
+        private final Map<String, Integer> estaciones = new HashMap<>();
+        private final List<String> listaEstaciones = new ArrayList<>();
+        private final Map<String, Integer> horarios = new HashMap<>();
+        private final List<String> listaHorarios = new ArrayList<>();
+
+        private final int[] estSalida;
+        private final int[] estLlegada;
+        private final long[] tSalida;
+        private final long[] tLlegada;
+        private final int[] horario;
+        private int n;
+
+        private Constructor(int capacidad) {
+            estSalida = new int[capacidad];
+            estLlegada = new int[capacidad];
+            tSalida = new long[capacidad];
+            tLlegada = new long[capacidad];
+            horario = new int[capacidad];
+        }
+
+        private void add(String salidaId, String llegadaId, long salida, long llegada, String horarioId) {
+            estSalida[n] = indice(estaciones, listaEstaciones, salidaId);
+            estLlegada[n] = indice(estaciones, listaEstaciones, llegadaId);
+            tSalida[n] = salida;
+            tLlegada[n] = llegada;
+            horario[n] = indice(horarios, listaHorarios, horarioId);
+            n++;
+        }
+
+        private int indice(Map<String, Integer> indices, List<String> lista, String id) {
+            Integer i = indices.get(id);
+            if (i == null) {
+                i = lista.size();
+                indices.put(id, i);
+                lista.add(id);
+            }
+            return i;
+        }
+
+        private RedConexiones build() {
+            return new RedConexiones(
+                    listaEstaciones.toArray(new String[0]),
+                    estaciones,
+                    listaHorarios.toArray(new String[0]),
+                    Arrays.copyOf(estSalida, n),
+                    Arrays.copyOf(estLlegada, n),
+                    Arrays.copyOf(tSalida, n),
+                    Arrays.copyOf(tLlegada, n),
+                    Arrays.copyOf(horario, n)
+            );
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.david.trenes.service;
+
+import com.david.trenes.model.Via;
+import com.david.trenes.util.GeoUtils;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Grafo de la red ferroviaria construido a partir de las vías operativas.
+ * Las estaciones se indexan con enteros y la adyacencia se guarda en formato
+ * CSR (inicio[n+1] + arrays de aristas). Cada vía genera una arista en cada
+ * sentido. Inmutable: se reconstruye entera cuando cambia alguna vía.
+ */
+public final class RedFerroviaria {
+
+    // Velocidad asumida para vías sin velocidadMaxima
+    private static final int VELOCIDAD_POR_DEFECTO_KMH = 80;
+
+    public enum Criterio {
+        DISTANCIA,
+        TIEMPO
+    }
+
+    private final String[] estacionIds;
+    private final Map<String, Integer> indiceEstacion;
+    private final double[] latitud;
+    private final double[] longitud;
+
+    private final int[] inicio;
+    private final int[] destino;
+    private final double[] km;
+    private final double[] horas;
+    private final Via[] via;
+
+    private final double velocidadMaximaRed;
+    // La distancia en línea recta solo es heurística válida si ninguna vía es más corta que ella
+    private final boolean heuristicaConsistente;
+
+    private RedFerroviaria(String[] estacionIds, Map<String, Integer> indiceEstacion, double[] latitud, double[] longitud,
+                           int[] inicio, int[] destino, double[] km, double[] horas, Via[] via,
+                           double velocidadMaximaRed, boolean heuristicaConsistente) {
+        this.estacionIds = estacionIds;
+        this.indiceEstacion = indiceEstacion;
+        this.latitud = latitud;
+        this.longitud = longitud;
+        this.inicio = inicio;
+        this.destino = destino;
+        this.km = km;
+        this.horas = horas;
+        this.via = via;
+        this.velocidadMaximaRed = velocidadMaximaRed;
+        this.heuristicaConsistente = heuristicaConsistente;
+    }
+
+    /**
+     * Vías utilizables: con estaciones en ambos extremos, longitud positiva,
+     * activas y en estado operativo (o sin estado).
+     */
+    public static boolean esTransitable(Via v) {
+        return v.getEstacionOrigenId() != null
+                && v.getEstacionDestinoId() != null
+                && !v.getEstacionOrigenId().equals(v.getEstacionDestinoId())
+                && v.getLongitudKm() != null && v.getLongitudKm() > 0
+                && !Boolean.FALSE.equals(v.getActivo())
+                && (v.getEstado() == null || v.getEstado() == Via.EstadoVia.OPERATIVA);
+    }
+
+    public static RedFerroviaria construir(Collection<Via> vias) {
+        List<Via> transitables = vias.stream().filter(RedFerroviaria::esTransitable).toList();
+
+        Map<String, Integer> indice = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (Via v : transitables) {
+            indice.computeIfAbsent(v.getEstacionOrigenId(), k -> { ids.add(k); return ids.size() - 1; });
+            indice.computeIfAbsent(v.getEstacionDestinoId(), k -> { ids.add(k); return ids.size() - 1; });
+        }
+
+        int n = ids.size();
+        int m = transitables.size() * 2;
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        Arrays.fill(lat, Double.NaN);
+        Arrays.fill(lon, Double.NaN);
+
+        // Grados de salida -> offsets CSR
+        int[] inicio = new int[n + 1];
+        for (Via v : transitables) {
+            inicio[indice.get(v.getEstacionOrigenId()) + 1]++;
+            inicio[indice.get(v.getEstacionDestinoId()) + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            inicio[i + 1] += inicio[i];
+        }
+
+        int[] siguiente = Arrays.copyOf(inicio, n);
+        int[] destino = new int[m];
+        double[] km = new double[m];
+        double[] horas = new double[m];
+        Via[] via = new Via[m];
+        double velocidadMaxima = 0;
+
+        for (Via v : transitables) {
+            int a = indice.get(v.getEstacionOrigenId());
+            int b = indice.get(v.getEstacionDestinoId());
+            int velocidad = v.getVelocidadMaxima() != null && v.getVelocidadMaxima() > 0
+                    ? v.getVelocidadMaxima() : VELOCIDAD_POR_DEFECTO_KMH;
+            double longitudKm = v.getLongitudKm();
+            velocidadMaxima = Math.max(velocidadMaxima, velocidad);
+
+            int e = siguiente[a]++;
+            destino[e] = b;
+            km[e] = longitudKm;
+            horas[e] = longitudKm / velocidad;
+            via[e] = v;
+
+            e = siguiente[b]++;
+            destino[e] = a;
+            km[e] = longitudKm;
+            horas[e] = longitudKm / velocidad;
+            via[e] = v;
+
+            if (v.getCoordenadaInicio() != null && Double.isNaN(lat[a])) {
+                lat[a] = valor(v.getCoordenadaInicio().getLatitud());
+                lon[a] = valor(v.getCoordenadaInicio().getLongitud());
+            }
+            if (v.getCoordenadaFin() != null && Double.isNaN(lat[b])) {
+                lat[b] = valor(v.getCoordenadaFin().getLatitud());
+                lon[b] = valor(v.getCoordenadaFin().getLongitud());
+            }
+        }
+
+        boolean consistente = true;
+        for (int a = 0; a < n && consistente; a++) {
+            for (int e = inicio[a]; e < inicio[a + 1]; e++) {
+                int b = destino[e];
+                if (!Double.isNaN(lat[a]) && !Double.isNaN(lon[a]) && !Double.isNaN(lat[b]) && !Double.isNaN(lon[b])
+                        && km[e] < GeoUtils.calcularDistanciaKm(lat[a], lon[a], lat[b], lon[b])) {
+                    consistente = false;
+                    break;
+                }
+            }
+        }
+
+        return new RedFerroviaria(ids.toArray(new String[0]), indice, lat, lon,
+                inicio, destino, km, horas, via, velocidadMaxima, consistente);
+    }
+
+    public int getNumeroEstaciones() {
+        return estacionIds.length;
+    }
+
+    public int getNumeroAristas() {
+        return destino.length;
+    }
+
+    public boolean contieneEstacion(String estacionId) {
+        return indiceEstacion.containsKey(estacionId);
+    }
+
+    /**
+     * Camino más corto entre dos estaciones. Usa A* con la distancia en línea
+     * recta cuando es una heurística consistente para esta red; si no, Dijkstra.
+     *
+     * @return el camino, o null si no hay conexión
+     */
+    public Camino caminoMasCorto(String origenId, String destinoId, Criterio criterio) {
+        Integer o = indiceEstacion.get(origenId);
+        Integer d = indiceEstacion.get(destinoId);
+        if (o == null || d == null) {
+            return null;
+        }
+        if (o.equals(d)) {
+            return new Camino(List.of(origenId), List.of(), 0.0, 0.0);
+        }
+
+        double[] peso = criterio == Criterio.TIEMPO ? horas : km;
+        int n = estacionIds.length;
+        double[] coste = new double[n];
+        int[] aristaLlegada = new int[n];
+        boolean[] cerrado = new boolean[n];
+        Arrays.fill(coste, Double.POSITIVE_INFINITY);
+        Arrays.fill(aristaLlegada, -1);
+        coste[o] = 0;
+
+        double[] h = heuristicas(d, criterio);
+        PriorityQueue<double[]> abiertos = new PriorityQueue<>((x, y) -> Double.compare(x[0], y[0]));
+        abiertos.add(new double[]{h[o], o});
+
+        while (!abiertos.isEmpty()) {
+            int u = (int) abiertos.poll()[1];
+            if (cerrado[u]) {
+                continue;
+            }
+            if (u == d) {
+                break;
+            }
+            cerrado[u] = true;
+
+            for (int e = inicio[u]; e < inicio[u + 1]; e++) {
+                int v = destino[e];
+                double nuevo = coste[u] + peso[e];
+                if (!cerrado[v] && nuevo < coste[v]) {
+                    coste[v] = nuevo;
+                    aristaLlegada[v] = e;
+                    abiertos.add(new double[]{nuevo + h[v], v});
+                }
+            }
+        }
+
+        if (aristaLlegada[d] == -1) {
+            return null;
+        }
+
+        List<String> estaciones = new ArrayList<>();
+        List<Via> vias = new ArrayList<>();
+        double totalKm = 0;
+        double totalHoras = 0;
+        int s = d;
+        while (s != o) {
+            int e = aristaLlegada[s];
+            estaciones.add(0, estacionIds[s]);
+            vias.add(0, via[e]);
+            totalKm += km[e];
+            totalHoras += horas[e];
+            s = origenDeArista(e);
+        }
+        estaciones.add(0, origenId);
+
+        return new Camino(estaciones, vias, totalKm, totalHoras);
+    }
+
+    // Heurística de todas las estaciones hacia el destino en una sola pasada (0 si no es aplicable)
+    private double[] heuristicas(int d, Criterio criterio) {
+        double[] h = new double[estacionIds.length];
+        if (!heuristicaConsistente || Double.isNaN(latitud[d]) || Double.isNaN(longitud[d])) {
+            return h;
+        }
+        GeoUtils.calcularDistanciasKm(latitud[d], longitud[d], latitud, longitud, h);
+        double divisor = criterio == Criterio.TIEMPO ? velocidadMaximaRed : 1.0;
+        for (int i = 0; i < h.length; i++) {
+            // Las estaciones sin coordenadas dan NaN
+            h[i] = Double.isNaN(h[i]) ? 0.0 : h[i] / divisor;
+        }
+        return h;
+    }
+
+    // La arista e pertenece al nodo u tal que inicio[u] <= e < inicio[u+1]
+    private int origenDeArista(int e) {
+        int pos = Arrays.binarySearch(inicio, e);
+        if (pos >= 0) {
+            // Puede haber nodos sin aristas con el mismo offset: tomar el último
+            while (pos + 1 < inicio.length && inicio[pos + 1] == e) {
+                pos++;
+            }
+            return pos;
+        }
+        return -pos - 2;
+    }
+
+    private static double valor(Double d) {
+        return d != null ? d : Double.NaN;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Camino {
+        private final List<String> estaciones;
+        private final List<Via> vias;
+        private final double distanciaKm;
+        private final double tiempoHoras;
+    }
+}
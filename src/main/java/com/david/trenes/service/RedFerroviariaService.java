@@ -0,0 +1,266 @@
+package com.david.trenes.service;
+
+import com.david.trenes.model.Ruta;
+import com.david.trenes.model.Via;
+import com.david.trenes.repository.ViaRepository;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mantiene la {@link RedFerroviaria} a partir de la colección de vías. Tras la
+ * carga inicial, los cambios se aplican vía a vía sobre el mapa en memoria
+ * (desde ViaService o desde el change stream de "vias" si está habilitado) y el
+ * grafo CSR se recompone bajo demanda sin volver a leer la colección.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RedFerroviariaService {
+
+    private final ViaRepository viaRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.red.change-stream-habilitado:false}")
+    private boolean changeStreamHabilitado;
+
+    // recargar() publica un mapa nuevo completo: los lectores nunca ven uno a medio llenar
+    private volatile ConcurrentHashMap<String, Via> vias = new ConcurrentHashMap<>();
+
+    private volatile boolean cargada;
+    // Cada cambio de vías incrementa la versión; la red se recompone si la suya es anterior
+    private final AtomicLong version = new AtomicLong();
+    private volatile long versionRed = -1;
+    private volatile RedFerroviaria red;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursorCambios;
+
+    public Optional<RedFerroviaria.Camino> caminoMasCorto(String estacionOrigenId, String estacionDestinoId,
+                                                           RedFerroviaria.Criterio criterio) {
+        return Optional.ofNullable(obtenerRed().caminoMasCorto(estacionOrigenId, estacionDestinoId, criterio));
+    }
+
+    /**
+     * Genera la lista de vías de una ruta siguiendo el camino más corto entre
+     * sus estaciones de origen y destino, pasando por las intermedias en orden.
+     */
+    public List<Ruta.ViaRuta> generarViasRuta(Ruta ruta, RedFerroviaria.Criterio criterio) {
+        List<String> puntos = new ArrayList<>();
+        puntos.add(ruta.getEstacionOrigenId());
+        if (ruta.getEstacionesIntermedias() != null) {
+            ruta.getEstacionesIntermedias().stream()
+                    .sorted(Comparator.comparing(Ruta.ParadaRuta::getOrden,
+                            Comparator.nullsLast(Integer::compareTo)))
+                    .map(Ruta.ParadaRuta::getEstacionId)
+                    .forEach(puntos::add);
+        }
+        puntos.add(ruta.getEstacionDestinoId());
+
+        RedFerroviaria actual = obtenerRed();
+        List<Ruta.ViaRuta> resultado = new ArrayList<>();
+        double km = 0.0;
+
+        for (int i = 0; i + 1 < puntos.size(); i++) {
+            RedFerroviaria.Camino camino = actual.caminoMasCorto(puntos.get(i), puntos.get(i + 1), criterio);
+            if (camino == null) {
+                throw new IllegalStateException("No hay conexión por vía entre " + puntos.get(i) + " y " + puntos.get(i + 1));
+            }
+            for (int j = 0; j < camino.getVias().size(); j++) {
+                Via via = camino.getVias().get(j);
+                double longitud = via.getLongitudKm();
+                resultado.add(Ruta.ViaRuta.builder()
+                        .viaId(via.getId())
+                        .nombreVia(via.getNombre())
+                        .orden(resultado.size() + 1)
+                        .kilometroInicio(km)
+                        .kilometroFin(km + longitud)
+                        .distancia(longitud)
+                        .estacionOrigenId(camino.getEstaciones().get(j))
+                        .estacionDestinoId(camino.getEstaciones().get(j + 1))
+                        .build());
+                km += longitud;
+            }
+        }
+
+        return resultado;
+    }
+
+    /**
+     * Comprueba que las vías de la ruta existen, son transitables y forman una
+     * cadena continua desde la estación de origen hasta la de destino.
+     *
+     * @return lista de errores (vacía si la ruta es válida)
+     */
+    public List<String> validarViasRuta(Ruta ruta) {
+        obtenerRed();
+        List<String> errores = new ArrayList<>();
+
+        if (ruta.getVias() == null || ruta.getVias().isEmpty()) {
+            errores.add("La ruta no tiene vías asociadas");
+            return errores;
+        }
+
+        List<Ruta.ViaRuta> ordenadas = ruta.getVias().stream()
+                .sorted(Comparator.comparing(Ruta.ViaRuta::getOrden,
+                        Comparator.nullsLast(Integer::compareTo)))
+                .toList();
+
+        Map<String, Via> viasRed = vias;
+        String estacionActual = ruta.getEstacionOrigenId();
+        for (Ruta.ViaRuta vr : ordenadas) {
+            Via via = viasRed.get(vr.getViaId());
+            if (via == null) {
+                errores.add("Vía no encontrada con ID: " + vr.getViaId());
+                estacionActual = vr.getEstacionDestinoId();
+                continue;
+            }
+            if (!RedFerroviaria.esTransitable(via)) {
+                errores.add("Vía no transitable: " + via.getId() + " (" + via.getEstado() + ")");
+            }
+
+            if (estacionActual != null && estacionActual.equals(via.getEstacionOrigenId())) {
+                estacionActual = via.getEstacionDestinoId();
+            } else if (estacionActual != null && estacionActual.equals(via.getEstacionDestinoId())) {
+                estacionActual = via.getEstacionOrigenId();
+            } else {
+                errores.add("La vía " + via.getId() + " no parte de la estación " + estacionActual);
+                estacionActual = via.getEstacionDestinoId();
+            }
+        }
+
+        if (estacionActual == null || !estacionActual.equals(ruta.getEstacionDestinoId())) {
+            errores.add("La cadena de vías termina en " + estacionActual + " y no en el destino " + ruta.getEstacionDestinoId());
+        }
+
+        return errores;
+    }
+
+    public Optional<Via> obtenerVia(String viaId) {
+        if (!cargada) {
+            recargar();
+        }
+        return Optional.ofNullable(viaId != null ? vias.get(viaId) : null);
+    }
+
+    public void aplicarCambioVia(Via via) {
+        if (via == null || via.getId() == null || !cargada) {
+            return;
+        }
+        vias.put(via.getId(), via);
+        version.incrementAndGet();
+    }
+
+    public void eliminarVia(String viaId) {
+        if (viaId == null || !cargada) {
+            return;
+        }
+        vias.remove(viaId);
+        version.incrementAndGet();
+    }
+
+    public synchronized void recargar() {
+        ConcurrentHashMap<String, Via> nuevas = new ConcurrentHashMap<>();
+        viaRepository.findAll().forEach(v -> nuevas.put(v.getId(), v));
+        vias = nuevas;
+        cargada = true;
+        version.incrementAndGet();
+        log.info("Vías cargadas para la red ferroviaria: {}", nuevas.size());
+    }
+
+    public Map<String, Object> obtenerEstado() {
+        RedFerroviaria actual = obtenerRed();
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("vias", vias.size());
+        estado.put("estaciones", actual.getNumeroEstaciones());
+        estado.put("aristas", actual.getNumeroAristas());
+        estado.put("changeStream", cursorCambios != null);
+        return estado;
+    }
+
+    private RedFerroviaria obtenerRed() {
+        if (!cargada) {
+            recargar();
+        }
+        if (versionRed != version.get()) {
+            synchronized (this) {
+                // La versión se lee antes de copiar las vías: un cambio durante
+                // la construcción deja la red desfasada y se recompone en la siguiente
+                long v = version.get();
+                if (versionRed != v) {
+                    RedFerroviaria nueva = RedFerroviaria.construir(new ArrayList<>(vias.values()));
+                    red = nueva;
+                    versionRed = v;
+                    log.debug("Red ferroviaria recompuesta: {} estaciones, {} aristas",
+                            nueva.getNumeroEstaciones(), nueva.getNumeroAristas());
+                }
+            }
+        }
+        return red;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciarChangeStream() {
+        if (!changeStreamHabilitado) {
+            return;
+        }
+
+        Thread hilo = new Thread(this::escucharCambios, "red-ferroviaria-change-stream");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    // Requiere replica set; si el servidor no soporta change streams se queda con las notificaciones de ViaService
+    private void escucharCambios() {
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = mongoTemplate.getCollection("vias")
+                .watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .cursor()) {
+            cursorCambios = cursor;
+            log.info("Escuchando cambios de la colección vias");
+
+            while (cursor.hasNext()) {
+                ChangeStreamDocument<Document> cambio = cursor.next();
+                OperationType tipo = cambio.getOperationType();
+                if (tipo == OperationType.DELETE && cambio.getDocumentKey() != null) {
+                    BsonValue id = cambio.getDocumentKey().get("_id");
+                    eliminarVia(id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue());
+                } else if (cambio.getFullDocument() != null) {
+                    aplicarCambioVia(mongoTemplate.getConverter().read(Via.class, cambio.getFullDocument()));
+                } else if (tipo == OperationType.DROP || tipo == OperationType.INVALIDATE) {
+                    recargar();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Change stream de vías detenido: {}", e.getMessage());
+        } finally {
+            cursorCambios = null;
+        }
+    }
+
+    @PreDestroy
+    public void detenerChangeStream() {
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = cursorCambios;
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.david.trenes.service;
+
+import com.david.trenes.model.Ruta;
+import com.david.trenes.model.Via;
+import com.david.trenes.util.GeoUtils;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Geometría compilada de una ruta: vías ordenadas con su kilómetro acumulado
+ * y coordenadas en arrays primitivos. Inmutable, se construye una vez por
+ * versión de la ruta y se comparte entre hilos.
+ */
+public final class RutaGeometria {
+
+    private final String rutaId;
+    private final LocalDateTime version;
+    private final String estacionOrigenId;
+    private final String estacionDestinoId;
+    // Todas las vías referenciadas por la ruta, incluidas las descartadas al compilar
+    private final Set<String> viasReferenciadas;
+
+    private final String[] viaIds;
+    // kmAcumulado[i] = km de inicio de la vía i; kmAcumulado[n] = longitud total
+    private final double[] kmAcumulado;
+    private final double[] latInicio;
+    private final double[] lonInicio;
+    private final double[] altInicio;
+    private final double[] latFin;
+    private final double[] lonFin;
+    private final double[] altFin;
+
+    private RutaGeometria(Ruta ruta, List<Via> tramos, double[] longitudes) {
+        this.rutaId = ruta.getId();
+        this.version = ruta.getFechaActualizacion();
+        this.estacionOrigenId = ruta.getEstacionOrigenId();
+        this.estacionDestinoId = ruta.getEstacionDestinoId();
+        this.viasReferenciadas = ruta.getVias().stream()
+                .map(Ruta.ViaRuta::getViaId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toUnmodifiableSet());
+
+        int n = tramos.size();
+        this.viaIds = new String[n];
+        this.kmAcumulado = new double[n + 1];
+        this.latInicio = new double[n];
+        this.lonInicio = new double[n];
+        this.altInicio = new double[n];
+        this.latFin = new double[n];
+        this.lonFin = new double[n];
+        this.altFin = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            Via via = tramos.get(i);
+
+            viaIds[i] = via.getId();
+            kmAcumulado[i + 1] = kmAcumulado[i] + longitudes[i];
+
+            Via.Coordenada inicio = via.getCoordenadaInicio();
+            Via.Coordenada fin = via.getCoordenadaFin();
+
+            // Si falta un extremo se usa el otro (o 0 si faltan ambos), igual que el lerp original
+            double[] lat = extremos(inicio != null ? inicio.getLatitud() : null, fin != null ? fin.getLatitud() : null);
+            double[] lon = extremos(inicio != null ? inicio.getLongitud() : null, fin != null ? fin.getLongitud() : null);
+            double[] alt = extremos(inicio != null ? inicio.getAltitud() : null, fin != null ? fin.getAltitud() : null);
+
+            latInicio[i] = lat[0];
+            latFin[i] = lat[1];
+            lonInicio[i] = lon[0];
+            lonFin[i] = lon[1];
+            altInicio[i] = alt[0];
+            altFin[i] = alt[1];
+        }
+    }
+
+    /**
+     * Compila la geometría de una ruta a partir de sus vías ya cargadas.
+     * Las vías sin longitud declarada usan la distancia entre sus extremos; las
+     * que no tienen ninguna de las dos o no se encuentran se ignoran. Si ninguna
+     * es válida se conserva la última vía de la ruta como tramo degenerado de 0 km.
+     */
+    public static RutaGeometria compilar(Ruta ruta, Map<String, Via> viaMap) {
+        if (ruta.getVias() == null || ruta.getVias().isEmpty()) {
+            throw new IllegalStateException("La ruta no tiene vías asociadas");
+        }
+
+        List<Ruta.ViaRuta> viasRuta = ruta.getVias().stream()
+                .sorted(Comparator.comparing(Ruta.ViaRuta::getOrden, Comparator.nullsLast(Integer::compareTo)))
+                .toList();
+
+        List<Via> encontradas = new ArrayList<>(viasRuta.size());
+        for (Ruta.ViaRuta vr : viasRuta) {
+            Via via = viaMap.get(vr.getViaId());
+            if (via != null) {
+                encontradas.add(via);
+            }
+        }
+        double[] geometricas = longitudesGeometricas(encontradas);
+
+        List<Via> tramos = new ArrayList<>(encontradas.size());
+        double[] longitudes = new double[encontradas.size()];
+        for (int i = 0; i < encontradas.size(); i++) {
+            Via via = encontradas.get(i);
+            double longitud = via.getLongitudKm() != null && via.getLongitudKm() > 0
+                    ? via.getLongitudKm() : geometricas[i];
+            // NaN (extremos sin coordenadas) tampoco pasa el filtro
+            if (longitud > 0) {
+                longitudes[tramos.size()] = longitud;
+                tramos.add(via);
+            }
+        }
+
+        if (tramos.isEmpty()) {
+            String ultimaViaId = viasRuta.get(viasRuta.size() - 1).getViaId();
+            Via ultimaVia = viaMap.get(ultimaViaId);
+            if (ultimaVia == null) {
+                throw new RuntimeException("Vía no encontrada con ID: " + ultimaViaId);
+            }
+            return new RutaGeometria(ruta, List.of(ultimaVia), new double[]{0.0});
+        }
+
+        return new RutaGeometria(ruta, tramos, Arrays.copyOf(longitudes, tramos.size()));
+    }
+
+    /**
+     * Distancia entre los extremos de cada vía (NaN si le falta alguno),
+     * calculada en una pasada sobre la polilínea inicio0, fin0, inicio1, fin1...
+     * cuyos tramos pares son las vías.
+     */
+    private static double[] longitudesGeometricas(List<Via> vias) {
+        int n = vias.size();
+        if (n == 0) {
+            return new double[0];
+        }
+        double[] lats = new double[2 * n];
+        double[] lons = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            Via via = vias.get(i);
+            Via.Coordenada inicio = via.getCoordenadaInicio();
+            Via.Coordenada fin = via.getCoordenadaFin();
+            lats[2 * i] = coordenada(inicio != null ? inicio.getLatitud() : null);
+            lons[2 * i] = coordenada(inicio != null ? inicio.getLongitud() : null);
+            lats[2 * i + 1] = coordenada(fin != null ? fin.getLatitud() : null);
+            lons[2 * i + 1] = coordenada(fin != null ? fin.getLongitud() : null);
+        }
+
+        double[] tramos = new double[2 * n - 1];
+        GeoUtils.calcularLongitudesTramosKm(lats, lons, tramos);
+
+        double[] longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            longitudes[i] = tramos[2 * i];
+        }
+        return longitudes;
+    }
+
+    private static double coordenada(Double valor) {
+        return valor != null ? valor : Double.NaN;
+    }
+
+    /**
+     * Localiza el punto de la ruta situado a {@code km} del origen mediante
+     * búsqueda binaria sobre el kilómetro acumulado. Fuera de rango se fija
+     * al inicio o al final de la ruta.
+     */
+    public PosicionEnRuta localizar(double km) {
+        int n = viaIds.length;
+        int i;
+
+        if (km <= 0) {
+            i = 0;
+        } else if (km >= kmAcumulado[n]) {
+            i = n - 1;
+        } else {
+            // Primera vía cuyo final es >= km
+            int pos = Arrays.binarySearch(kmAcumulado, 1, n + 1, km);
+            i = (pos >= 0 ? pos : -pos - 1) - 1;
+        }
+
+        double longitud = kmAcumulado[i + 1] - kmAcumulado[i];
+        double kmEnVia = Math.min(longitud, Math.max(0.0, km - kmAcumulado[i]));
+        double t = longitud > 0 ? kmEnVia / longitud : 0.0;
+
+        return new PosicionEnRuta(
+                viaIds[i],
+                kmEnVia,
+                latInicio[i] + (latFin[i] - latInicio[i]) * t,
+                lonInicio[i] + (lonFin[i] - lonInicio[i]) * t,
+                altInicio[i] + (altFin[i] - altInicio[i]) * t
+        );
+    }
+
+    /**
+     * Posición al final de la última vía de la ruta.
+     */
+    public PosicionEnRuta fin() {
+        int i = viaIds.length - 1;
+        return new PosicionEnRuta(viaIds[i], kmAcumulado[i + 1] - kmAcumulado[i], latFin[i], lonFin[i], altFin[i]);
+    }
+
+    public boolean contieneVia(String viaId) {
+        return viasReferenciadas.contains(viaId);
+    }
+
+    public double getLongitudTotalKm() {
+        return kmAcumulado[viaIds.length];
+    }
+
+    public String getRutaId() {
+        return rutaId;
+    }
+
+    public LocalDateTime getVersion() {
+        return version;
+    }
+
+    public String getEstacionOrigenId() {
+        return estacionOrigenId;
+    }
+
+    public String getEstacionDestinoId() {
+        return estacionDestinoId;
+    }
+
+    private static double[] extremos(Double a, Double b) {
+        if (a == null && b == null) return new double[]{0.0, 0.0};
+        if (a == null) return new double[]{b, b};
+        if (b == null) return new double[]{a, a};
+        return new double[]{a, b};
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class PosicionEnRuta {
+        private final String viaId;
+        private final double kmEnVia;
+        private final double latitud;
+        private final double longitud;
+        private final double altitud;
+    }
+}
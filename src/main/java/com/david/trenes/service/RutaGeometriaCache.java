@@ -0,0 +1,113 @@
+package com.david.trenes.service;
+
+import com.david.trenes.model.Ruta;
+import com.david.trenes.model.Via;
+import com.david.trenes.repository.ViaRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Caché de {@link RutaGeometria} por ruta. Una entrada es válida mientras
+ * coincida la fechaActualizacion de la ruta; RutaService y ViaService la
+ * invalidan explícitamente al modificar rutas o vías.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RutaGeometriaCache {
+
+    private final ViaRepository viaRepository;
+
+    private final ConcurrentHashMap<String, RutaGeometria> geometrias = new ConcurrentHashMap<>();
+
+    public RutaGeometria obtener(Ruta ruta) {
+        RutaGeometria cacheada = geometrias.get(ruta.getId());
+        if (esVigente(cacheada, ruta)) {
+            return cacheada;
+        }
+
+        List<String> viaIds = ruta.getVias() == null ? List.of() : ruta.getVias().stream()
+                .map(Ruta.ViaRuta::getViaId)
+                .toList();
+        Map<String, Via> viaMap = viaRepository.findAllById(viaIds).stream()
+                .collect(Collectors.toMap(Via::getId, Function.identity()));
+
+        return compilarYGuardar(ruta, viaMap);
+    }
+
+    /**
+     * Obtiene la geometría de varias rutas cargando las vías que falten con un
+     * único findAllById.
+     */
+    public Map<String, RutaGeometria> obtenerTodas(Collection<Ruta> rutas) {
+        Map<String, RutaGeometria> resultado = new HashMap<>();
+        Set<String> viaIdsPendientes = new LinkedHashSet<>();
+
+        for (Ruta ruta : rutas) {
+            RutaGeometria cacheada = geometrias.get(ruta.getId());
+            if (esVigente(cacheada, ruta)) {
+                resultado.put(ruta.getId(), cacheada);
+            } else if (ruta.getVias() != null) {
+                ruta.getVias().forEach(vr -> viaIdsPendientes.add(vr.getViaId()));
+            }
+        }
+
+        if (resultado.size() == rutas.size()) {
+            return resultado;
+        }
+
+        Map<String, Via> viaMap = viaIdsPendientes.isEmpty() ? Map.of() : viaRepository.findAllById(viaIdsPendientes).stream()
+                .collect(Collectors.toMap(Via::getId, Function.identity()));
+
+        for (Ruta ruta : rutas) {
+            if (resultado.containsKey(ruta.getId())) continue;
+            try {
+                resultado.put(ruta.getId(), compilarYGuardar(ruta, viaMap));
+            } catch (RuntimeException e) {
+                log.warn("No se pudo compilar la geometría de la ruta {}: {}", ruta.getId(), e.getMessage());
+            }
+        }
+
+        return resultado;
+    }
+
+    public void invalidarRuta(String rutaId) {
+        if (rutaId != null && geometrias.remove(rutaId) != null) {
+            log.debug("Geometría invalidada para ruta {}", rutaId);
+        }
+    }
+
+    public void invalidarVia(String viaId) {
+        if (viaId == null) return;
+        geometrias.values().removeIf(g -> g.contieneVia(viaId));
+        log.debug("Geometrías invalidadas para rutas con vía {}", viaId);
+    }
+
+    public void invalidarTodo() {
+        geometrias.clear();
+        log.debug("Caché de geometrías de ruta vaciada");
+    }
+
+    private RutaGeometria compilarYGuardar(Ruta ruta, Map<String, Via> viaMap) {
+        RutaGeometria geometria = RutaGeometria.compilar(ruta, viaMap);
+        geometrias.put(ruta.getId(), geometria);
+        log.debug("Geometría compilada para ruta {} ({} km)", ruta.getId(), geometria.getLongitudTotalKm());
+        return geometria;
+    }
+
+    private boolean esVigente(RutaGeometria geometria, Ruta ruta) {
+        return geometria != null && Objects.equals(geometria.getVersion(), ruta.getFechaActualizacion());
+    }
+}
@@ -8,7 +8,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
@@ -18,6 +20,8 @@ import java.util.Optional;
 public class RutaService {
     
     private final RutaRepository rutaRepository;
+    private final RutaGeometriaCache rutaGeometriaCache;
+    private final RedFerroviariaService redFerroviariaService;
     
     public List<Ruta> findAll() {
         log.debug("Buscando todas las rutas");
@@ -147,7 +151,9 @@ public class RutaService {
         }
         ruta.setFechaActualizacion(LocalDateTime.now());
         
-        return rutaRepository.save(ruta);
+        Ruta guardada = rutaRepository.save(ruta);
+        rutaGeometriaCache.invalidarRuta(guardada.getId());
+        return guardada;
     }
     
     public Ruta update(String id, Ruta rutaActualizada) {
@@ -158,7 +164,9 @@ public class RutaService {
                 rutaActualizada.setId(id);
                 rutaActualizada.setFechaCreacion(rutaExistente.getFechaCreacion());
                 rutaActualizada.setFechaActualizacion(LocalDateTime.now());
-                return rutaRepository.save(rutaActualizada);
+                Ruta guardada = rutaRepository.save(rutaActualizada);
+                rutaGeometriaCache.invalidarRuta(id);
+                return guardada;
             })
             .orElseThrow(() -> new RuntimeException("Ruta no encontrada con ID: " + id));
     }
@@ -171,6 +179,7 @@ public class RutaService {
         }
         
         rutaRepository.deleteById(id);
+        rutaGeometriaCache.invalidarRuta(id);
     }
     
     public boolean existsByCodigoRuta(String codigoRuta) {
@@ -273,4 +282,34 @@ public class RutaService {
             .filter(ruta -> ruta.getTipoRuta() == tipoRuta && ruta.getActivo() && ruta.getEstado() == Ruta.EstadoRuta.ACTIVA)
             .toList();
     }
+
+    public Ruta generarViasDesdeRed(String id, RedFerroviaria.Criterio criterio) {
+        log.info("Generando vías de la ruta {} por {}", id, criterio);
+
+        return rutaRepository.findById(id)
+            .map(ruta -> {
+                List<Ruta.ViaRuta> vias = redFerroviariaService.generarViasRuta(ruta, criterio);
+                ruta.setVias(vias);
+                ruta.setDistanciaTotalKm(vias.isEmpty() ? 0.0 : vias.get(vias.size() - 1).getKilometroFin());
+                ruta.setFechaActualizacion(LocalDateTime.now());
+                Ruta guardada = rutaRepository.save(ruta);
+                rutaGeometriaCache.invalidarRuta(id);
+                return guardada;
+            })
+            .orElseThrow(() -> new RuntimeException("Ruta no encontrada con ID: " + id));
+    }
+
+    public Map<String, Object> validarViasConRed(String id) {
+        log.debug("Validando vías de la ruta {} contra la red", id);
+
+        Ruta ruta = rutaRepository.findById(id)
+            .orElseThrow(() -> new RuntimeException("Ruta no encontrada con ID: " + id));
+        List<String> errores = redFerroviariaService.validarViasRuta(ruta);
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("rutaId", id);
+        resultado.put("valida", errores.isEmpty());
+        resultado.put("errores", errores);
+        return resultado;
+    }
 }
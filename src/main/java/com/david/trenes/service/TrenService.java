@@ -6,7 +6,6 @@ import com.david.trenes.model.Tren;
 import com.david.trenes.model.Via;
 import com.david.trenes.repository.RutaRepository;
 import com.david.trenes.repository.TrenRepository;
-import com.david.trenes.repository.ViaRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,10 +14,11 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,7 +29,8 @@ public class TrenService {
     
     private final TrenRepository trenRepository;
     private final RutaRepository rutaRepository;
-    private final ViaRepository viaRepository;
+    private final RutaGeometriaCache rutaGeometriaCache;
+    private final OcupacionViasService ocupacionViasService;
     
     @Value("${app.simulation.time-acceleration-factor:60}")
     private Double timeAccelerationFactor;
@@ -44,6 +45,11 @@ public class TrenService {
         return trenRepository.findById(id);
     }
     
+    public List<Tren> findAllById(Iterable<String> ids) {
+        log.debug("Buscando trenes por IDs");
+        return trenRepository.findAllById(ids);
+    }
+    
     public Optional<Tren> findByNumeroTren(String numeroTren) {
         log.debug("Buscando tren por número: {}", numeroTren);
         return trenRepository.findByNumeroTren(numeroTren);
@@ -176,6 +182,7 @@ public class TrenService {
         }
         
         trenRepository.deleteById(id);
+        ocupacionViasService.liberarTren(id, null);
     }
     
     public boolean existsByNumeroTren(String numeroTren) {
@@ -319,6 +326,13 @@ public class TrenService {
             velocidadCruceroKmh = Math.min(velocidadCruceroKmh, tren.getVelocidadMaxima().doubleValue());
         }
 
+        // El tren sale ocupando el primer bloque de la ruta y suelta el de la estación
+        OcupacionViasService.Bloque bloque = ocupacionViasService.bloqueSalida(ruta).orElseThrow();
+        if (!ocupacionViasService.adquirirSalida(bloque, trenId)) {
+            throw new IllegalStateException("La vía " + bloque.getViaId() + " está ocupada por el tren "
+                    + ocupacionViasService.ocupante(bloque.getClave()).orElse("desconocido"));
+        }
+
         tren.setRutaActualId(rutaId);
         tren.setEstadoActual(Tren.EstadoTren.EN_MARCHA);
         tren.setFechaInicioViaje(LocalDateTime.now());
@@ -343,27 +357,7 @@ public class TrenService {
 
         // Si ya finalizó, devolvemos lo persistido (NO depende del reloj)
         if (tren.getEstadoActual() == Tren.EstadoTren.FINALIZADO) {
-            Via.Coordenada u = tren.getUbicacionActual();
-
-            Double lat = (u != null) ? u.getLatitud() : null;
-            Double lon = (u != null) ? u.getLongitud() : null;
-            Double alt = (u != null) ? u.getAltitud() : null;
-
-            return TrenPosicionResponse.builder()
-                    .trenId(tren.getId())
-                    .rutaId(tren.getRutaActualId())
-                    .viaId(tren.getViaActualId())
-                    .estacionActualId(tren.getEstacionActualId())
-                    // como al finalizar estacionActualId == destino, sirve como destino también
-                    .estacionDestinoId(tren.getEstacionActualId())
-                    .kilometroEnVia(tren.getKilometroActual())
-                    .latitud(lat != null ? lat : 0.0)
-                    .longitud(lon != null ? lon : 0.0)
-                    .altitud(alt != null ? alt : 0.0)
-                    .velocidadKmh(0.0)
-                    .segundosDesdeInicio(0L)
-                    .distanciaTotalRecorridaKm(0.0)
-                    .build();
+            return posicionPersistida(tren);
         }
 
         if (tren.getRutaActualId() == null) {
@@ -376,146 +370,180 @@ public class TrenService {
         Ruta ruta = rutaRepository.findById(tren.getRutaActualId())
                 .orElseThrow(() -> new RuntimeException("Ruta no encontrada con ID: " + tren.getRutaActualId()));
 
-        List<Ruta.ViaRuta> viasRuta = ruta.getVias().stream()
-                .sorted(Comparator.comparing(Ruta.ViaRuta::getOrden, Comparator.nullsLast(Integer::compareTo)))
-                .toList();
+        // Geometría compilada y cacheada por versión de ruta (vías, km acumulado y coordenadas)
+        RutaGeometria geometria = rutaGeometriaCache.obtener(ruta);
 
-        // Cargar todas las vías de una vez para optimizar rendimiento
-        List<String> viaIds = viasRuta.stream()
-                .map(Ruta.ViaRuta::getViaId)
-                .toList();
-        List<Via> vias = viaRepository.findAllById(viaIds);
-        Map<String, Via> viaMap = vias.stream()
-                .collect(Collectors.toMap(Via::getId, via -> via));
+        TrenPosicionResponse posicion = calcularPosicion(tren, geometria, LocalDateTime.now());
 
-        long segundos = Math.max(0, Duration.between(tren.getFechaInicioViaje(), LocalDateTime.now()).getSeconds());
-        long segundosAcelerados = (long) (segundos * timeAccelerationFactor);
-        double horas = segundosAcelerados / 3600.0;
-        double distanciaRecorridaKm = tren.getVelocidadCruceroKmh() * horas;
-        
-        log.debug("Tiempo real: {}s, Tiempo acelerado (factor {}): {}s, Distancia recorrida: {} km", 
-                 segundos, timeAccelerationFactor, segundosAcelerados, distanciaRecorridaKm);
-
-        double longitudTotalRutaKm = 0.0;
-        for (Ruta.ViaRuta vr : viasRuta) {
-            Via viaTmp = viaMap.get(vr.getViaId());
-            if (viaTmp != null && viaTmp.getLongitudKm() != null && viaTmp.getLongitudKm() > 0) {
-                longitudTotalRutaKm += viaTmp.getLongitudKm();
-            }
+        if (tren.getEstadoActual() == Tren.EstadoTren.FINALIZADO) {
+            trenRepository.save(tren);
+            ocupacionViasService.liberarTren(tren.getId(), null);
         }
 
-        boolean haFinalizado = longitudTotalRutaKm > 0 && distanciaRecorridaKm >= longitudTotalRutaKm;
-
-        double acumulado = 0.0;
-        Ruta.ViaRuta viaRutaActual = null;
-        double kmEnVia = 0.0;
-
-        for (Ruta.ViaRuta vr : viasRuta) {
-            Via viaTmp = viaMap.get(vr.getViaId());
-            if (viaTmp == null) continue;
-
-            double longitudKmTmp = viaTmp.getLongitudKm() != null ? viaTmp.getLongitudKm() : 0.0;
-            if (longitudKmTmp <= 0) continue;
+        return posicion;
+    }
 
-            if (distanciaRecorridaKm <= acumulado + longitudKmTmp) {
-                viaRutaActual = vr;
-                kmEnVia = distanciaRecorridaKm - acumulado;
-                break;
-            }
-            acumulado += longitudKmTmp;
+    /**
+     * Posiciones de toda la flota en una sola llamada: trenes indicados por ID,
+     * los de una ruta, o todos los EN_MARCHA si no se filtra. Rutas y vías se
+     * cargan con un findAllById cada una (o desde la caché de geometrías) y las
+     * posiciones se calculan en paralelo. Los trenes que llegan a destino se
+     * persisten como FINALIZADO con un único saveAll y liberan sus bloques.
+     */
+    @Transactional
+    public List<TrenPosicionResponse> getPosicionesFlota(List<String> trenIds, String rutaId) {
+        List<Tren> trenes;
+        if (trenIds != null && !trenIds.isEmpty()) {
+            trenes = trenRepository.findAllById(trenIds);
+        } else if (rutaId != null && !rutaId.isBlank()) {
+            trenes = trenRepository.findByRutaActualId(rutaId).stream()
+                    .filter(t -> t.getEstadoActual() == Tren.EstadoTren.EN_MARCHA)
+                    .toList();
+        } else {
+            trenes = trenRepository.findByEstadoActual(Tren.EstadoTren.EN_MARCHA);
         }
 
-        if (viaRutaActual == null) {
-            Ruta.ViaRuta ultima = viasRuta.get(viasRuta.size() - 1);
-            final String ultimaViaId = ultima.getViaId();
+        List<Tren> enViaje = trenes.stream()
+                .filter(this::tieneViajeIniciado)
+                .toList();
 
-            Via ultimaVia = viaMap.get(ultimaViaId);
-            if (ultimaVia == null) {
-                throw new RuntimeException("Vía no encontrada con ID: " + ultimaViaId);
-            }
+        Set<String> rutaIds = enViaje.stream()
+                .map(Tren::getRutaActualId)
+                .collect(Collectors.toSet());
+        Map<String, RutaGeometria> geometrias = rutaIds.isEmpty()
+                ? Map.of()
+                : rutaGeometriaCache.obtenerTodas(rutaRepository.findAllById(rutaIds));
+
+        LocalDateTime ahora = LocalDateTime.now();
+
+        List<TrenPosicionResponse> posiciones = trenes.parallelStream()
+                .map(tren -> {
+                    if (tren.getEstadoActual() == Tren.EstadoTren.FINALIZADO) {
+                        return posicionPersistida(tren);
+                    }
+                    if (!tieneViajeIniciado(tren)) {
+                        return null;
+                    }
+                    RutaGeometria geometria = geometrias.get(tren.getRutaActualId());
+                    return geometria != null ? calcularPosicion(tren, geometria, ahora) : null;
+                })
+                .filter(Objects::nonNull)
+                .toList();
 
-            double longitudKmTmp = ultimaVia.getLongitudKm() != null ? ultimaVia.getLongitudKm() : 0.0;
-            viaRutaActual = ultima;
-            kmEnVia = Math.max(0.0, longitudKmTmp);
+        List<Tren> finalizados = enViaje.stream()
+                .filter(t -> t.getEstadoActual() == Tren.EstadoTren.FINALIZADO)
+                .toList();
+        if (!finalizados.isEmpty()) {
+            trenRepository.saveAll(finalizados);
+            ocupacionViasService.liberarTrenes(finalizados.stream().map(Tren::getId).toList());
         }
 
-        final String viaIdActual = viaRutaActual.getViaId();
+        log.debug("Posiciones de flota calculadas: {} trenes, {} rutas, {} finalizados",
+                posiciones.size(), geometrias.size(), finalizados.size());
 
-        Via via = viaMap.get(viaIdActual);
-        if (via == null) {
-            throw new RuntimeException("Vía no encontrada con ID: " + viaIdActual);
-        }
+        return posiciones;
+    }
 
-        Via.Coordenada inicio = via.getCoordenadaInicio();
-        Via.Coordenada fin = via.getCoordenadaFin();
+    private boolean tieneViajeIniciado(Tren tren) {
+        return tren.getEstadoActual() != Tren.EstadoTren.FINALIZADO
+                && tren.getRutaActualId() != null
+                && tren.getFechaInicioViaje() != null
+                && tren.getVelocidadCruceroKmh() != null;
+    }
 
-        double longitudKm = via.getLongitudKm() != null ? via.getLongitudKm() : 0.0;
-        double t = (longitudKm > 0) ? Math.min(1.0, Math.max(0.0, kmEnVia / longitudKm)) : 0.0;
+    private TrenPosicionResponse posicionPersistida(Tren tren) {
+        Via.Coordenada u = tren.getUbicacionActual();
 
-        double lat = lerp(inicio != null ? inicio.getLatitud() : null, fin != null ? fin.getLatitud() : null, t);
-        double lon = lerp(inicio != null ? inicio.getLongitud() : null, fin != null ? fin.getLongitud() : null, t);
-        double alt = lerp(inicio != null ? inicio.getAltitud() : null, fin != null ? fin.getAltitud() : null, t);
+        Double lat = (u != null) ? u.getLatitud() : null;
+        Double lon = (u != null) ? u.getLongitud() : null;
+        Double alt = (u != null) ? u.getAltitud() : null;
 
-        if (haFinalizado) {
-            log.info("Tren {} ha llegado al final de la ruta {} -> FINALIZADO", trenId, tren.getRutaActualId());
+        return TrenPosicionResponse.builder()
+                .trenId(tren.getId())
+                .rutaId(tren.getRutaActualId())
+                .viaId(tren.getViaActualId())
+                .estado(tren.getEstadoActual())
+                .estacionActualId(tren.getEstacionActualId())
+                // como al finalizar estacionActualId == destino, sirve como destino también
+                .estacionDestinoId(tren.getEstacionActualId())
+                .kilometroEnVia(tren.getKilometroActual())
+                .latitud(lat != null ? lat : 0.0)
+                .longitud(lon != null ? lon : 0.0)
+                .altitud(alt != null ? alt : 0.0)
+                .velocidadKmh(0.0)
+                .segundosDesdeInicio(0L)
+                .distanciaTotalRecorridaKm(0.0)
+                .build();
+    }
 
-            tren.setEstadoActual(Tren.EstadoTren.FINALIZADO);
-            tren.setEstacionActualId(ruta.getEstacionDestinoId());
+    /**
+     * Calcula la posición simulada del tren en su ruta. Si ha llegado al final,
+     * marca el tren como FINALIZADO en memoria; persistirlo es responsabilidad
+     * del llamante.
+     */
+    private TrenPosicionResponse calcularPosicion(Tren tren, RutaGeometria geometria, LocalDateTime ahora) {
+        long segundos = Math.max(0, Duration.between(tren.getFechaInicioViaje(), ahora).getSeconds());
+        long segundosAcelerados = (long) (segundos * timeAccelerationFactor);
+        double horas = segundosAcelerados / 3600.0;
+        double distanciaRecorridaKm = tren.getVelocidadCruceroKmh() * horas;
+        
+        log.debug("Tiempo real: {}s, Tiempo acelerado (factor {}): {}s, Distancia recorrida: {} km", 
+                 segundos, timeAccelerationFactor, segundosAcelerados, distanciaRecorridaKm);
 
-            tren.setViaActualId(via.getId());
-            tren.setKilometroActual(longitudKm);
+        double longitudTotalRutaKm = geometria.getLongitudTotalKm();
+        boolean haFinalizado = longitudTotalRutaKm > 0 && distanciaRecorridaKm >= longitudTotalRutaKm;
 
-            Via.Coordenada finReal = (fin != null)
-                    ? fin
-                    : Via.Coordenada.builder().latitud(lat).longitud(lon).altitud(alt).build();
+        if (haFinalizado) {
+            log.info("Tren {} ha llegado al final de la ruta {} -> FINALIZADO", tren.getId(), tren.getRutaActualId());
 
-            tren.setUbicacionActual(finReal);
-            tren.setFechaActualizacion(LocalDateTime.now());
+            // devolver clavado al final
+            RutaGeometria.PosicionEnRuta fin = geometria.fin();
 
-            trenRepository.save(tren);
+            tren.setEstadoActual(Tren.EstadoTren.FINALIZADO);
+            tren.setEstacionActualId(geometria.getEstacionDestinoId());
 
-            // devolver clavado al final
-            kmEnVia = longitudKm;
-            lat = finReal.getLatitud() != null ? finReal.getLatitud() : lat;
-            lon = finReal.getLongitud() != null ? finReal.getLongitud() : lon;
-            alt = finReal.getAltitud() != null ? finReal.getAltitud() : alt;
+            tren.setViaActualId(fin.getViaId());
+            tren.setKilometroActual(fin.getKmEnVia());
+            tren.setUbicacionActual(Via.Coordenada.builder()
+                    .latitud(fin.getLatitud())
+                    .longitud(fin.getLongitud())
+                    .altitud(fin.getAltitud())
+                    .build());
+            tren.setFechaActualizacion(ahora);
 
             return TrenPosicionResponse.builder()
                     .trenId(tren.getId())
                     .rutaId(tren.getRutaActualId())
-                    .viaId(via.getId())
+                    .viaId(fin.getViaId())
+                    .estado(Tren.EstadoTren.FINALIZADO)
                     .estacionActualId(tren.getEstacionActualId())
-                    .estacionDestinoId(ruta.getEstacionDestinoId())
-                    .kilometroEnVia(kmEnVia)
-                    .latitud(lat)
-                    .longitud(lon)
-                    .altitud(alt)
+                    .estacionDestinoId(geometria.getEstacionDestinoId())
+                    .kilometroEnVia(fin.getKmEnVia())
+                    .latitud(fin.getLatitud())
+                    .longitud(fin.getLongitud())
+                    .altitud(fin.getAltitud())
                     .velocidadKmh(0.0)
                     .segundosDesdeInicio(segundos)
                     .distanciaTotalRecorridaKm(distanciaRecorridaKm)
                     .build();
         }
 
+        RutaGeometria.PosicionEnRuta posicion = geometria.localizar(distanciaRecorridaKm);
+
         return TrenPosicionResponse.builder()
                 .trenId(tren.getId())
                 .rutaId(tren.getRutaActualId())
-                .viaId(via.getId())
+                .viaId(posicion.getViaId())
+                .estado(tren.getEstadoActual())
                 .estacionActualId(tren.getEstacionActualId())
-                .estacionDestinoId(ruta.getEstacionDestinoId())
-                .kilometroEnVia(kmEnVia)
-                .latitud(lat)
-                .longitud(lon)
-                .altitud(alt)
+                .estacionDestinoId(geometria.getEstacionDestinoId())
+                .kilometroEnVia(posicion.getKmEnVia())
+                .latitud(posicion.getLatitud())
+                .longitud(posicion.getLongitud())
+                .altitud(posicion.getAltitud())
                 .velocidadKmh(tren.getVelocidadCruceroKmh())
                 .segundosDesdeInicio(segundos)
                 .distanciaTotalRecorridaKm(distanciaRecorridaKm)
                 .build();
     }
-
-    private double lerp(Double a, Double b, double t) {
-        if (a == null && b == null) return 0.0;
-        if (a == null) return b;
-        if (b == null) return a;
-        return a + (b - a) * t;
-    }
 }
@@ -1,19 +1,37 @@
 package com.david.trenes.service;
 
+import com.david.trenes.config.PosicionGeoCallback;
+import com.david.trenes.model.Estacion;
+import com.david.trenes.model.Horario;
 import com.david.trenes.model.Tren;
 import com.david.trenes.model.Via;
+import com.david.trenes.repository.EstacionRepository;
+import com.david.trenes.repository.HorarioRepository;
 import com.david.trenes.repository.TrenRepository;
 import com.david.trenes.repository.ViaRepository;
+import com.david.trenes.util.GeoUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -23,10 +41,26 @@ public class UbicacionTrenesService {
 
     private final TrenRepository trenRepository;
     private final ViaRepository viaRepository;
+    private final HorarioRepository horarioRepository;
+    private final EstacionRepository estacionRepository;
+    private final OcupacionViasService ocupacionViasService;
+    private final MongoTemplate mongoTemplate;
     private final Random random = new Random();
 
+    private static final List<Horario.EstadoHorario> ESTADOS_HORARIO_PENDIENTE =
+            List.of(Horario.EstadoHorario.PROGRAMADO, Horario.EstadoHorario.RETRASADO);
+
+    // Coste para vías o trenes sin coordenadas: se asignan después de los que sí las tienen
+    private static final double COSTE_SIN_COORDENADAS_KM = 1000.0;
+
+    // Desempata entre vías de la misma estación según el tipo de vía preferido
+    private static final double PENALIZACION_TIPO_VIA_KM = 0.5;
+
     /**
-     * Ubica trenes detenidos (no en mantenimiento) en vías de estación disponibles
+     * Ubica trenes detenidos (no en mantenimiento) en vías de estación disponibles.
+     * La asignación tren-vía minimiza la distancia total hasta la estación de
+     * salida del próximo horario de cada tren y se escribe en una única
+     * operación bulk.
      */
     public void ubicarTrenesDetenidosEnEstaciones() {
         // 1. Obtener trenes detenidos que no están en mantenimiento
@@ -48,33 +82,211 @@ public class UbicacionTrenesService {
         log.info("Ubicando {} trenes detenidos en {} vías de estación disponibles", 
                 trenesDetenidos.size(), viasDisponibles.size());
 
-        // 3. Mezclar listas para distribución aleatoria
-        List<Tren> trenesDetenidosMutables = new ArrayList<>(trenesDetenidos);
-        List<Via> viasDisponiblesMutables = new ArrayList<>(viasDisponibles);
-        
-        Collections.shuffle(trenesDetenidosMutables);
-        Collections.shuffle(viasDisponiblesMutables);
+        // 3. Estación de cada vía y estación de la próxima salida de cada tren
+        Map<String, Estacion> estaciones = estacionRepository.findAll().stream()
+                .collect(Collectors.toMap(Estacion::getId, e -> e, (a, b) -> a));
+        Map<String, String> estacionPorVia = estacionesPorVia(estaciones.values(), viasDisponibles);
+        Map<String, String> proximaSalida = obtenerEstacionesProximaSalida(trenesDetenidos);
+
+        // 4. Asignación de coste mínimo (distancia de reposicionamiento)
+        double[][] coste = calcularCostesReposicionamiento(trenesDetenidos, viasDisponibles,
+                estaciones, estacionPorVia, proximaSalida);
+        int[] asignacion = AsignacionOptima.resolver(coste);
 
-        // 4. Asignar trenes a vías
+        // 5. Reservar los bloques de vía de una vez y ubicar solo los trenes con reserva
+        Map<OcupacionViasService.Bloque, String> reservas = new LinkedHashMap<>();
+        for (int i = 0; i < asignacion.length; i++) {
+            if (asignacion[i] >= 0) {
+                reservas.put(ocupacionViasService.bloque(viasDisponibles.get(asignacion[i]), 0.0),
+                        trenesDetenidos.get(i).getId());
+            }
+        }
+        Set<String> reservados = ocupacionViasService.adquirirEnBloque(reservas);
+
+        // 6. Escribir todas las ubicaciones en una única operación bulk
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Tren.class);
         int trenesUbicados = 0;
-        List<Tren> trenesActualizados = new ArrayList<>();
-        
-        for (int i = 0; i < Math.min(trenesDetenidosMutables.size(), viasDisponiblesMutables.size()); i++) {
-            Tren tren = trenesDetenidosMutables.get(i);
-            Via via = viasDisponiblesMutables.get(i);
+        // trenId -> bloque reservado para él, por si el update no llega a aplicarse
+        Map<String, OcupacionViasService.Bloque> bloquesUbicados = new HashMap<>();
+        int conSalidaEnEstacion = 0;
+        double kmReposicionamiento = 0.0;
+
+        for (int i = 0; i < asignacion.length; i++) {
+            if (asignacion[i] < 0) {
+                continue;
+            }
+            Tren tren = trenesDetenidos.get(i);
+            Via via = viasDisponibles.get(asignacion[i]);
+            OcupacionViasService.Bloque bloque = ocupacionViasService.bloque(via, 0.0);
+            if (!reservados.contains(bloque.getClave())) {
+                continue;
+            }
 
-            // Ubicar tren en la vía
-            ubicarTrenEnVia(tren, via);
-            trenesActualizados.add(tren);
+            String estacionId = estacionPorVia.get(via.getId());
+            ubicarTrenEnVia(tren, via, estacionId);
+            bulk.updateOne(
+                    new Query(Criteria.where("_id").is(tren.getId()).and("estadoActual").is(Tren.EstadoTren.DETENIDO)),
+                    actualizacionUbicacion(tren));
+            bloquesUbicados.put(tren.getId(), bloque);
             trenesUbicados++;
+
+            String salida = proximaSalida.get(tren.getId());
+            if (salida != null) {
+                kmReposicionamiento += coste[i][asignacion[i]];
+                if (salida.equals(estacionId)) {
+                    conSalidaEnEstacion++;
+                }
+            }
+        }
+
+        if (trenesUbicados > 0) {
+            int modificados;
+            try {
+                modificados = bulk.execute().getMatchedCount();
+            } catch (RuntimeException e) {
+                liberarBloquesNoUbicados(bloquesUbicados);
+                throw e;
+            }
+            if (modificados < trenesUbicados) {
+                int liberados = liberarBloquesNoUbicados(bloquesUbicados);
+                log.warn("{} trenes cambiaron de estado durante la ubicación y no se actualizaron; {} bloques liberados",
+                        trenesUbicados - modificados, liberados);
+            }
+        }
+
+        log.info("Se ubicaron {} trenes en estaciones ({} ya en la estación de su próxima salida, {} km de reposicionamiento estimado)",
+                trenesUbicados, conSalidaEnEstacion, GeoUtils.redondear(kmReposicionamiento, 1));
+    }
+
+    /**
+     * Suelta los bloques reservados para los trenes cuyo update no casó (ya no
+     * estaban DETENIDOS): se identifican releyendo la vía que quedó en cada tren.
+     */
+    private int liberarBloquesNoUbicados(Map<String, OcupacionViasService.Bloque> bloquesUbicados) {
+        Query query = new Query(Criteria.where("_id").in(bloquesUbicados.keySet()));
+        query.fields().include("_id").include("viaActualId");
+        Set<String> ubicados = mongoTemplate.find(query, Tren.class).stream()
+                .filter(t -> t.getViaActualId() != null && t.getViaActualId().equals(bloquesUbicados.get(t.getId()).getViaId()))
+                .map(Tren::getId)
+                .collect(Collectors.toSet());
+
+        int liberados = 0;
+        for (Map.Entry<String, OcupacionViasService.Bloque> e : bloquesUbicados.entrySet()) {
+            if (!ubicados.contains(e.getKey())) {
+                ocupacionViasService.liberar(e.getValue().getClave(), e.getKey());
+                liberados++;
+            }
+        }
+        return liberados;
+    }
+
+    /**
+     * Estación de cada vía: la del andén que la tiene asignada o, si ninguno,
+     * la estación de origen de la vía.
+     */
+    private Map<String, String> estacionesPorVia(Collection<Estacion> estaciones, List<Via> vias) {
+        Map<String, String> porAnden = new HashMap<>();
+        for (Estacion estacion : estaciones) {
+            if (estacion.getAndenes() == null) {
+                continue;
+            }
+            for (Estacion.Anden anden : estacion.getAndenes()) {
+                if (anden.getViaAsignadaId() != null && !Boolean.FALSE.equals(anden.getActivo())) {
+                    porAnden.putIfAbsent(anden.getViaAsignadaId(), estacion.getId());
+                }
+            }
         }
 
-        // Guardar todos los trenes actualizados
-        if (!trenesActualizados.isEmpty()) {
-            trenRepository.saveAll(trenesActualizados);
+        Map<String, String> resultado = new HashMap<>();
+        for (Via via : vias) {
+            resultado.put(via.getId(), porAnden.getOrDefault(via.getId(), via.getEstacionOrigenId()));
         }
+        return resultado;
+    }
 
-        log.info("Se ubicaron {} trenes en estaciones", trenesUbicados);
+    /**
+     * Estación de origen del próximo horario pendiente de cada tren, con una
+     * sola consulta ordenada por fecha de salida.
+     */
+    private Map<String, String> obtenerEstacionesProximaSalida(List<Tren> trenes) {
+        List<String> trenIds = trenes.stream().map(Tren::getId).toList();
+        List<Horario> horarios = horarioRepository.findByTrenIdInAndActivoTrueAndEstadoInAndFechaSalidaAfterOrderByFechaSalidaAsc(
+                trenIds, ESTADOS_HORARIO_PENDIENTE, LocalDateTime.now());
+
+        Map<String, String> resultado = new HashMap<>();
+        for (Horario horario : horarios) {
+            if (horario.getEstacionOrigenId() != null) {
+                resultado.putIfAbsent(horario.getTrenId(), horario.getEstacionOrigenId());
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Coste (km) de ubicar cada tren en cada vía: distancia desde la estación
+     * de su próxima salida (o desde su última posición conocida si no tiene
+     * horario) hasta la estación de la vía. Los andenes se reservan para los
+     * trenes con salida programada y las vías muertas y desvíos para el resto.
+     */
+    private double[][] calcularCostesReposicionamiento(List<Tren> trenes, List<Via> vias,
+                                                       Map<String, Estacion> estaciones,
+                                                       Map<String, String> estacionPorVia,
+                                                       Map<String, String> proximaSalida) {
+        int m = vias.size();
+        double[] lats = new double[m];
+        double[] lons = new double[m];
+        boolean[] esAnden = new boolean[m];
+        for (int j = 0; j < m; j++) {
+            Via via = vias.get(j);
+            Estacion estacion = estaciones.get(estacionPorVia.get(via.getId()));
+            Via.Coordenada punto = estacion != null && estacion.getUbicacion() != null
+                    ? estacion.getUbicacion() : via.getCoordenadaInicio();
+            lats[j] = punto != null && punto.getLatitud() != null ? punto.getLatitud() : Double.NaN;
+            lons[j] = punto != null && punto.getLongitud() != null ? punto.getLongitud() : Double.NaN;
+            esAnden[j] = via.getTipoVia() == Via.TipoVia.ANDEN;
+        }
+
+        double[][] coste = new double[trenes.size()][m];
+        for (int i = 0; i < trenes.size(); i++) {
+            Tren tren = trenes.get(i);
+            String salida = proximaSalida.get(tren.getId());
+            Estacion estacionSalida = salida != null ? estaciones.get(salida) : null;
+            Via.Coordenada origen = estacionSalida != null ? estacionSalida.getUbicacion() : tren.getUbicacionActual();
+
+            double[] fila = coste[i];
+            if (origen != null && origen.getLatitud() != null && origen.getLongitud() != null) {
+                GeoUtils.calcularDistanciasKm(origen.getLatitud(), origen.getLongitud(), lats, lons, fila);
+            } else {
+                // Sin punto de partida no hay distancia: todas las vías cuestan lo mismo
+                Arrays.fill(fila, COSTE_SIN_COORDENADAS_KM);
+            }
+            for (int j = 0; j < m; j++) {
+                if (salida != null && salida.equals(estacionPorVia.get(vias.get(j).getId()))) {
+                    fila[j] = 0.0;
+                } else if (Double.isNaN(fila[j])) {
+                    fila[j] = COSTE_SIN_COORDENADAS_KM;
+                }
+                if (esAnden[j] != (salida != null)) {
+                    fila[j] += PENALIZACION_TIPO_VIA_KM;
+                }
+            }
+        }
+        return coste;
+    }
+
+    private Update actualizacionUbicacion(Tren tren) {
+        Update update = new Update()
+                .set("viaActualId", tren.getViaActualId())
+                .set("estacionActualId", tren.getEstacionActualId())
+                .set("kilometroActual", tren.getKilometroActual())
+                .set("estadoActual", tren.getEstadoActual())
+                .set("fechaActualizacion", tren.getFechaActualizacion());
+        if (tren.getUbicacionActual() != null) {
+            // El update no pasa por PosicionGeoCallback: mantener el punto GeoJSON a mano
+            update.set("ubicacionActual", tren.getUbicacionActual())
+                    .set("posicionActual", PosicionGeoCallback.aGeoJson(tren.getUbicacionActual()));
+        }
+        return update;
     }
 
     /**
@@ -92,7 +304,7 @@ public class UbicacionTrenesService {
     }
 
     /**
-     * Obtiene vías de estación disponibles para recibir trenes
+     * Obtiene vías de estación disponibles (y sin ocupar) para recibir trenes
      */
     private List<Via> obtenerViasEstacionDisponibles() {
         List<Via> viasOperativas = viaRepository.findByActivo(true);
@@ -103,6 +315,7 @@ public class UbicacionTrenesService {
                               via.getTipoVia() == Via.TipoVia.VIA_MUERTA ||
                               via.getTipoVia() == Via.TipoVia.DESVIO)
                 .filter(via -> via.getEstacionOrigenId() != null && !via.getEstacionOrigenId().isEmpty())
+                .filter(via -> ocupacionViasService.estaLibre(ocupacionViasService.bloque(via, 0.0), null))
                 .toList();
     }
 
@@ -110,11 +323,15 @@ public class UbicacionTrenesService {
      * Ubica un tren específico en una vía
      */
     private void ubicarTrenEnVia(Tren tren, Via via) {
+        ubicarTrenEnVia(tren, via, via.getEstacionOrigenId());
+    }
+
+    private void ubicarTrenEnVia(Tren tren, Via via, String estacionId) {
         // Establecer vía actual
         tren.setViaActualId(via.getId());
         
-        // Establecer estación actual (usando la estación de origen de la vía)
-        tren.setEstacionActualId(via.getEstacionOrigenId());
+        // Establecer estación actual (la del andén asignado o la de origen de la vía)
+        tren.setEstacionActualId(estacionId);
         
         // Establecer ubicación coordinates (coordenadas de inicio de la vía)
         if (via.getCoordenadaInicio() != null) {
@@ -131,7 +348,7 @@ public class UbicacionTrenesService {
         tren.setFechaActualizacion(LocalDateTime.now());
         
         log.info("Tren {} ({}) ubicado en vía {} de estación {}", 
-                tren.getId(), tren.getNumeroTren(), via.getCodigoVia(), via.getEstacionOrigenId());
+                tren.getId(), tren.getNumeroTren(), via.getCodigoVia(), estacionId);
     }
 
     /**
@@ -151,8 +368,13 @@ public class UbicacionTrenesService {
             throw new IllegalStateException("No hay vías de estación disponibles");
         }
 
-        // Elegir vía aleatoria
-        Via viaSeleccionada = viasDisponibles.get(random.nextInt(viasDisponibles.size()));
+        // Elegir vía aleatoria entre las que se consigan reservar
+        List<Via> candidatas = new ArrayList<>(viasDisponibles);
+        Collections.shuffle(candidatas, random);
+        Via viaSeleccionada = candidatas.stream()
+                .filter(via -> ocupacionViasService.adquirir(ocupacionViasService.bloque(via, 0.0), trenId))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No hay vías de estación disponibles"));
         
         ubicarTrenEnVia(tren, viaSeleccionada);
         
@@ -176,6 +398,7 @@ public class UbicacionTrenesService {
         }
         
         if (!trenesEnEstacion.isEmpty()) {
+            ocupacionViasService.liberarTrenes(trenesEnEstacion.stream().map(Tren::getId).toList());
             trenRepository.saveAll(trenesEnEstacion);
             log.info("Se liberaron {} trenes de las vías de estación", trenesEnEstacion.size());
         }
@@ -18,6 +18,8 @@ import java.util.Optional;
 public class ViaService {
     
     private final ViaRepository viaRepository;
+    private final RutaGeometriaCache rutaGeometriaCache;
+    private final RedFerroviariaService redFerroviariaService;
     
     public List<Via> findAll() {
         log.debug("Buscando todas las vías");
@@ -77,7 +79,10 @@ public class ViaService {
         }
         via.setFechaActualizacion(LocalDateTime.now());
         
-        return viaRepository.save(via);
+        Via guardada = viaRepository.save(via);
+        rutaGeometriaCache.invalidarVia(guardada.getId());
+        redFerroviariaService.aplicarCambioVia(guardada);
+        return guardada;
     }
     
     public Via update(String id, Via viaActualizada) {
@@ -88,7 +93,10 @@ public class ViaService {
                 viaActualizada.setId(id);
                 viaActualizada.setFechaCreacion(viaExistente.getFechaCreacion());
                 viaActualizada.setFechaActualizacion(LocalDateTime.now());
-                return viaRepository.save(viaActualizada);
+                Via guardada = viaRepository.save(viaActualizada);
+                rutaGeometriaCache.invalidarVia(id);
+                redFerroviariaService.aplicarCambioVia(guardada);
+                return guardada;
             })
             .orElseThrow(() -> new RuntimeException("Vía no encontrada con ID: " + id));
     }
@@ -101,6 +109,8 @@ public class ViaService {
         }
         
         viaRepository.deleteById(id);
+        rutaGeometriaCache.invalidarVia(id);
+        redFerroviariaService.eliminarVia(id);
     }
     
     public boolean existsByCodigoVia(String codigoVia) {
@@ -135,7 +145,9 @@ public class ViaService {
                     via.setFechaUltimaMantenimiento(LocalDateTime.now());
                 }
                 
-                return viaRepository.save(via);
+                Via guardada = viaRepository.save(via);
+                redFerroviariaService.aplicarCambioVia(guardada);
+                return guardada;
             })
             .orElseThrow(() -> new RuntimeException("Vía no encontrada con ID: " + id));
     }
@@ -10,6 +10,18 @@ public class GeoUtils {
     
     private static final double RADIO_TIERRA_KM = 6371.0;
     private static final double RADIO_TIERRA_MILLAS = 3958.8;
+    private static final double GRADOS_A_RADIANES = Math.PI / 180.0;
+    
+    // Por debajo de esta longitud la aproximación equirectangular se desvía menos de un metro de Haversine
+    private static final double UMBRAL_EQUIRECTANGULAR_KM = 20.0;
+    
+    private static final double[] POTENCIAS_DE_10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    // Hasta aquí el valor escalado conserva de sobra la parte fraccionaria para decidir el redondeo
+    private static final double MAXIMO_ESCALADO_RAPIDO = 1e9;
+    // Más cerca del empate que esto, el error binario podría cambiar el sentido del redondeo
+    private static final double MARGEN_EMPATE = 1e-6;
     
     /**
      * Calcula la distancia entre dos coordenadas usando la fórmula de Haversine
@@ -56,6 +68,160 @@ public class GeoUtils {
         return radioTierra * c;
     }
     
+    // ==================== OPERACIONES POR LOTES ====================
+    
+    /**
+     * Distancias Haversine desde un origen a N puntos. El seno y coseno del
+     * origen se calculan una sola vez y el bucle trabaja sobre arrays primitivos.
+     * @param lat Latitud del origen en grados
+     * @param lon Longitud del origen en grados
+     * @param lats Latitudes de los puntos en grados
+     * @param lons Longitudes de los puntos en grados
+     * @param destino Array donde se escriben las distancias en kilómetros
+     */
+    public static void calcularDistanciasKm(double lat, double lon, double[] lats, double[] lons, double[] destino) {
+        int n = validarLongitudes(lats, lons, destino.length);
+        double lat0 = lat * GRADOS_A_RADIANES;
+        double lon0 = lon * GRADOS_A_RADIANES;
+        double cos0 = Math.cos(lat0);
+        
+        for (int i = 0; i < n; i++) {
+            double lati = lats[i] * GRADOS_A_RADIANES;
+            double sinLat = Math.sin((lati - lat0) * 0.5);
+            double sinLon = Math.sin((lons[i] * GRADOS_A_RADIANES - lon0) * 0.5);
+            double a = sinLat * sinLat + cos0 * Math.cos(lati) * sinLon * sinLon;
+            destino[i] = 2 * RADIO_TIERRA_KM * Math.asin(Math.sqrt(Math.min(1.0, a)));
+        }
+    }
+    
+    /**
+     * Distancias aproximadas (proyección equirectangular con el coseno de la
+     * latitud del origen) desde un origen a N puntos. Sin funciones
+     * trigonométricas en el bucle, por lo que el JIT puede vectorizarlo; solo
+     * es adecuada para distancias cortas (decenas de km).
+     */
+    public static void calcularDistanciasAproximadasKm(double lat, double lon, double[] lats, double[] lons, double[] destino) {
+        int n = validarLongitudes(lats, lons, destino.length);
+        double escalaLat = RADIO_TIERRA_KM * GRADOS_A_RADIANES;
+        double escalaLon = escalaLat * Math.cos(lat * GRADOS_A_RADIANES);
+        
+        for (int i = 0; i < n; i++) {
+            double dx = (lons[i] - lon) * escalaLon;
+            double dy = (lats[i] - lat) * escalaLat;
+            destino[i] = Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+    
+    /**
+     * Longitud de cada tramo de una polilínea (destino[i] = punto i a punto i+1).
+     * Los cosenos de latitud se calculan una vez por punto; los tramos cortos
+     * usan la aproximación equirectangular y el resto Haversine.
+     * @param destino Array de lats.length - 1 posiciones
+     */
+    public static void calcularLongitudesTramosKm(double[] lats, double[] lons, double[] destino) {
+        int n = validarLongitudes(lats, lons, destino.length + 1);
+        if (n < 2) {
+            return;
+        }
+        
+        double[] cosenos = new double[n];
+        for (int i = 0; i < n; i++) {
+            cosenos[i] = Math.cos(lats[i] * GRADOS_A_RADIANES);
+        }
+        
+        for (int i = 0; i + 1 < n; i++) {
+            double dLat = (lats[i + 1] - lats[i]) * GRADOS_A_RADIANES;
+            double dLon = (lons[i + 1] - lons[i]) * GRADOS_A_RADIANES;
+            double dx = dLon * 0.5 * (cosenos[i] + cosenos[i + 1]);
+            double aproximada = RADIO_TIERRA_KM * Math.sqrt(dx * dx + dLat * dLat);
+            
+            if (aproximada < UMBRAL_EQUIRECTANGULAR_KM) {
+                destino[i] = aproximada;
+            } else {
+                double sinLat = Math.sin(dLat * 0.5);
+                double sinLon = Math.sin(dLon * 0.5);
+                double a = sinLat * sinLat + cosenos[i] * cosenos[i + 1] * sinLon * sinLon;
+                destino[i] = 2 * RADIO_TIERRA_KM * Math.asin(Math.sqrt(Math.min(1.0, a)));
+            }
+        }
+    }
+    
+    /**
+     * Longitud total de una polilínea en kilómetros
+     */
+    public static double calcularLongitudPolilineaKm(double[] lats, double[] lons) {
+        if (lats.length < 2) {
+            return 0.0;
+        }
+        double[] tramos = new double[lats.length - 1];
+        calcularLongitudesTramosKm(lats, lons, tramos);
+        double total = 0.0;
+        for (double tramo : tramos) {
+            total += tramo;
+        }
+        return total;
+    }
+    
+    /**
+     * Bearings desde un origen a N puntos, en grados (0-360)
+     */
+    public static void calcularBearings(double lat, double lon, double[] lats, double[] lons, double[] destino) {
+        int n = validarLongitudes(lats, lons, destino.length);
+        double lat0 = lat * GRADOS_A_RADIANES;
+        double lon0 = lon * GRADOS_A_RADIANES;
+        double sin0 = Math.sin(lat0);
+        double cos0 = Math.cos(lat0);
+        
+        for (int i = 0; i < n; i++) {
+            double lati = lats[i] * GRADOS_A_RADIANES;
+            double deltaLon = lons[i] * GRADOS_A_RADIANES - lon0;
+            double cosLati = Math.cos(lati);
+            double y = Math.sin(deltaLon) * cosLati;
+            double x = cos0 * Math.sin(lati) - sin0 * cosLati * Math.cos(deltaLon);
+            destino[i] = (Math.toDegrees(Math.atan2(y, x)) + 360) % 360;
+        }
+    }
+    
+    /**
+     * Interpola posiciones a lo largo de una polilínea para una lista de
+     * kilómetros ordenada de forma ascendente, en una sola pasada.
+     * @param kmAcumulado Kilómetro de cada vértice (kmAcumulado[0] = 0, no decreciente)
+     * @param kms Kilómetros a localizar, ordenados; fuera de rango se fijan a los extremos
+     */
+    public static void interpolarEnPolilinea(double[] lats, double[] lons, double[] kmAcumulado, double[] kms,
+                                             double[] latDestino, double[] lonDestino) {
+        int n = validarLongitudes(lats, lons, kmAcumulado.length);
+        validarLongitudes(kms, latDestino, lonDestino.length);
+        if (n == 0) {
+            throw new IllegalArgumentException("La polilínea no tiene puntos");
+        }
+        
+        int tramo = 0;
+        for (int j = 0; j < kms.length; j++) {
+            double km = kms[j];
+            while (tramo + 2 < n && kmAcumulado[tramo + 1] < km) {
+                tramo++;
+            }
+            if (n == 1 || km <= kmAcumulado[0]) {
+                latDestino[j] = lats[0];
+                lonDestino[j] = lons[0];
+                continue;
+            }
+            double longitud = kmAcumulado[tramo + 1] - kmAcumulado[tramo];
+            double t = longitud > 0 ? Math.min(1.0, Math.max(0.0, (km - kmAcumulado[tramo]) / longitud)) : 0.0;
+            latDestino[j] = lats[tramo] + (lats[tramo + 1] - lats[tramo]) * t;
+            lonDestino[j] = lons[tramo] + (lons[tramo + 1] - lons[tramo]) * t;
+        }
+    }
+    
+    private static int validarLongitudes(double[] a, double[] b, int esperada) {
+        if (a.length != b.length || a.length != esperada) {
+            throw new IllegalArgumentException("Los arrays deben tener la misma longitud: "
+                    + a.length + ", " + b.length + ", " + esperada);
+        }
+        return a.length;
+    }
+    
     /**
      * Verifica si una coordenada está dentro de un radio específico de otra coordenada
      * @param lat1 Latitud del punto central en grados
@@ -133,6 +299,22 @@ public class GeoUtils {
     public static double redondear(double valor, int decimales) {
         if (decimales < 0) throw new IllegalArgumentException();
         
+        // Camino rápido sin BigDecimal: mismo resultado HALF_UP salvo junto al
+        // empate, donde el valor binario puede quedar a un lado u otro del .5
+        if (decimales < POTENCIAS_DE_10.length && Double.isFinite(valor)) {
+            double potencia = POTENCIAS_DE_10[decimales];
+            double escalado = Math.abs(valor) * potencia;
+            if (escalado < MAXIMO_ESCALADO_RAPIDO) {
+                double entero = Math.floor(escalado);
+                double fraccion = escalado - entero;
+                if (Math.abs(fraccion - 0.5) > MARGEN_EMPATE) {
+                    double redondeado = fraccion > 0.5 ? entero + 1 : entero;
+                    // BigDecimal no tiene -0: un negativo que redondea a cero devuelve 0.0
+                    return redondeado == 0 ? 0.0 : Math.copySign(redondeado / potencia, valor);
+                }
+            }
+        }
+        
         BigDecimal bd = BigDecimal.valueOf(valor);
         bd = bd.setScale(decimales, RoundingMode.HALF_UP);
         return bd.doubleValue();
@@ -0,0 +1,133 @@
+package com.david.trenes.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SecurityEventRingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new SecurityEventRingBuffer<Integer>(1).getCapacity());
+        assertEquals(8, new SecurityEventRingBuffer<Integer>(8).getCapacity());
+        assertEquals(16, new SecurityEventRingBuffer<Integer>(9).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new SecurityEventRingBuffer<Integer>(0));
+    }
+
+    @Test
+    void dropsWhenFullAndAcceptsAgainAfterDraining() {
+        SecurityEventRingBuffer<Integer> buffer = new SecurityEventRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+        assertEquals(2, buffer.getDropped());
+        assertEquals(4, buffer.size());
+
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(1, buffer.drainTo(drained, 1));
+        assertTrue(buffer.offer(6));
+        assertFalse(buffer.offer(7));
+
+        assertEquals(4, buffer.drainTo(drained, 10));
+        assertEquals(List.of(0, 1, 2, 3, 6), drained);
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.drainTo(drained, 10));
+    }
+
+    @Test
+    void keepsFifoOrderAcrossManyWrapArounds() {
+        SecurityEventRingBuffer<Integer> buffer = new SecurityEventRingBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+        int next = 0;
+        int expected = 0;
+
+        // Uneven batch sizes so head and tail meet every slot at every phase
+        for (int round = 0; round < 1_000; round++) {
+            int offered = Math.min(1 + round % 4, buffer.getCapacity() - buffer.size());
+            for (int i = 0; i < offered; i++) {
+                assertTrue(buffer.offer(next++));
+            }
+            drained.clear();
+            buffer.drainTo(drained, 1 + round % 3);
+            for (int value : drained) {
+                assertEquals(expected++, value);
+            }
+        }
+
+        drained.clear();
+        buffer.drainTo(drained, Integer.MAX_VALUE);
+        for (int value : drained) {
+            assertEquals(expected++, value);
+        }
+        assertEquals(next, expected);
+        assertEquals(0, buffer.getDropped());
+    }
+
+    @Test
+    void concurrentProducersLoseNothingButTheCountedDrops() throws Exception {
+        SecurityEventRingBuffer<Long> buffer = new SecurityEventRingBuffer<>(64);
+        int producers = 4;
+        int perProducer = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Long>> offeredSums = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                long base = (long) p * perProducer;
+                offeredSums.add(executor.submit(() -> {
+                    start.await();
+                    long sum = 0;
+                    for (long i = 1; i <= perProducer; i++) {
+                        if (buffer.offer(base + i)) {
+                            sum += base + i;
+                        }
+                    }
+                    return sum;
+                }));
+            }
+            start.countDown();
+
+            // Single consumer: drain while the producers run, then what is left
+            long drainedSum = 0;
+            long drainedCount = 0;
+            List<Long> batch = new ArrayList<>();
+            while (!offeredSums.stream().allMatch(Future::isDone)) {
+                batch.clear();
+                buffer.drainTo(batch, 32);
+                for (long value : batch) {
+                    drainedSum += value;
+                }
+                drainedCount += batch.size();
+            }
+            batch.clear();
+            buffer.drainTo(batch, Integer.MAX_VALUE);
+            for (long value : batch) {
+                drainedSum += value;
+            }
+            drainedCount += batch.size();
+
+            long offeredSum = 0;
+            for (Future<Long> sum : offeredSums) {
+                offeredSum += sum.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(offeredSum, drainedSum);
+            assertEquals((long) producers * perProducer, drainedCount + buffer.getDropped());
+            assertEquals(0, buffer.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
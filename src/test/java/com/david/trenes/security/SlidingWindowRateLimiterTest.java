@@ -0,0 +1,145 @@
+package com.david.trenes.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlidingWindowRateLimiterTest {
+
+    private static final long WINDOW_MS = 60_000;
+    // Start of a window: the previous window has full weight but is empty
+    private static final long T0 = 1_000 * WINDOW_MS;
+
+    @Test
+    void acceptsUpToTheLimitWithinOneWindow() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(64, WINDOW_MS);
+
+        for (int expected = 4; expected >= 0; expected--) {
+            assertEquals(expected, limiter.tryAcquire(0, "10.0.0.1", 5, T0 + 10));
+        }
+        assertEquals(-1, limiter.tryAcquire(0, "10.0.0.1", 5, T0 + 20));
+    }
+
+    @Test
+    void previousWindowCountsByTheRemainingOverlap() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(64, WINDOW_MS);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(0, "10.0.0.1", 10, T0) >= 0);
+        }
+
+        // Halfway through the next window the 10 previous hits weigh 5
+        long halfway = T0 + WINDOW_MS + WINDOW_MS / 2;
+        int accepted = 0;
+        while (limiter.tryAcquire(0, "10.0.0.1", 10, halfway) >= 0) {
+            accepted++;
+        }
+        assertEquals(5, accepted);
+    }
+
+    @Test
+    void countersResetOnceThePreviousWindowIsOver() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(64, WINDOW_MS);
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire(0, "10.0.0.1", 3, T0);
+        }
+        assertEquals(-1, limiter.tryAcquire(0, "10.0.0.1", 3, T0 + 1));
+
+        assertEquals(2, limiter.tryAcquire(0, "10.0.0.1", 3, T0 + 2 * WINDOW_MS));
+    }
+
+    @Test
+    void keysAndDimensionsAreCountedSeparately() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(64, WINDOW_MS);
+        limiter.tryAcquire(0, "10.0.0.1", 1, T0);
+        assertEquals(-1, limiter.tryAcquire(0, "10.0.0.1", 1, T0));
+
+        assertEquals(0, limiter.tryAcquire(0, "10.0.0.2", 1, T0));
+        assertEquals(0, limiter.tryAcquire(1, "10.0.0.1", 1, T0));
+    }
+
+    @Test
+    void tableKeepsItsSizeAndEvictsUnderPressure() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(16, WINDOW_MS);
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(limiter.tryAcquire(0, "10.0." + (i / 256) + "." + (i % 256), 5, T0) >= 0);
+        }
+
+        assertEquals(16, limiter.getCapacity());
+        assertTrue(limiter.getEvictions() > 0);
+        assertTrue(limiter.countActive(T0) <= 16);
+    }
+
+    @Test
+    void expiredSlotsAreReusedWithoutEviction() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(16, WINDOW_MS);
+        for (int i = 0; i < 16; i++) {
+            limiter.tryAcquire(0, "old-" + i, 5, T0);
+        }
+        long evictions = limiter.getEvictions();
+
+        // Fewer new keys than probes: every probe run reaches an expired slot
+        long later = T0 + 2 * WINDOW_MS;
+        assertEquals(0, limiter.countActive(later));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(4, limiter.tryAcquire(0, "new-" + i, 5, later));
+        }
+        assertEquals(evictions, limiter.getEvictions());
+        assertEquals(4, limiter.countActive(later));
+    }
+
+    @Test
+    void concurrentHitsNeverExceedTheLimit() throws Exception {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(64, WINDOW_MS);
+        int threads = 8;
+        int limit = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int accepted = 0;
+                    for (int i = 0; i < 1_000; i++) {
+                        if (limiter.tryAcquire(0, "10.0.0.1", limit, T0 + 1) >= 0) {
+                            accepted++;
+                        }
+                    }
+                    return accepted;
+                }));
+            }
+            start.countDown();
+
+            int total = 0;
+            for (Future<Integer> result : results) {
+                total += result.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(limit, total);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void millisToNextWindowCountsDownToTheBoundary() {
+        SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter(64, WINDOW_MS);
+        assertEquals(WINDOW_MS, limiter.millisToNextWindow(T0));
+        assertEquals(1, limiter.millisToNextWindow(T0 + WINDOW_MS - 1));
+    }
+
+    @Test
+    void rejectsNonPositiveArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowRateLimiter(0, WINDOW_MS));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowRateLimiter(16, 0));
+    }
+}
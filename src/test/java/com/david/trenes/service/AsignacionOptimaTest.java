@@ -0,0 +1,125 @@
+package com.david.trenes.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsignacionOptimaTest {
+
+    @Test
+    void matrizCuadrada() {
+        double[][] coste = {
+                {4, 1, 3},
+                {2, 0, 5},
+                {3, 2, 2}
+        };
+
+        int[] asignacion = AsignacionOptima.resolver(coste);
+
+        assertArrayEquals(new int[]{1, 0, 2}, asignacion);
+        assertEquals(5.0, AsignacionOptima.costeTotal(coste, asignacion), 1e-9);
+    }
+
+    @Test
+    void masColumnasQueFilas() {
+        double[][] coste = {
+                {10, 3, 8, 1},
+                {2, 9, 1, 7}
+        };
+
+        int[] asignacion = AsignacionOptima.resolver(coste);
+
+        assertArrayEquals(new int[]{3, 2}, asignacion);
+        assertEquals(2.0, AsignacionOptima.costeTotal(coste, asignacion), 1e-9);
+    }
+
+    @Test
+    void masFilasQueColumnasSeResuelveSobreLaTraspuesta() {
+        double[][] coste = {
+                {5, 9},
+                {1, 8},
+                {7, 2},
+                {6, 6}
+        };
+
+        int[] asignacion = AsignacionOptima.resolver(coste);
+
+        // Solo quedan asignadas tantas filas como columnas, a columnas distintas
+        assertArrayEquals(new int[]{-1, 0, 1, -1}, asignacion);
+        assertEquals(3.0, AsignacionOptima.costeTotal(coste, asignacion), 1e-9);
+    }
+
+    @Test
+    void matricesVacias() {
+        assertArrayEquals(new int[0], AsignacionOptima.resolver(new double[0][0]));
+        assertArrayEquals(new int[]{-1, -1}, AsignacionOptima.resolver(new double[2][0]));
+    }
+
+    @Test
+    void coincideConLaFuerzaBrutaEnMatricesAleatorias() {
+        Random random = new Random(42);
+        for (int caso = 0; caso < 300; caso++) {
+            int filas = 1 + random.nextInt(6);
+            int columnas = 1 + random.nextInt(6);
+            double[][] coste = new double[filas][columnas];
+            for (int i = 0; i < filas; i++) {
+                for (int j = 0; j < columnas; j++) {
+                    // Valores enteros repetidos para forzar empates
+                    coste[i][j] = random.nextInt(20);
+                }
+            }
+
+            int[] asignacion = AsignacionOptima.resolver(coste);
+
+            assertEquals(filas, asignacion.length);
+            Set<Integer> usadas = new HashSet<>();
+            int asignadas = 0;
+            for (int columna : asignacion) {
+                if (columna >= 0) {
+                    assertTrue(columna < columnas);
+                    assertTrue(usadas.add(columna));
+                    asignadas++;
+                }
+            }
+            assertEquals(Math.min(filas, columnas), asignadas);
+            assertEquals(fuerzaBruta(coste), AsignacionOptima.costeTotal(coste, asignacion), 1e-9);
+        }
+    }
+
+    // Mínimo sobre todas las asignaciones completas del lado menor
+    private static double fuerzaBruta(double[][] coste) {
+        int filas = coste.length;
+        int columnas = coste[0].length;
+        if (filas > columnas) {
+            double[][] traspuesta = new double[columnas][filas];
+            for (int i = 0; i < filas; i++) {
+                for (int j = 0; j < columnas; j++) {
+                    traspuesta[j][i] = coste[i][j];
+                }
+            }
+            return fuerzaBruta(traspuesta);
+        }
+        return minimo(coste, 0, new boolean[columnas]);
+    }
+
+    private static double minimo(double[][] coste, int fila, boolean[] usadas) {
+        if (fila == coste.length) {
+            return 0;
+        }
+        double mejor = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < usadas.length; j++) {
+            if (!usadas[j]) {
+                usadas[j] = true;
+                mejor = Math.min(mejor, coste[fila][j] + minimo(coste, fila + 1, usadas));
+                usadas[j] = false;
+            }
+        }
+        return mejor;
+    }
+}
@@ -0,0 +1,65 @@
+package com.david.trenes.service;
+
+import com.david.trenes.dto.TrenPosicionResponse;
+import com.david.trenes.util.GeoUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndiceEspacialTrenesTest {
+
+    @Test
+    void cercanosCoincideConLaBusquedaExhaustiva() {
+        Random random = new Random(11);
+        // Flota repartida de sur a norte: la latitud media no vale para toda ella
+        List<TrenPosicionResponse> flota = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            flota.add(posicion("T" + i, 36.0 + random.nextDouble() * 8.0, -9.0 + random.nextDouble() * 12.0));
+        }
+        IndiceEspacialTrenes indice = IndiceEspacialTrenes.construir(flota, 5.0);
+
+        for (int consulta = 0; consulta < 200; consulta++) {
+            double lat = 36.0 + random.nextDouble() * 8.0;
+            double lon = -9.0 + random.nextDouble() * 12.0;
+            double radioKm = 1.0 + random.nextDouble() * 60.0;
+
+            Set<String> esperados = flota.stream()
+                    .filter(p -> GeoUtils.calcularDistanciaKm(lat, lon, p.getLatitud(), p.getLongitud()) <= radioKm)
+                    .map(TrenPosicionResponse::getTrenId)
+                    .collect(Collectors.toSet());
+            Set<String> encontrados = indice.cercanos(lat, lon, radioKm).stream()
+                    .map(TrenPosicionResponse::getTrenId)
+                    .collect(Collectors.toSet());
+
+            assertEquals(esperados, encontrados);
+        }
+    }
+
+    @Test
+    void ignoraPosicionesSinCoordenadas() {
+        List<TrenPosicionResponse> flota = List.of(
+                posicion("A", 40.0, -3.0),
+                TrenPosicionResponse.builder().trenId("B").build());
+
+        IndiceEspacialTrenes indice = IndiceEspacialTrenes.construir(flota, 1.0);
+
+        assertEquals(1, indice.getNumeroTrenes());
+        assertEquals(1, indice.cercanos(40.0, -3.0, 0.5).size());
+        assertTrue(IndiceEspacialTrenes.vacio(1.0).cercanos(40.0, -3.0, 10.0).isEmpty());
+    }
+
+    private static TrenPosicionResponse posicion(String trenId, double latitud, double longitud) {
+        return TrenPosicionResponse.builder()
+                .trenId(trenId)
+                .latitud(latitud)
+                .longitud(longitud)
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package com.david.trenes.service;
+
+import com.david.trenes.model.Ruta;
+import com.david.trenes.model.Via;
+import com.david.trenes.util.GeoUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RutaGeometriaTest {
+
+    @Test
+    void usaLaLongitudDeclaradaCuandoExiste() {
+        Via v1 = via("v1", 10.0, 40.0, -3.0, 40.1, -3.0);
+        Via v2 = via("v2", 25.0, 40.1, -3.0, 40.3, -3.0);
+
+        RutaGeometria geometria = RutaGeometria.compilar(ruta("v1", "v2"), Map.of("v1", v1, "v2", v2));
+
+        assertEquals(35.0, geometria.getLongitudTotalKm(), 1e-12);
+        assertEquals("v2", geometria.localizar(20.0).getViaId());
+        assertEquals(10.0, geometria.localizar(20.0).getKmEnVia(), 1e-12);
+    }
+
+    @Test
+    void sinLongitudDeclaradaUsaLaDistanciaEntreExtremos() {
+        Via v1 = via("v1", 10.0, 40.0, -3.0, 40.1, -3.0);
+        // Sin longitud declarada: un tramo corto (equirectangular) y uno largo (Haversine)
+        Via v2 = via("v2", null, 40.1, -3.0, 40.15, -3.02);
+        Via v3 = via("v3", 0.0, 40.15, -3.02, 41.0, -2.0);
+
+        RutaGeometria geometria = RutaGeometria.compilar(ruta("v1", "v2", "v3"),
+                Map.of("v1", v1, "v2", v2, "v3", v3));
+
+        double esperada = 10.0
+                + GeoUtils.calcularDistanciaKm(40.1, -3.0, 40.15, -3.02)
+                + GeoUtils.calcularDistanciaKm(40.15, -3.02, 41.0, -2.0);
+        assertEquals(esperada, geometria.getLongitudTotalKm(), 1e-3);
+        assertEquals("v3", geometria.fin().getViaId());
+    }
+
+    @Test
+    void descartaViasSinLongitudNiCoordenadas() {
+        Via v1 = via("v1", 10.0, 40.0, -3.0, 40.1, -3.0);
+        Via v2 = Via.builder().id("v2").coordenadaInicio(coordenada(40.1, -3.0)).build();
+
+        RutaGeometria geometria = RutaGeometria.compilar(ruta("v1", "v2"), Map.of("v1", v1, "v2", v2));
+
+        assertEquals(10.0, geometria.getLongitudTotalKm(), 1e-12);
+        assertEquals("v1", geometria.fin().getViaId());
+    }
+
+    @Test
+    void sinViasValidasQuedaUnTramoDegenerado() {
+        Via v1 = Via.builder().id("v1").build();
+
+        RutaGeometria geometria = RutaGeometria.compilar(ruta("v1"), Map.of("v1", v1));
+
+        assertEquals(0.0, geometria.getLongitudTotalKm(), 0.0);
+        assertEquals("v1", geometria.localizar(5.0).getViaId());
+    }
+
+    private static Ruta ruta(String... viaIds) {
+        List<Ruta.ViaRuta> vias = new java.util.ArrayList<>();
+        for (int i = 0; i < viaIds.length; i++) {
+            vias.add(Ruta.ViaRuta.builder().viaId(viaIds[i]).orden(i + 1).build());
+        }
+        return Ruta.builder().id("r1").vias(vias).build();
+    }
+
+    private static Via via(String id, Double longitudKm, double lat1, double lon1, double lat2, double lon2) {
+        return Via.builder()
+                .id(id)
+                .longitudKm(longitudKm)
+                .coordenadaInicio(coordenada(lat1, lon1))
+                .coordenadaFin(coordenada(lat2, lon2))
+                .build();
+    }
+
+    private static Via.Coordenada coordenada(double latitud, double longitud) {
+        return Via.Coordenada.builder().latitud(latitud).longitud(longitud).altitud(0.0).build();
+    }
+}
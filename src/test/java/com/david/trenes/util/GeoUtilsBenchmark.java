@@ -0,0 +1,139 @@
+package com.david.trenes.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara los núcleos en lote de {@link GeoUtils} con el bucle equivalente
+ * sobre las funciones escalares. No forma parte de la suite de tests: se
+ * lanza con {@code main} desde el classpath de test, por ejemplo
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.david.trenes.util.GeoUtilsBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoUtilsBenchmark {
+
+    @Param({"1000", "100000"})
+    private int n;
+
+    private double lat;
+    private double lon;
+    private double[] lats;
+    private double[] lons;
+    // Polilínea de tramos cortos, como los extremos de las vías de una ruta
+    private double[] latsRuta;
+    private double[] lonsRuta;
+    private double[] destino;
+    private double[] tramos;
+
+    @Setup
+    public void preparar() {
+        Random random = new Random(1);
+        lat = 40.4168;
+        lon = -3.7038;
+        lats = new double[n];
+        lons = new double[n];
+        latsRuta = new double[n];
+        lonsRuta = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = 36.0 + random.nextDouble() * 8.0;
+            lons[i] = -9.0 + random.nextDouble() * 12.0;
+            latsRuta[i] = i == 0 ? lat : latsRuta[i - 1] + (random.nextDouble() - 0.5) * 0.05;
+            lonsRuta[i] = i == 0 ? lon : lonsRuta[i - 1] + (random.nextDouble() - 0.5) * 0.05;
+        }
+        destino = new double[n];
+        tramos = new double[n - 1];
+    }
+
+    @Benchmark
+    public double[] distanciasEscalar() {
+        for (int i = 0; i < n; i++) {
+            destino[i] = GeoUtils.calcularDistanciaKm(lat, lon, lats[i], lons[i]);
+        }
+        return destino;
+    }
+
+    @Benchmark
+    public double[] distanciasEnLote() {
+        GeoUtils.calcularDistanciasKm(lat, lon, lats, lons, destino);
+        return destino;
+    }
+
+    @Benchmark
+    public double[] distanciasAproximadasEnLote() {
+        GeoUtils.calcularDistanciasAproximadasKm(lat, lon, lats, lons, destino);
+        return destino;
+    }
+
+    @Benchmark
+    public double[] tramosEscalar() {
+        for (int i = 0; i < tramos.length; i++) {
+            tramos[i] = GeoUtils.calcularDistanciaKm(latsRuta[i], lonsRuta[i], latsRuta[i + 1], lonsRuta[i + 1]);
+        }
+        return tramos;
+    }
+
+    @Benchmark
+    public double[] tramosEnLote() {
+        GeoUtils.calcularLongitudesTramosKm(latsRuta, lonsRuta, tramos);
+        return tramos;
+    }
+
+    @Benchmark
+    public double[] bearingsEscalar() {
+        for (int i = 0; i < n; i++) {
+            destino[i] = GeoUtils.calcularBearing(lat, lon, lats[i], lons[i]);
+        }
+        return destino;
+    }
+
+    @Benchmark
+    public double[] bearingsEnLote() {
+        GeoUtils.calcularBearings(lat, lon, lats, lons, destino);
+        return destino;
+    }
+
+    @Benchmark
+    public void redondearConBigDecimal(Blackhole bh) {
+        for (int i = 0; i < n; i++) {
+            bh.consume(BigDecimal.valueOf(lats[i]).setScale(2, RoundingMode.HALF_UP).doubleValue());
+        }
+    }
+
+    @Benchmark
+    public void redondear(Blackhole bh) {
+        for (int i = 0; i < n; i++) {
+            bh.consume(GeoUtils.redondear(lats[i], 2));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GeoUtilsBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,164 @@
+package com.david.trenes.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeoUtilsTest {
+
+    private static final Random RANDOM = new Random(7);
+
+    @Test
+    void distanciasEnLoteCoincidenConLaEscalar() {
+        double lat = 40.4168;
+        double lon = -3.7038;
+        double[] lats = aleatorios(500, 36.0, 44.0);
+        double[] lons = aleatorios(500, -9.0, 3.0);
+        double[] distancias = new double[500];
+
+        GeoUtils.calcularDistanciasKm(lat, lon, lats, lons, distancias);
+
+        for (int i = 0; i < lats.length; i++) {
+            assertEquals(GeoUtils.calcularDistanciaKm(lat, lon, lats[i], lons[i]), distancias[i], 1e-9);
+        }
+    }
+
+    @Test
+    void distanciasAproximadasSeAjustanEnDistanciasCortas() {
+        double lat = 41.3874;
+        double lon = 2.1686;
+        double[] lats = aleatorios(500, lat - 0.1, lat + 0.1);
+        double[] lons = aleatorios(500, lon - 0.1, lon + 0.1);
+        double[] distancias = new double[500];
+
+        GeoUtils.calcularDistanciasAproximadasKm(lat, lon, lats, lons, distancias);
+
+        for (int i = 0; i < lats.length; i++) {
+            double exacta = GeoUtils.calcularDistanciaKm(lat, lon, lats[i], lons[i]);
+            // Menos de un 0,5 % de error a unos 10 km
+            assertEquals(exacta, distancias[i], Math.max(1e-3, exacta * 0.005));
+        }
+    }
+
+    @Test
+    void longitudesDeTramosCoincidenConLaEscalarEnAmbosCaminos() {
+        // Tramos cortos (camino equirectangular) y largos (Haversine) mezclados
+        double[] lats = {40.0, 40.01, 40.02, 41.0, 41.005, 43.5, 36.7};
+        double[] lons = {-3.0, -3.01, -3.0, -2.0, -2.004, -5.8, -4.4};
+        double[] tramos = new double[lats.length - 1];
+
+        GeoUtils.calcularLongitudesTramosKm(lats, lons, tramos);
+
+        double total = 0.0;
+        for (int i = 0; i < tramos.length; i++) {
+            double exacta = GeoUtils.calcularDistanciaKm(lats[i], lons[i], lats[i + 1], lons[i + 1]);
+            // Por debajo del umbral la aproximación se desvía menos de un metro
+            assertEquals(exacta, tramos[i], exacta < 20.0 ? 1e-3 : 1e-9);
+            total += exacta;
+        }
+        assertEquals(total, GeoUtils.calcularLongitudPolilineaKm(lats, lons), 1e-3);
+    }
+
+    @Test
+    void polilineasDegeneradasMidenCero() {
+        assertEquals(0.0, GeoUtils.calcularLongitudPolilineaKm(new double[0], new double[0]), 0.0);
+        assertEquals(0.0, GeoUtils.calcularLongitudPolilineaKm(new double[]{40.0}, new double[]{-3.0}), 0.0);
+    }
+
+    @Test
+    void bearingsEnLoteCoincidenConElEscalar() {
+        double lat = 40.4168;
+        double lon = -3.7038;
+        double[] lats = aleatorios(500, 30.0, 50.0);
+        double[] lons = aleatorios(500, -15.0, 10.0);
+        double[] bearings = new double[500];
+
+        GeoUtils.calcularBearings(lat, lon, lats, lons, bearings);
+
+        for (int i = 0; i < lats.length; i++) {
+            double escalar = GeoUtils.calcularBearing(lat, lon, lats[i], lons[i]);
+            // Comparar en el círculo: 359,999... y 0 son el mismo rumbo
+            double diferencia = Math.abs(escalar - bearings[i]);
+            assertTrue(Math.min(diferencia, 360 - diferencia) < 1e-9);
+            assertTrue(bearings[i] >= 0 && bearings[i] < 360);
+        }
+    }
+
+    @Test
+    void interpolacionRecorreLaPolilineaEnUnaPasada() {
+        double[] lats = {40.0, 41.0, 41.0};
+        double[] lons = {-3.0, -3.0, -1.0};
+        double[] kmAcumulado = {0.0, 100.0, 300.0};
+        double[] kms = {-5.0, 0.0, 50.0, 100.0, 200.0, 300.0, 400.0};
+        double[] latDestino = new double[kms.length];
+        double[] lonDestino = new double[kms.length];
+
+        GeoUtils.interpolarEnPolilinea(lats, lons, kmAcumulado, kms, latDestino, lonDestino);
+
+        double[] latEsperada = {40.0, 40.0, 40.5, 41.0, 41.0, 41.0, 41.0};
+        double[] lonEsperada = {-3.0, -3.0, -3.0, -3.0, -2.0, -1.0, -1.0};
+        for (int j = 0; j < kms.length; j++) {
+            assertEquals(latEsperada[j], latDestino[j], 1e-12);
+            assertEquals(lonEsperada[j], lonDestino[j], 1e-12);
+        }
+    }
+
+    @Test
+    void interpolacionSobreUnSoloPunto() {
+        double[] latDestino = new double[2];
+        double[] lonDestino = new double[2];
+
+        GeoUtils.interpolarEnPolilinea(new double[]{40.0}, new double[]{-3.0}, new double[]{0.0},
+                new double[]{0.0, 10.0}, latDestino, lonDestino);
+
+        assertEquals(40.0, latDestino[1], 0.0);
+        assertEquals(-3.0, lonDestino[1], 0.0);
+    }
+
+    @Test
+    void rechazaArraysDeLongitudDistinta() {
+        assertThrows(IllegalArgumentException.class, () ->
+                GeoUtils.calcularDistanciasKm(0, 0, new double[2], new double[3], new double[2]));
+        assertThrows(IllegalArgumentException.class, () ->
+                GeoUtils.calcularLongitudesTramosKm(new double[3], new double[3], new double[3]));
+        assertThrows(IllegalArgumentException.class, () ->
+                GeoUtils.interpolarEnPolilinea(new double[0], new double[0], new double[0],
+                        new double[1], new double[1], new double[1]));
+    }
+
+    @Test
+    void redondearCoincideConBigDecimalHalfUp() {
+        double[] casos = {2.675, 1.005, -1.005, 0.125, -0.125, 2.5, -2.5, 1234.5678, -0.001, 0.0,
+                1e12 + 0.5, 123456789.987654321, 0.1 + 0.2};
+        for (double valor : casos) {
+            for (int decimales = 0; decimales <= 6; decimales++) {
+                assertEquals(conBigDecimal(valor, decimales), GeoUtils.redondear(valor, decimales), 0.0);
+            }
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            double valor = (RANDOM.nextDouble() - 0.5) * Math.pow(10, RANDOM.nextInt(8));
+            int decimales = RANDOM.nextInt(8);
+            assertEquals(conBigDecimal(valor, decimales), GeoUtils.redondear(valor, decimales), 0.0);
+        }
+        assertThrows(IllegalArgumentException.class, () -> GeoUtils.redondear(1.0, -1));
+    }
+
+    private static double conBigDecimal(double valor, int decimales) {
+        return BigDecimal.valueOf(valor).setScale(decimales, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private static double[] aleatorios(int n, double min, double max) {
+        double[] valores = new double[n];
+        for (int i = 0; i < n; i++) {
+            valores[i] = min + RANDOM.nextDouble() * (max - min);
+        }
+        return valores;
+    }
+}